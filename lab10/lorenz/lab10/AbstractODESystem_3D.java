@@ -23,6 +23,9 @@ public abstract class AbstractODESystem_3D implements ODESystem_3D {
 	 * Default label for Z coordinate. Equal to "z"
 	 */
 	public static final String Z_LABEL = "z";
+
+	// relative step for finite-difference Jacobians: sqrt(machine epsilon)
+	private static final double FD_DELTA = Math.sqrt(Math.ulp(1.0));
 	
 	/**
 	 * This implementation returns {@link DataPoint.ZERO}
@@ -72,4 +75,53 @@ public abstract class AbstractODESystem_3D implements ODESystem_3D {
 	@Override
 	public void setCoefficients(Map<String, Double> coefficients) {}
 
+	/**
+	 * This implementation calls the single-point takeDerivatives once per
+	 * point. Subclasses should override it with a tight loop.
+	 * 
+	 * @see lorenz.lab10.ODESystem_3D#takeDerivatives(double, double[],
+	 *      double[], double[], double[], double[], double[], int, int)
+	 */
+	@Override
+	public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+			double[] dxdt, double[] dydt, double[] dzdt, int from, int to) {
+		final double[] p = new double[3];
+		final double[] dpdt = new double[3];
+		for (int i = from; i < to; i++) {
+			p[0] = x[i];
+			p[1] = y[i];
+			p[2] = z[i];
+			takeDerivatives(t, p, dpdt);
+			dxdt[i] = dpdt[0];
+			dydt[i] = dpdt[1];
+			dzdt[i] = dpdt[2];
+		}
+	}
+
+	/**
+	 * This implementation approximates the Jacobian by forward differences,
+	 * at the cost of four calls to takeDerivatives. Subclasses should override
+	 * it with the analytic form where there is one.
+	 * 
+	 * @see lorenz.lab10.ODESystem_3D#getJacobian(double, double[], double[])
+	 */
+	@Override
+	public void getJacobian(double t, double[] p, double[] J) {
+		final double[] q = new double[] { p[0], p[1], p[2] };
+		final double[] f0 = new double[3];
+		final double[] f1 = new double[3];
+		takeDerivatives(t, q, f0);
+		for (int j = 0; j < 3; j++) {
+			final double pj = q[j];
+			final double delta = FD_DELTA * Math.max(1.0, Math.abs(pj));
+			q[j] = pj + delta;
+			takeDerivatives(t, q, f1);
+			q[j] = pj;
+			// use the step actually taken, after rounding
+			final double dq = (pj + delta) - pj;
+			for (int i = 0; i < 3; i++)
+				J[3 * i + j] = (f1[i] - f0[i]) / dq;
+		}
+	}
+
 }
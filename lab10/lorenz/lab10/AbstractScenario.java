@@ -2,9 +2,40 @@ package lorenz.lab10;
 
 
 /**
+ * Base class for scenarios built on a {@link ScenarioModel}. Setup sets up
+ * the model and adds a viewer timeseries for each of its data sources;
+ * teardown undoes both.
  * 
  * @author jehanson
  */
 public abstract class AbstractScenario implements Scenario {
 
+	private final ScenarioModel model;
+
+	protected AbstractScenario(ScenarioModel model) {
+		super();
+		if (model == null)
+			throw new IllegalArgumentException("model cannot be null");
+		this.model = model;
+	}
+
+	@Override
+	public ScenarioModel getModel() {
+		return model;
+	}
+
+	@Override
+	public void setup(DataSourceContainer sources, Viewer viewer) {
+		model.setup(sources);
+		viewer.setDataBounds(model.getDataBounds());
+		for (DataSource ds : model.getSources())
+			viewer.addTimeseries(ds);
+	}
+
+	@Override
+	public void teardown(DataSourceContainer sources, Viewer viewer) {
+		for (DataSource ds : model.getSources())
+			viewer.removeTimeseries(ds.getName());
+		model.teardown(sources);
+	}
 }
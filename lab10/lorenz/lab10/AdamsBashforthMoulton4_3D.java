@@ -0,0 +1,251 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fourth-order Adams-Bashforth-Moulton predictor-corrector integration,
+ * customized for systems with three degrees of freedom.
+ * <p>
+ * Each step predicts the next state with the 4-step Adams-Bashforth formula
+ * from the derivatives at the last four steps, then corrects it with the
+ * 3-step Adams-Moulton formula. The derivatives are kept in a small ring
+ * buffer, so a step costs two derivative evaluations (PECE mode) or one (PEC
+ * mode), against four for {@link RungeKutta4_3D}. Multistep methods work best
+ * on smooth systems such as the pendulums.
+ * <p>
+ * The history is primed with three RK4 steps after every reset, change of
+ * time step, or discontinuous change of state (a reflection at the ODE
+ * system's bounds, or {@link #setCurrentState}). Wrapping around periodic
+ * bounds does not change the derivatives, so it doesn't require priming.
+ *
+ * @author jehanson
+ */
+public class AdamsBashforthMoulton4_3D extends ODEIntegrator_3D {
+
+	private static final String clsName = AdamsBashforthMoulton4_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The ways of using the corrector.
+	 */
+	public enum Mode {
+
+		/**
+		 * Predict, evaluate, correct, evaluate: the derivative history holds the
+		 * derivatives at the corrected states. Two derivative evaluations per
+		 * step.
+		 */
+		PECE,
+
+		/**
+		 * Predict, evaluate, correct: the derivative history holds the
+		 * derivatives at the predicted states. One derivative evaluation per
+		 * step, at some cost in accuracy and stability.
+		 */
+		PEC
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+
+	// number of past derivatives used by the predictor
+	private static final int HISTORY = 4;
+
+	private final Mode mode;
+
+	// Ring buffer of derivatives: the derivative from k steps ago is at
+	// history[(head - k) mod HISTORY], k = 0 being the current state's.
+	private final double[][] history;
+	private int head;
+	// number of valid entries in history
+	private int primed;
+
+	// scratch space, preallocated so that stepping makes no garbage
+	private final double[] tmpP = new double[3];
+	private final double[] tmpPDot1 = new double[3];
+	private final double[] tmpPDot2 = new double[3];
+	private final double[] tmpPDot3 = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public AdamsBashforthMoulton4_3D(String name, ODESystem_3D odeSystem) {
+		this(name, odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint(), Mode.PECE);
+	}
+
+	public AdamsBashforthMoulton4_3D(String name, ODESystem_3D odeSystem,
+			DataPoint initialState, Mode mode) {
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		if (mode == null)
+			throw new IllegalArgumentException("mode cannot be null");
+		this.mode = mode;
+		this.history = new double[HISTORY][3];
+		this.head = 0;
+		this.primed = 0;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Sets the time step. The derivative history is re-primed before the next
+	 * step if the value changes.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (timeStep != getTimeStep())
+			primed = 0;
+		super.setTimeStep(timeStep);
+	}
+
+	@Override
+	public void setCurrentState(double t, double[] p) {
+		super.setCurrentState(t, p);
+		primed = 0;
+	}
+
+	/**
+	 * Adds the derivative history, so that a restored integrator needn't be
+	 * primed again.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(head);
+		out.writeInt(primed);
+		for (double[] pDot : history)
+			Checkpoint.writeArray(out, pDot);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		head = in.readInt();
+		primed = in.readInt();
+		for (double[] pDot : history)
+			Checkpoint.readArray(in, pDot);
+	}
+
+	@Override
+	protected void doReset() {
+		super.doReset();
+		primed = 0;
+	}
+
+	@Override
+	protected void doStep() {
+		final String mtdName = "doStep";
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "entering");
+
+		final double h = getTimeStep();
+
+		if (primed == 0) {
+			odeSystem.takeDerivatives(currT, currP, history[head]);
+			primed = 1;
+		}
+
+		if (primed < HISTORY) {
+			// startup: one RK4 step
+			rk4Step(h);
+		}
+		else {
+			final double[] f0 = history[head];
+			final double[] f1 = history[(head + 3) % HISTORY];
+			final double[] f2 = history[(head + 2) % HISTORY];
+			final double[] f3 = history[(head + 1) % HISTORY];
+			final double h_24 = h / 24.0;
+
+			// predict (AB4)
+			for (int i = 0; i < 3; i++)
+				tmpP[i] = currP[i] + h_24 * (55 * f0[i] - 59 * f1[i] + 37 * f2[i] - 9 * f3[i]);
+
+			// evaluate
+			odeSystem.takeDerivatives(currT + h, tmpP, tmpPDot1);
+
+			// correct (AM4)
+			for (int i = 0; i < 3; i++)
+				currP[i] += h_24 * (9 * tmpPDot1[i] + 19 * f0[i] - 5 * f1[i] + f2[i]);
+		}
+		currT += h;
+
+		// newest derivative goes in the slot of the oldest
+		head = (head + 1) % HISTORY;
+		if (primed < HISTORY || mode == Mode.PECE)
+			odeSystem.takeDerivatives(currT, currP, history[head]);
+		else
+			System.arraycopy(tmpPDot1, 0, history[head], 0, 3);
+		if (primed < HISTORY)
+			primed++;
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = currP[i];
+		if (applyBounds() && isReflected(tmpP))
+			primed = 0;
+
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
+					+ DataPoint.makeTupleString(currP[0], currP[1], currP[2]));
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one RK4 step, using the derivative at the current state from the
+	 * history.
+	 */
+	private void rk4Step(final double h) {
+		final double h_2 = 0.5 * h;
+		final double h_6 = h / 6.0;
+		final double[] f0 = history[head];
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = currP[i] + h_2 * f0[i];
+		odeSystem.takeDerivatives(currT + h_2, tmpP, tmpPDot1);
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = currP[i] + h_2 * tmpPDot1[i];
+		odeSystem.takeDerivatives(currT + h_2, tmpP, tmpPDot2);
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = currP[i] + h * tmpPDot2[i];
+		odeSystem.takeDerivatives(currT + h, tmpP, tmpPDot3);
+		for (int i = 0; i < 3; i++)
+			currP[i] +=
+					h_6 * (f0[i] + 2.0 * tmpPDot1[i] + 2.0 * tmpPDot2[i] + tmpPDot3[i]);
+	}
+
+	/**
+	 * Returns true if applyBounds reflected any coordinate of the given
+	 * unbounded state.
+	 */
+	private boolean isReflected(double[] p) {
+		final DataBox.BoundType reflective = DataBox.BoundType.REFLECTIVE;
+		return (odeBounds.getXBoundType() == reflective && p[0] != currP[0])
+				|| (odeBounds.getYBoundType() == reflective && p[1] != currP[1])
+				|| (odeBounds.getZBoundType() == reflective && p[2] != currP[2]);
+	}
+}
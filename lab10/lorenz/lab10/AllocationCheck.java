@@ -0,0 +1,142 @@
+package lorenz.lab10;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that the data sources that reuse their events allocate nothing per
+ * step. Each source gets a listener and
+ * {@link DataSource#setReuseEvents(boolean) setReuseEvents(true)}, is warmed
+ * up, and is then stepped while the current thread's allocation counter is
+ * watched. Exits with status 1 if any source allocated.
+ * <p>
+ * Usage: <code>AllocationCheck [steps]</code>. Needs a JVM that supports
+ * com.sun.management.ThreadMXBean, and is best run with -Xint or after
+ * enough warm-up that the JIT compiler is done with the step loops; escape
+ * analysis can otherwise hide allocations the interpreter would make.
+ *
+ * @author jehanson
+ */
+public class AllocationCheck {
+
+	// ==========================================
+	// main
+	// ==========================================
+
+	public static void main(String[] args) {
+		long steps = STEPS_DEFAULT;
+		if (args.length > 0)
+			steps = Long.parseLong(args[0]);
+		if (!(steps > 0))
+			throw new IllegalArgumentException("Bad value steps=" + steps
+					+ " -- must be > 0");
+
+		List<DataSource> sources = new ArrayList<DataSource>();
+		sources.add(new RungeKutta4_3D("RungeKutta4_3D", new LorenzSystem()));
+		sources.add(new DormandPrince45_3D("DormandPrince45_3D", new LorenzSystem()));
+		sources.add(new RandomWalker("RandomWalker"));
+		sources.add(new RandomFlier("RandomFlier"));
+
+		AllocationCheck check = new AllocationCheck();
+		boolean ok = true;
+		for (DataSource ds : sources) {
+			final long bytes = check.measure(ds, steps);
+			System.out.println(ds.getName() + ": " + bytes + " bytes allocated in "
+					+ steps + " steps");
+			if (bytes != 0)
+				ok = false;
+		}
+		System.out.println(ok ? "OK" : "FAILED");
+		System.exit(ok ? 0 : 1);
+	}
+
+	// ==========================================
+	// Inner classes
+	// ==========================================
+
+	private static class PointCounter implements DataSourceListener {
+
+		private long count;
+
+		@Override
+		public void dataPointGenerated(DataSourceEvent e) {
+			count++;
+		}
+
+		@Override
+		public void dataSourceReset(DataSourceEvent e) {}
+	}
+
+	// ==========================================
+	// Variables
+	// ==========================================
+
+	private static final long STEPS_DEFAULT = 1000000;
+	private static final long WARMUP_STEPS = 200000;
+
+	private final com.sun.management.ThreadMXBean threads;
+	private final long threadId;
+	// bytes allocated by reading the counter itself
+	private final long overhead;
+
+	// ==========================================
+	// Creation
+	// ==========================================
+
+	public AllocationCheck() {
+		super();
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			throw new UnsupportedOperationException(
+					"This JVM cannot report per-thread allocation");
+		this.threads = (com.sun.management.ThreadMXBean) bean;
+		if (!threads.isThreadAllocatedMemoryEnabled())
+			threads.setThreadAllocatedMemoryEnabled(true);
+		this.threadId = Thread.currentThread().getId();
+
+		long least = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			final long before = allocatedBytes();
+			final long after = allocatedBytes();
+			least = Math.min(least, after - before);
+		}
+		this.overhead = least;
+	}
+
+	// ==========================================
+	// Operation
+	// ==========================================
+
+	/**
+	 * Returns the number of bytes the current thread allocated while taking
+	 * the given number of steps of the data source, after a warm-up. Must be
+	 * called on the thread that created this object.
+	 */
+	public long measure(DataSource ds, long steps) {
+		if (Thread.currentThread().getId() != threadId)
+			throw new IllegalStateException("Called from the wrong thread");
+		PointCounter counter = new PointCounter();
+		ds.setReuseEvents(true);
+		ds.addDataSourceListener(counter);
+		ds.reset();
+		for (long i = 0; i < WARMUP_STEPS; i++)
+			ds.step();
+
+		final long before = allocatedBytes();
+		for (long i = 0; i < steps; i++)
+			ds.step();
+		final long after = allocatedBytes();
+
+		ds.removeDataSourceListener(counter);
+		return Math.max(0, after - before - overhead);
+	}
+
+	// ==========================================
+	// Private
+	// ==========================================
+
+	private long allocatedBytes() {
+		return threads.getThreadAllocatedBytes(threadId);
+	}
+}
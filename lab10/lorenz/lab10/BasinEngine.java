@@ -0,0 +1,747 @@
+package lorenz.lab10;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless classification of the initial conditions on a 2-D grid by the
+ * long-term behavior of their trajectories: basin-of-attraction and
+ * escape-time images, e.g. of (theta, d(theta)/dt) for the pendulum systems.
+ * <p>
+ * Two coordinates of the initial state are taken from the grid; the third is
+ * the ODE system's initial state hint. Each initial condition is integrated
+ * with a {@link RungeKutta4_3D} until its {@link Classifier} is certain of its
+ * class, or until the maximum time. Both the class and the time it was decided
+ * are recorded.
+ * <p>
+ * The grid is cut into square tiles. Each worker thread has its own ODE
+ * system, integrator and classifier, made once and reused for every
+ * trajectory, and repeatedly claims the next unclaimed tile. Workers that
+ * draw cheap tiles (those that are classified early) just claim more of them,
+ * so the load stays balanced however unevenly the cost is spread over the
+ * grid.
+ *
+ * @author jehanson
+ */
+public class BasinEngine {
+
+	private static final String clsName = BasinEngine.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * Decides the class of a trajectory as it is integrated. Classes are
+	 * small non-negative ints. Instances are used by one thread at a time,
+	 * and may keep per-trajectory state.
+	 */
+	public interface Classifier {
+
+		/**
+		 * Returned by check() while the class is not yet certain.
+		 */
+		public static final int UNDECIDED = -1;
+
+		/**
+		 * Called with the initial state at the start of each trajectory.
+		 */
+		public void start(double[] p);
+
+		/**
+		 * Called after each integration step. Returns the trajectory's class
+		 * as soon as it is certain, which ends the integration, or UNDECIDED.
+		 */
+		public int check(double t, double[] p);
+
+		/**
+		 * Called if the trajectory is still undecided at the maximum time.
+		 * Returns its class.
+		 */
+		public int finish(double t, double[] p);
+	}
+
+	/**
+	 * Makes one Classifier per worker thread.
+	 */
+	public interface ClassifierFactory {
+		public Classifier newClassifier(ODESystem_3D odeSystem);
+	}
+
+	/**
+	 * Told about the engine's progress, on whichever worker thread finished
+	 * the tile. Implementations must be threadsafe.
+	 */
+	public interface ProgressListener {
+		public void progressed(int tilesDone, int tilesTotal);
+	}
+
+	/**
+	 * Classifies trajectories by whether a periodic angle oscillates or goes
+	 * all the way round: libration if the angle's rate changes sign first,
+	 * rotation if the angle wraps around its bounds first. Suits the planar
+	 * pendulum, with the angle in coordinate 0 and its rate in coordinate 2.
+	 */
+	public static class RotationClassifier implements Classifier {
+
+		public static final int LIBRATING = 0;
+		public static final int ROTATING_FORWARD = 1;
+		public static final int ROTATING_BACKWARD = 2;
+		public static final int UNRESOLVED = 3;
+
+		private final int angle;
+		private final int rate;
+		private final double halfPeriod;
+		private double prevAngle;
+		private double startSign;
+
+		/**
+		 * @param angle
+		 *            index of the angle coordinate
+		 * @param rate
+		 *            index of the angle's rate of change
+		 * @param period
+		 *            width of the angle's periodic bounds. A jump of more than
+		 *            half of this in one step counts as a wrap.
+		 */
+		public RotationClassifier(int angle, int rate, double period) {
+			if (!(period > 0))
+				throw new IllegalArgumentException("Bad value period=" + period
+						+ " -- must be > 0");
+			this.angle = angle;
+			this.rate = rate;
+			this.halfPeriod = 0.5 * period;
+		}
+
+		@Override
+		public void start(double[] p) {
+			prevAngle = p[angle];
+			startSign = Math.signum(p[rate]);
+		}
+
+		@Override
+		public int check(double t, double[] p) {
+			final double a = p[angle];
+			final double jump = a - prevAngle;
+			prevAngle = a;
+			if (jump > halfPeriod)
+				return ROTATING_BACKWARD;
+			if (jump < -halfPeriod)
+				return ROTATING_FORWARD;
+
+			final double sign = Math.signum(p[rate]);
+			if (startSign == 0)
+				startSign = sign;
+			else if (sign != 0 && sign != startSign)
+				return LIBRATING;
+			return UNDECIDED;
+		}
+
+		@Override
+		public int finish(double t, double[] p) {
+			return UNRESOLVED;
+		}
+	}
+
+	/**
+	 * Classifies trajectories by whether, and which way, a coordinate escapes
+	 * from an interval: BELOW or ABOVE as soon as it does, BOUNDED if it
+	 * hasn't by the maximum time. The decision times make an escape-time
+	 * image.
+	 */
+	public static class EscapeClassifier implements Classifier {
+
+		public static final int BOUNDED = 0;
+		public static final int BELOW = 1;
+		public static final int ABOVE = 2;
+
+		private final int coordinate;
+		private final double lo;
+		private final double hi;
+
+		public EscapeClassifier(int coordinate, double lo, double hi) {
+			if (!(hi > lo))
+				throw new IllegalArgumentException("Bad value hi=" + hi + " -- must be > lo");
+			this.coordinate = coordinate;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		public void start(double[] p) {}
+
+		@Override
+		public int check(double t, double[] p) {
+			final double q = p[coordinate];
+			if (q < lo)
+				return BELOW;
+			if (q > hi)
+				return ABOVE;
+			return UNDECIDED;
+		}
+
+		@Override
+		public int finish(double t, double[] p) {
+			return BOUNDED;
+		}
+	}
+
+	/**
+	 * The class and decision time of every grid point. Row 0 is at the top
+	 * of the grid, i.e. at the largest value of the vertical coordinate.
+	 */
+	public static class Result {
+
+		/**
+		 * The class of a grid point that was not computed because the engine
+		 * was cancelled.
+		 */
+		public static final int NOT_COMPUTED = -1;
+
+		// "LBAS"
+		private static final int MAGIC = 0x4c424153;
+		private static final int VERSION = 1;
+
+		// colors of classes 0, 1, 2, ...; repeats
+		private static final int[] PALETTE = { 0x1f3b73, 0xd95f02, 0x1b9e77, 0x7570b3,
+				0xe7298a, 0x66a61e, 0xe6ab02, 0xa6761d };
+
+		private final int width;
+		private final int height;
+		private final int[] classes;
+		private final float[] times;
+		private final boolean cancelled;
+		private final long elapsedMillis;
+
+		Result(int width, int height, int[] classes, float[] times, boolean cancelled,
+				long elapsedMillis) {
+			this.width = width;
+			this.height = height;
+			this.classes = classes;
+			this.times = times;
+			this.cancelled = cancelled;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public int getClass(int col, int row) {
+			return classes[row * width + col];
+		}
+
+		public double getTime(int col, int row) {
+			return times[row * width + col];
+		}
+
+		/**
+		 * Returns true if the engine was cancelled before every grid point was
+		 * computed.
+		 */
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * Returns the wall-clock time taken by the calculation, or 0 if the
+		 * result was read from a file.
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Writes the result as raw binary: a header, then the classes as ints
+		 * and the decision times as floats, row by row.
+		 */
+		public void write(File file) throws IOException {
+			DataOutputStream out =
+					new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(width);
+				out.writeInt(height);
+				out.writeBoolean(cancelled);
+				for (int k = 0; k < classes.length; k++)
+					out.writeInt(classes[k]);
+				for (int k = 0; k < times.length; k++)
+					out.writeFloat(times[k]);
+			}
+			finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Reads a result written by {@link #write(File)}.
+		 */
+		public static Result read(File file) throws IOException {
+			DataInputStream in =
+					new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC)
+					throw new IOException(file + " is not a basin image file");
+				int version = in.readInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported version " + version + " in " + file);
+				int width = in.readInt();
+				int height = in.readInt();
+				boolean cancelled = in.readBoolean();
+				int[] classes = new int[width * height];
+				float[] times = new float[width * height];
+				for (int k = 0; k < classes.length; k++)
+					classes[k] = in.readInt();
+				for (int k = 0; k < times.length; k++)
+					times[k] = in.readFloat();
+				return new Result(width, height, classes, times, cancelled, 0);
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Writes the classes as a PNG image, one color per class. Grid points
+		 * that were not computed are white.
+		 */
+		public void writeClassImage(File file) throws IOException {
+			final int[] rgb = new int[classes.length];
+			for (int k = 0; k < rgb.length; k++)
+				rgb[k] =
+						(classes[k] < 0) ? 0xffffff : PALETTE[classes[k] % PALETTE.length];
+			writeImage(file, rgb);
+		}
+
+		/**
+		 * Writes the decision times as a grayscale PNG image, darker for
+		 * earlier. Grid points that were not computed are white.
+		 */
+		public void writeTimeImage(File file) throws IOException {
+			float tMax = 0;
+			for (int k = 0; k < times.length; k++)
+				if (classes[k] >= 0 && times[k] > tMax)
+					tMax = times[k];
+			final double scale = (tMax > 0) ? 1.0 / Math.log1p(tMax) : 0;
+			final int[] rgb = new int[classes.length];
+			for (int k = 0; k < rgb.length; k++) {
+				int gray = 255;
+				if (classes[k] >= 0)
+					gray = (int) (224 * Math.log1p(times[k]) * scale);
+				rgb[k] = (gray << 16) | (gray << 8) | gray;
+			}
+			writeImage(file, rgb);
+		}
+
+		private void writeImage(File file, int[] rgb) throws IOException {
+			final BufferedImage image =
+					new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			image.setRGB(0, 0, width, height, rgb, 0, width);
+			ImageIO.write(image, "png", file);
+		}
+	}
+
+	/**
+	 * Claims and computes tiles until there are none left. Each worker has its
+	 * own ODE system, integrator and classifier.
+	 */
+	private class Worker implements Callable<Void> {
+
+		private final ODESystem_3D odeSystem;
+		private final RungeKutta4_3D integrator;
+		private final Classifier classifier;
+		private final double[] p = new double[3];
+		private final double[] p0 = new double[3];
+
+		public Worker() {
+			this.odeSystem = systemFactory.newSystem();
+			this.integrator = new RungeKutta4_3D(odeSystem);
+			this.integrator.setTimeStep(timeStep);
+			this.classifier = classifierFactory.newClassifier(odeSystem);
+			DataPoint hint = odeSystem.getInitialStateHint();
+			p0[0] = hint.getX();
+			p0[1] = hint.getY();
+			p0[2] = hint.getZ();
+		}
+
+		@Override
+		public Void call() {
+			int tile;
+			while (!cancelled && (tile = nextTile.getAndIncrement()) < tilesTotal) {
+				if (!computeTile(tile))
+					break;
+				final int done = tilesDone.incrementAndGet();
+				final ProgressListener listener = progressListener;
+				if (listener != null)
+					listener.progressed(done, tilesTotal);
+			}
+			return null;
+		}
+
+		/**
+		 * Returns false if cancelled before the tile was finished.
+		 */
+		private boolean computeTile(int tile) {
+			final int col0 = (tile % tilesAcross) * tileSize;
+			final int row0 = (tile / tilesAcross) * tileSize;
+			final int col1 = Math.min(col0 + tileSize, width);
+			final int row1 = Math.min(row0 + tileSize, height);
+			for (int row = row0; row < row1; row++) {
+				if (cancelled)
+					return false;
+				for (int col = col0; col < col1; col++)
+					computePoint(col, row);
+			}
+			return true;
+		}
+
+		private void computePoint(int col, int row) {
+			p[0] = p0[0];
+			p[1] = p0[1];
+			p[2] = p0[2];
+			p[xCoordinate] = getXValue(col);
+			p[yCoordinate] = getYValue(row);
+
+			integrator.setCurrentState(0, p);
+			classifier.start(p);
+			int c = Classifier.UNDECIDED;
+			for (long i = 0; i < maxSteps && c == Classifier.UNDECIDED; i++) {
+				integrator.step();
+				integrator.copyCurrentState(p);
+				c = classifier.check(integrator.getCurrentTime(), p);
+			}
+			if (c == Classifier.UNDECIDED)
+				c = classifier.finish(integrator.getCurrentTime(), p);
+
+			final int k = row * width + col;
+			classes[k] = c;
+			times[k] = (float) integrator.getCurrentTime();
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private int count = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, BasinEngine.class.getSimpleName() + "-worker-" + count++);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final int TILE_SIZE_DEFAULT = 32;
+	private static final double TIME_STEP_DEFAULT = 0.01;
+	private static final double MAX_TIME_DEFAULT = 50.0;
+
+	private final ODESystemFactory_3D systemFactory;
+	private final ClassifierFactory classifierFactory;
+	private final int width;
+	private final int height;
+
+	private int xCoordinate;
+	private double xMin;
+	private double xMax;
+	private int yCoordinate;
+	private double yMin;
+	private double yMax;
+
+	private int tileSize;
+	private double timeStep;
+	private double maxTime;
+	private int threadCount;
+	private volatile ProgressListener progressListener;
+
+	// set by cancel, and cleared only when a run finishes, so that a cancel
+	// made just before a run starts is not lost; read by worker threads
+	private volatile boolean cancelled;
+	private long maxSteps;
+	private int tilesAcross;
+	private int tilesTotal;
+	private AtomicInteger nextTile;
+	private AtomicInteger tilesDone;
+	private int[] classes;
+	private float[] times;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * Creates an engine for a grid of the given size. The grid's axes default
+	 * to the ODE system's data bounds in coordinates 0 (across) and 2 (up),
+	 * i.e. theta and d(theta)/dt for the pendulum systems.
+	 *
+	 * @param systemFactory
+	 *            makes the ODE systems to be integrated, one per worker
+	 * @param classifierFactory
+	 *            makes the classifiers, one per worker
+	 * @param width
+	 *            number of grid points across
+	 * @param height
+	 *            number of grid points up
+	 */
+	public BasinEngine(ODESystemFactory_3D systemFactory,
+			ClassifierFactory classifierFactory, int width, int height) {
+		if (systemFactory == null)
+			throw new IllegalArgumentException("systemFactory cannot be null");
+		if (classifierFactory == null)
+			throw new IllegalArgumentException("classifierFactory cannot be null");
+		if (!(width > 0))
+			throw new IllegalArgumentException("Bad value width=" + width + " -- must be > 0");
+		if (!(height > 0))
+			throw new IllegalArgumentException("Bad value height=" + height + " -- must be > 0");
+
+		this.systemFactory = systemFactory;
+		this.classifierFactory = classifierFactory;
+		this.width = width;
+		this.height = height;
+
+		DataBox bounds = systemFactory.newSystem().getDataBounds();
+		setXAxis(0, bounds.getXMin(), bounds.getXMax());
+		setYAxis(2, bounds.getZMin(), bounds.getZMax());
+		this.tileSize = TILE_SIZE_DEFAULT;
+		this.timeStep = TIME_STEP_DEFAULT;
+		this.maxTime = MAX_TIME_DEFAULT;
+		this.threadCount = Runtime.getRuntime().availableProcessors();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Sets the coordinate that varies across the grid, and its range.
+	 */
+	public void setXAxis(int coordinate, double min, double max) {
+		checkAxis(coordinate, min, max);
+		this.xCoordinate = coordinate;
+		this.xMin = min;
+		this.xMax = max;
+	}
+
+	/**
+	 * Sets the coordinate that varies up the grid, and its range.
+	 */
+	public void setYAxis(int coordinate, double min, double max) {
+		checkAxis(coordinate, min, max);
+		this.yCoordinate = coordinate;
+		this.yMin = min;
+		this.yMax = max;
+	}
+
+	/**
+	 * Returns the value of the horizontal coordinate at the center of the
+	 * given column.
+	 */
+	public double getXValue(int col) {
+		return xMin + (col + 0.5) * (xMax - xMin) / width;
+	}
+
+	/**
+	 * Returns the value of the vertical coordinate at the center of the given
+	 * row. Row 0 is at the top.
+	 */
+	public double getYValue(int row) {
+		return yMax - (row + 0.5) * (yMax - yMin) / height;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public void setTileSize(int tileSize) {
+		if (!(tileSize > 0))
+			throw new IllegalArgumentException("Bad value tileSize=" + tileSize
+					+ " -- must be > 0");
+		this.tileSize = tileSize;
+	}
+
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Returns the longest time a trajectory is integrated before its
+	 * classifier is asked to finish.
+	 */
+	public double getMaxTime() {
+		return maxTime;
+	}
+
+	public void setMaxTime(double maxTime) {
+		if (!(maxTime > 0))
+			throw new IllegalArgumentException("Bad value maxTime=" + maxTime
+					+ " -- must be > 0");
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Returns the number of worker threads. The default is the number of
+	 * processors.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		if (!(threadCount > 0))
+			throw new IllegalArgumentException("Bad value threadCount=" + threadCount
+					+ " -- must be > 0");
+		this.threadCount = threadCount;
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	/**
+	 * Asks the run in progress to stop. It returns shortly with a partial
+	 * result. If no run is in progress, the next one stops at once. Can be
+	 * called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Classifies every grid point, blocking until done or cancelled. If
+	 * interrupted, cancels and returns the partial result with the thread's
+	 * interrupt status set.
+	 */
+	public synchronized Result run() {
+		final String mtdName = "run";
+		final long startMillis = System.currentTimeMillis();
+
+		maxSteps = (long) Math.ceil(maxTime / timeStep - Steppable.TIME_TOLERANCE);
+		tilesAcross = (width + tileSize - 1) / tileSize;
+		tilesTotal = tilesAcross * ((height + tileSize - 1) / tileSize);
+		nextTile = new AtomicInteger(0);
+		tilesDone = new AtomicInteger(0);
+		classes = new int[width * height];
+		times = new float[width * height];
+		Arrays.fill(classes, Result.NOT_COMPUTED);
+
+		final ExecutorService executor =
+				Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory());
+		boolean interrupted = false;
+		Error error = null;
+		RuntimeException failure = null;
+		final boolean partial;
+		try {
+			final List<Future<Void>> results = new ArrayList<Future<Void>>(threadCount);
+			for (int i = 0; i < threadCount; i++)
+				results.add(executor.submit(new Worker()));
+			for (Future<Void> f : results) {
+				while (true) {
+					try {
+						f.get();
+						break;
+					}
+					catch (InterruptedException e) {
+						// stop the workers, but wait for them so that the result
+						// is not written to after we return
+						interrupted = true;
+						cancelled = true;
+					}
+					catch (ExecutionException e) {
+						// stop the other workers, and rethrow once they have
+						cancelled = true;
+						Throwable cause = e.getCause();
+						if (cause instanceof Error) {
+							if (error == null)
+								error = (Error) cause;
+						}
+						else if (failure == null) {
+							failure =
+									(cause instanceof RuntimeException) ? (RuntimeException) cause
+											: new IllegalStateException(cause);
+						}
+						break;
+					}
+				}
+			}
+			partial = cancelled || tilesDone.get() < tilesTotal;
+		}
+		finally {
+			executor.shutdown();
+			cancelled = false;
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+		if (error != null)
+			throw error;
+		if (failure != null)
+			throw failure;
+
+		final Result result =
+				new Result(width, height, classes, times, partial,
+						System.currentTimeMillis() - startMillis);
+		classes = null;
+		times = null;
+		if (logger.isLoggable(Level.INFO))
+			logger.logp(Level.INFO, clsName, mtdName, width + "x" + height + " grid, "
+					+ tilesDone.get() + "/" + tilesTotal + " tiles on " + threadCount
+					+ " threads in " + result.getElapsedMillis() + " ms");
+		return result;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private static void checkAxis(int coordinate, double min, double max) {
+		if (!(coordinate >= 0 && coordinate < 3))
+			throw new IllegalArgumentException("Bad value coordinate=" + coordinate
+					+ " -- must be 0, 1 or 2");
+		if (!(max > min))
+			throw new IllegalArgumentException("Bad value max=" + max + " -- must be > min");
+	}
+}
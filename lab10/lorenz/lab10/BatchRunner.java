@@ -0,0 +1,566 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Runs a scenario without a UI, as fast as it will go, and streams the points
+ * it produces to {@link DataSink}s. Uses only the scenario's
+ * {@link ScenarioModel}, so it needs neither a display nor SWT.
+ * <p>
+ * The data sources are advanced in chunks of simulated time with
+ * {@link DataSourceContainer#advanceTo(double, int)}, telling the sinks about
+ * every emitEvery-th point. Throughput is logged every so often and at the
+ * end.
+ * <p>
+ * Usage: <code>BatchRunner [options]</code>, with options
+ * <dl>
+ * <dt>-scenario <i>name</i></dt>
+ * <dd>Lorenz (the default), RotatingPendulum, PlanarPendulum, RandomFlier,
+ * RandomWalker, the path of an equation file (*.ode), or the path of a
+ * directory of recordings to play back</dd>
+ * <dt>-until <i>t</i></dt>
+ * <dd>simulated time to stop at (default 100), or "inf"</dd>
+ * <dt>-wall <i>seconds</i></dt>
+ * <dd>wall-clock time to stop after</dd>
+ * <dt>-integrator <i>name</i></dt>
+ * <dd>for an ODE scenario, the integrator of its trajectories: RK4 (the
+ * default, {@link RungeKutta4_3D}), DP45 ({@link DormandPrince45_3D}) or ABM4
+ * ({@link AdamsBashforthMoulton4_3D}). {@link IntegratorBenchmark} compares
+ * them.</dd>
+ * <dt>-dt <i>h</i></dt>
+ * <dd>the data sources' time step; for DP45, the size of its first trial
+ * step</dd>
+ * <dt>-coeff <i>name</i>=<i>value</i></dt>
+ * <dd>sets a coefficient of an ODE scenario's system; may be repeated</dd>
+ * <dt>-emit <i>k</i></dt>
+ * <dd>emit every k-th point (default 1); 0 for none</dd>
+ * <dt>-chunk <i>t</i></dt>
+ * <dd>simulated time advanced per chunk (default 1)</dd>
+ * <dt>-sink <i>where</i></dt>
+ * <dd>stdout (the default), none, memory, or a file path</dd>
+ * <dt>-record <i>dir</i></dt>
+ * <dd>also record each data source's trajectory to <i>dir/name</i>.trj with a
+ * {@link TrajectoryRecorder}</dd>
+ * <dt>-compress</dt>
+ * <dd>compress the recordings with {@link TrajectoryCodec}</dd>
+ * <dt>-checkpoint <i>file</i></dt>
+ * <dd>write a {@link Checkpoint} to <i>file</i> every so often and at the
+ * end</dd>
+ * <dt>-checkpointEvery <i>seconds</i></dt>
+ * <dd>wall-clock time between checkpoints (default 10)</dd>
+ * <dt>-resume <i>file</i></dt>
+ * <dd>restore the data sources from a checkpoint of the same scenario before
+ * running; -until is then still the simulated time to stop at</dd>
+ * <dt>-parallel</dt>
+ * <dd>advance the data sources in parallel</dd>
+ * </dl>
+ *
+ * @author jehanson
+ */
+public class BatchRunner {
+
+	private static final String clsName = BatchRunner.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ==========================================
+	// main
+	// ==========================================
+
+	public static void main(String[] args) {
+		final String mtdName = "main";
+
+		try {
+			InputStream loggerStream = new FileInputStream("lab10/logging.properties");
+			LogManager.getLogManager().readConfiguration(loggerStream);
+		}
+		catch (Exception e) {
+			System.err.println("Ignoring problem with logger configuration: " + e);
+		}
+
+		String scenario = "Lorenz";
+		String integrator = null;
+		double until = 100;
+		double wall = Double.POSITIVE_INFINITY;
+		double dt = 0;
+		List<String> coeffs = new ArrayList<String>();
+		int emitEvery = 1;
+		double chunk = CHUNK_TIME_DEFAULT;
+		String sinkName = "stdout";
+		String recordDir = null;
+		boolean compress = false;
+		String checkpointFile = null;
+		double checkpointEvery = CHECKPOINT_INTERVAL_DEFAULT;
+		String resumeFile = null;
+		boolean parallel = false;
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-parallel"))
+					parallel = true;
+				else if (arg.equals("-compress"))
+					compress = true;
+				else if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				else if (arg.equals("-scenario"))
+					scenario = args[++i];
+				else if (arg.equals("-integrator"))
+					integrator = args[++i];
+				else if (arg.equals("-until"))
+					until = args[++i].equals("inf") ? Double.POSITIVE_INFINITY : Double
+							.parseDouble(args[i]);
+				else if (arg.equals("-wall"))
+					wall = Double.parseDouble(args[++i]);
+				else if (arg.equals("-dt"))
+					dt = Double.parseDouble(args[++i]);
+				else if (arg.equals("-coeff"))
+					coeffs.add(args[++i]);
+				else if (arg.equals("-emit"))
+					emitEvery = Integer.parseInt(args[++i]);
+				else if (arg.equals("-chunk"))
+					chunk = Double.parseDouble(args[++i]);
+				else if (arg.equals("-sink"))
+					sinkName = args[++i];
+				else if (arg.equals("-record"))
+					recordDir = args[++i];
+				else if (arg.equals("-checkpoint"))
+					checkpointFile = args[++i];
+				else if (arg.equals("-checkpointEvery"))
+					checkpointEvery = Double.parseDouble(args[++i]);
+				else if (arg.equals("-resume"))
+					resumeFile = args[++i];
+				else
+					throw new IllegalArgumentException("Unrecognized option " + arg);
+			}
+			if (until == Double.POSITIVE_INFINITY && wall == Double.POSITIVE_INFINITY)
+				throw new IllegalArgumentException("-until inf requires -wall");
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: " + BatchRunner.class.getSimpleName()
+					+ " [-scenario name|file.ode|dir] [-integrator RK4|DP45|ABM4]"
+					+ " [-until t|inf] [-wall seconds]"
+					+ " [-dt h] [-coeff name=value]... [-emit k] [-chunk t]"
+					+ " [-sink stdout|none|memory|file] [-record dir [-compress]]"
+					+ " [-checkpoint file [-checkpointEvery seconds]] [-resume file]"
+					+ " [-parallel]");
+			System.exit(2);
+		}
+
+		try {
+			ScenarioModel model = createModel(scenario, integrator);
+			if (!coeffs.isEmpty())
+				setCoefficients(model, coeffs);
+
+			BatchRunner runner = new BatchRunner(model);
+			runner.setParallel(parallel);
+			runner.setEmitEvery(emitEvery);
+			runner.setChunkTime(chunk);
+			if (dt > 0)
+				runner.setSourceTimeStep(dt);
+			if (resumeFile != null)
+				runner.resume(new File(resumeFile));
+			if (checkpointFile != null)
+				runner.setCheckpointer(new Checkpointer(new File(checkpointFile),
+						(long) (checkpointEvery * 1000)));
+
+			MemoryDataSink memory = null;
+			if (sinkName.equals("stdout"))
+				runner.addSink(new TextDataSink(new OutputStreamWriter(System.out), false));
+			else if (sinkName.equals("memory"))
+				runner.addSink(memory = new MemoryDataSink());
+			else if (!sinkName.equals("none"))
+				runner.addSink(new TextDataSink(new FileWriter(sinkName), true));
+			if (recordDir != null)
+				for (DataSource ds : model.getSources())
+					runner.addSink(new TrajectoryRecorder(new File(recordDir, ds.getName()
+							+ ReplayModel.FILE_SUFFIX), ds,
+							TrajectoryRecorder.CHUNK_CAPACITY_DEFAULT, compress), ds);
+
+			runner.run(until, (long) Math.min(Long.MAX_VALUE, wall * 1000));
+			runner.close();
+
+			if (memory != null)
+				for (String name : memory.getSourceNames())
+					System.err.println(name + ": " + memory.getCount(name) + " points in memory");
+		}
+		catch (Exception e) {
+			logger.logp(Level.SEVERE, clsName, mtdName, "Run failed", e);
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Creates the model of a named scenario, of the ODE system in an equation
+	 * file, or for playing back a directory of recordings.
+	 *
+	 * @param name
+	 *            one of the scenario names used by LorenzLab, the path of an
+	 *            equation file (*.ode), or the path of a directory containing
+	 *            recordings (*.trj)
+	 */
+	public static ScenarioModel createModel(String name) throws Exception {
+		return createModel(name, null);
+	}
+
+	/**
+	 * Same as {@link #createModel(String)}, but lets an ODE scenario's
+	 * trajectories use a named integrator.
+	 *
+	 * @param integrator
+	 *            RK4, DP45, ABM4, or null for the scenario's own choice. Must be
+	 *            null unless the scenario is an ODE scenario.
+	 */
+	public static ScenarioModel createModel(String name, String integrator)
+			throws Exception {
+		if (name.equals("Lorenz"))
+			return createODEModel(new LorenzSystem(), integrator);
+		if (name.equals("RotatingPendulum"))
+			return createODEModel(new RotatingPendulumSystem(), integrator);
+		if (name.equals("PlanarPendulum"))
+			return createODEModel(new PlanarPendulumSystem(), integrator);
+		if (name.endsWith(".ode"))
+			return createODEModel(EquationCompiler.compile(new File(name)), integrator);
+		if (integrator != null)
+			throw new IllegalArgumentException("-integrator only applies to ODE scenarios");
+		if (name.equals("RandomFlier"))
+			return new RandomFlierModel();
+		if (name.equals("RandomWalker"))
+			return new RandomWalkerModel();
+		if (new File(name).isDirectory())
+			return new ReplayModel(new File(name));
+		throw new IllegalArgumentException("Scenario \"" + name + "\" not recognized.");
+	}
+
+	/**
+	 * Creates a model of two trajectories of the given system, integrated
+	 * with the named integrator: RK4, DP45, ABM4, or null for RK4.
+	 */
+	public static ODETrajectoryPairModel createODEModel(ODESystem_3D sys,
+			String integrator) {
+		if (integrator == null || integrator.equals("RK4"))
+			return new ODETrajectoryPairModel(sys);
+		if (integrator.equals("DP45"))
+			return new ODETrajectoryPairModel(sys) {
+				@Override
+				protected ODEIntegrator_3D createIntegrator(String name,
+						ODESystem_3D sys, DataPoint ic) {
+					return new DormandPrince45_3D(name, sys, ic);
+				}
+			};
+		if (integrator.equals("ABM4"))
+			return new ODETrajectoryPairModel(sys) {
+				@Override
+				protected ODEIntegrator_3D createIntegrator(String name,
+						ODESystem_3D sys, DataPoint ic) {
+					return new AdamsBashforthMoulton4_3D(name, sys, ic,
+							AdamsBashforthMoulton4_3D.Mode.PECE);
+				}
+			};
+		throw new IllegalArgumentException("Integrator \"" + integrator
+				+ "\" not recognized.");
+	}
+
+	// ==========================================
+	// Inner classes
+	// ==========================================
+
+	private static class PointCounter implements DataSourceListener {
+
+		private final AtomicLong count = new AtomicLong();
+
+		@Override
+		public void dataPointGenerated(DataSourceEvent e) {
+			count.incrementAndGet();
+		}
+
+		@Override
+		public void dataSourceReset(DataSourceEvent e) {}
+	}
+
+	// ==========================================
+	// Variables
+	// ==========================================
+
+	private static final double CHUNK_TIME_DEFAULT = 1.0;
+	private static final long REPORT_INTERVAL_MILLIS = 5000;
+	private static final double CHECKPOINT_INTERVAL_DEFAULT = 10;
+
+	private final ScenarioModel model;
+	private final DataSourceContainer sources;
+	private final List<DataSink> sinks;
+	private final PointCounter counter;
+	private Checkpointer checkpointer;
+	private int emitEvery;
+	private double chunkTime;
+
+	// results of the last run
+	private long steps;
+	private long points;
+	private long elapsedMillis;
+
+	// ==========================================
+	// Creation
+	// ==========================================
+
+	public BatchRunner(ScenarioModel model) {
+		super();
+		if (model == null)
+			throw new IllegalArgumentException("model cannot be null");
+		this.model = model;
+		this.sources = new DataSourceContainer();
+		this.sinks = new ArrayList<DataSink>();
+		this.counter = new PointCounter();
+		this.emitEvery = 1;
+		this.chunkTime = CHUNK_TIME_DEFAULT;
+		model.setup(sources);
+		for (DataSource ds : model.getSources()) {
+			// the sinks and the counter copy out what they need
+			ds.setReuseEvents(true);
+			ds.addDataSourceListener(counter);
+		}
+	}
+
+	// ==========================================
+	// Operation
+	// ==========================================
+
+	public ScenarioModel getModel() {
+		return model;
+	}
+
+	public DataSourceContainer getSources() {
+		return sources;
+	}
+
+	public List<DataSink> getSinks() {
+		return Collections.unmodifiableList(sinks);
+	}
+
+	public void addSink(DataSink sink) {
+		if (sink == null)
+			throw new IllegalArgumentException("sink cannot be null");
+		sinks.add(sink);
+		for (DataSource ds : model.getSources())
+			ds.addDataSourceListener(sink);
+	}
+
+	/**
+	 * Adds a sink that is told only about the points of the given data
+	 * source, such as a {@link TrajectoryRecorder}.
+	 */
+	public void addSink(DataSink sink, DataSource source) {
+		if (sink == null)
+			throw new IllegalArgumentException("sink cannot be null");
+		if (!model.getSources().contains(source))
+			throw new IllegalArgumentException("source is not one of the model's");
+		sinks.add(sink);
+		source.addDataSourceListener(sink);
+	}
+
+	public Checkpointer getCheckpointer() {
+		return checkpointer;
+	}
+
+	/**
+	 * Sets the checkpointer that run() gives a chance to take a checkpoint
+	 * between chunks, and that takes one at the end of the run. May be null.
+	 * Closed by {@link #close()}.
+	 */
+	public void setCheckpointer(Checkpointer checkpointer) {
+		this.checkpointer = checkpointer;
+	}
+
+	/**
+	 * Restores the data sources from a checkpoint of this runner's scenario.
+	 * The sinks are told that each source was reset.
+	 */
+	public void resume(File file) throws IOException {
+		final String mtdName = "resume";
+		Checkpoint cp = Checkpoint.read(file);
+		cp.restore(sources);
+		if (logger.isLoggable(Level.INFO))
+			logger.logp(Level.INFO, clsName, mtdName, "Resumed at t=" + cp.getTime()
+					+ " from " + file);
+	}
+
+	public void setParallel(boolean parallel) {
+		sources.setParallel(parallel);
+	}
+
+	public int getEmitEvery() {
+		return emitEvery;
+	}
+
+	/**
+	 * Sets how often the sinks are told about a data source's points: every
+	 * emitEvery-th point, or never if 0.
+	 */
+	public void setEmitEvery(int emitEvery) {
+		if (!(emitEvery >= 0))
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		this.emitEvery = emitEvery;
+	}
+
+	public double getChunkTime() {
+		return chunkTime;
+	}
+
+	/**
+	 * Sets the simulated time by which the data sources are advanced between
+	 * checks of the wall clock.
+	 */
+	public void setChunkTime(double chunkTime) {
+		if (!(chunkTime > 0))
+			throw new IllegalArgumentException("Bad value chunkTime=" + chunkTime
+					+ " -- must be > 0");
+		this.chunkTime = chunkTime;
+	}
+
+	/**
+	 * Sets the time step of every data source.
+	 */
+	public void setSourceTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		for (DataSource ds : model.getSources())
+			ds.setTimeStep(timeStep);
+	}
+
+	/**
+	 * Advances the data sources until the simulated time reaches stopTime or
+	 * maxMillis of wall-clock time have passed, whichever is first, then
+	 * flushes the sinks. Does not close them.
+	 *
+	 * @return the total number of steps taken by the data sources
+	 */
+	public long run(double stopTime, long maxMillis) throws IOException {
+		final String mtdName = "run";
+		final long startMillis = System.currentTimeMillis();
+		final long startPoints = counter.count.get();
+		long nextReport = startMillis + REPORT_INTERVAL_MILLIS;
+		long n = 0;
+		try {
+			while (sources.getCurrentTime() < stopTime) {
+				final double t = Math.min(sources.getCurrentTime() + chunkTime, stopTime);
+				n += sources.advanceTo(t, emitEvery);
+				if (checkpointer != null)
+					checkpointer.maybeCheckpoint(sources);
+
+				final long now = System.currentTimeMillis();
+				if (now - startMillis >= maxMillis)
+					break;
+				if (now >= nextReport) {
+					report(mtdName, n, counter.count.get() - startPoints, now - startMillis);
+					nextReport = now + REPORT_INTERVAL_MILLIS;
+				}
+			}
+		}
+		finally {
+			for (DataSink sink : sinks)
+				sink.flush();
+			steps = n;
+			points = counter.count.get() - startPoints;
+			elapsedMillis = System.currentTimeMillis() - startMillis;
+		}
+		report(mtdName, steps, points, elapsedMillis);
+		if (checkpointer != null)
+			checkpointer.checkpoint(sources);
+		return steps;
+	}
+
+	/**
+	 * Closes the sinks and the checkpointer, waiting for the last checkpoint
+	 * to be written, and tears down the model.
+	 */
+	public void close() throws IOException {
+		if (checkpointer != null) {
+			try {
+				checkpointer.close();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		sources.setParallel(false);
+		model.teardown(sources);
+		for (DataSink sink : sinks)
+			sink.close();
+	}
+
+	/**
+	 * Returns the number of steps taken in the last run.
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the number of points emitted in the last run.
+	 */
+	public long getPoints() {
+		return points;
+	}
+
+	/**
+	 * Returns the wall-clock time taken by the last run.
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	public double getStepsPerSecond() {
+		return (elapsedMillis == 0) ? 0 : 1000.0 * steps / elapsedMillis;
+	}
+
+	// ==========================================
+	// Private
+	// ==========================================
+
+	private void report(String mtdName, long steps, long points, long millis) {
+		if (logger.isLoggable(Level.INFO)) {
+			final double seconds = Math.max(millis, 1) / 1000.0;
+			logger.logp(Level.INFO, clsName, mtdName, String.format(
+					"t=%.6g: %d steps (%.3g/s), %d points (%.3g/s) in %.3f s", sources
+							.getCurrentTime(), steps, steps / seconds, points, points
+							/ seconds, seconds));
+		}
+	}
+
+	/**
+	 * Applies "name=value" coefficient settings to an ODE scenario's system.
+	 */
+	private static void setCoefficients(ScenarioModel model, List<String> settings) {
+		if (!(model instanceof ODETrajectoryPairModel))
+			throw new IllegalArgumentException("-coeff only applies to ODE scenarios");
+		ODESystem_3D sys = ((ODETrajectoryPairModel) model).getSystem();
+		Map<String, Double> coeffs = new HashMap<String, Double>();
+		for (String s : settings) {
+			int eq = s.indexOf('=');
+			if (eq < 0)
+				throw new IllegalArgumentException("Bad coefficient setting \"" + s
+						+ "\" -- must be name=value");
+			String name = s.substring(0, eq);
+			if (!sys.getCoefficients().containsKey(name))
+				throw new IllegalArgumentException("Coefficient \"" + name
+						+ "\" not recognized.");
+			coeffs.put(name, Double.valueOf(s.substring(eq + 1)));
+		}
+		sys.setCoefficients(coeffs);
+	}
+}
@@ -0,0 +1,580 @@
+package lorenz.lab10;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Headless calculation of bifurcation diagrams: the local maxima of one
+ * coordinate of an {@link ODESystem_3D}'s trajectory, as one of its
+ * coefficients is swept over a range.
+ * <p>
+ * Each coefficient value is integrated independently, from the system's
+ * initial state hint, with a {@link DormandPrince45_3D}. The maxima are the
+ * downward crossings of the surface dq/dt = 0 (q being the observed
+ * coordinate), located by a {@link PoincareDataSource}. Those in the
+ * transient are discarded.
+ * <p>
+ * The coefficient values are shared out among a pool of worker threads. Since
+ * setCoefficients changes an ODE system's state, every coefficient value gets
+ * its own ODE system instance, made by the given {@link ODESystemFactory_3D}.
+ * The ODE system must be autonomous: the surface of section is evaluated at
+ * t=0.
+ *
+ * @author jehanson
+ */
+public class BifurcationEngine {
+
+	private static final String clsName = BifurcationEngine.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The maxima found for each coefficient value.
+	 */
+	public static class Result {
+
+		// "LBIF"
+		private static final int MAGIC = 0x4c424946;
+		private static final int VERSION = 1;
+
+		private final String coefficientName;
+		private final String coordinateLabel;
+		private final double[] coefficientValues;
+		private final double[][] maxima;
+		private final long elapsedMillis;
+
+		Result(String coefficientName, String coordinateLabel,
+				double[] coefficientValues, double[][] maxima, long elapsedMillis) {
+			this.coefficientName = coefficientName;
+			this.coordinateLabel = coordinateLabel;
+			this.coefficientValues = coefficientValues;
+			this.maxima = maxima;
+			this.elapsedMillis = elapsedMillis;
+		}
+
+		public String getCoefficientName() {
+			return coefficientName;
+		}
+
+		public String getCoordinateLabel() {
+			return coordinateLabel;
+		}
+
+		public int getCount() {
+			return coefficientValues.length;
+		}
+
+		public double getCoefficientValue(int i) {
+			return coefficientValues[i];
+		}
+
+		/**
+		 * Returns the live array of maxima found for the i-th coefficient
+		 * value. Callers must not modify it.
+		 */
+		public double[] getMaxima(int i) {
+			return maxima[i];
+		}
+
+		/**
+		 * Returns the wall-clock time taken by the calculation, or 0 if the
+		 * result was read from a file.
+		 */
+		public long getElapsedMillis() {
+			return elapsedMillis;
+		}
+
+		/**
+		 * Writes the result in a compact binary format: a header, then for
+		 * each coefficient value the value, the number of maxima, and the
+		 * maxima as floats.
+		 */
+		public void write(File file) throws IOException {
+			DataOutputStream out =
+					new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(coefficientName);
+				out.writeUTF(coordinateLabel);
+				out.writeInt(coefficientValues.length);
+				for (int i = 0; i < coefficientValues.length; i++) {
+					out.writeDouble(coefficientValues[i]);
+					out.writeInt(maxima[i].length);
+					for (int j = 0; j < maxima[i].length; j++)
+						out.writeFloat((float) maxima[i][j]);
+				}
+			}
+			finally {
+				out.close();
+			}
+		}
+
+		/**
+		 * Reads a result written by {@link #write(File)}.
+		 */
+		public static Result read(File file) throws IOException {
+			DataInputStream in =
+					new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if (in.readInt() != MAGIC)
+					throw new IOException(file + " is not a bifurcation diagram file");
+				int version = in.readInt();
+				if (version != VERSION)
+					throw new IOException("Unsupported version " + version + " in " + file);
+				String coefficientName = in.readUTF();
+				String coordinateLabel = in.readUTF();
+				int n = in.readInt();
+				double[] values = new double[n];
+				double[][] maxima = new double[n][];
+				for (int i = 0; i < n; i++) {
+					values[i] = in.readDouble();
+					maxima[i] = new double[in.readInt()];
+					for (int j = 0; j < maxima[i].length; j++)
+						maxima[i][j] = in.readFloat();
+				}
+				return new Result(coefficientName, coordinateLabel, values, maxima, 0);
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		/**
+		 * Writes the diagram as a PNG image, coefficient value across and
+		 * maximum upward. Each pixel's darkness grows with the logarithm of
+		 * the number of maxima that fall in it.
+		 */
+		public void writeImage(File file, int width, int height) throws IOException {
+			if (!(width > 0))
+				throw new IllegalArgumentException("Bad value width=" + width + " -- must be > 0");
+			if (!(height > 0))
+				throw new IllegalArgumentException("Bad value height=" + height
+						+ " -- must be > 0");
+
+			double lo = Double.POSITIVE_INFINITY;
+			double hi = Double.NEGATIVE_INFINITY;
+			for (double[] m : maxima)
+				for (int j = 0; j < m.length; j++) {
+					lo = Math.min(lo, m[j]);
+					hi = Math.max(hi, m[j]);
+				}
+			if (!(hi > lo)) {
+				lo -= 0.5;
+				hi += 0.5;
+			}
+
+			final int n = coefficientValues.length;
+			final int[] counts = new int[width * height];
+			int maxCount = 0;
+			for (int i = 0; i < n; i++) {
+				int col = (n == 1) ? 0 : (int) ((long) i * (width - 1) / (n - 1));
+				for (int j = 0; j < maxima[i].length; j++) {
+					int row = (int) ((hi - maxima[i][j]) / (hi - lo) * (height - 1));
+					int c = ++counts[row * width + col];
+					if (c > maxCount)
+						maxCount = c;
+				}
+			}
+
+			final BufferedImage image =
+					new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+			final int[] rgb = new int[width * height];
+			final double scale = 1.0 / Math.log(1 + maxCount);
+			for (int k = 0; k < rgb.length; k++) {
+				int gray = 255;
+				if (counts[k] > 0)
+					gray = (int) (192 * (1 - Math.log(1 + counts[k]) * scale));
+				rgb[k] = (gray << 16) | (gray << 8) | gray;
+			}
+			image.setRGB(0, 0, width, height, rgb, 0, width);
+			ImageIO.write(image, "png", file);
+		}
+	}
+
+	private class Sweep implements Callable<double[]> {
+
+		private final double value;
+
+		public Sweep(double value) {
+			this.value = value;
+		}
+
+		@Override
+		public double[] call() {
+			return findMaxima(value);
+		}
+	}
+
+	/**
+	 * The surface dq/dt = 0, q being the observed coordinate. Its gradient is
+	 * the corresponding row of the Jacobian.
+	 */
+	private static class ExtremumSection implements PoincareSection_3D {
+
+		private final ODESystem_3D odeSystem;
+		private final int coordinate;
+		private final double[] pDot = new double[3];
+		private final double[] jacobian = new double[9];
+
+		public ExtremumSection(ODESystem_3D odeSystem, int coordinate) {
+			this.odeSystem = odeSystem;
+			this.coordinate = coordinate;
+		}
+
+		@Override
+		public double value(double[] p) {
+			odeSystem.takeDerivatives(0, p, pDot);
+			return pDot[coordinate];
+		}
+
+		@Override
+		public void gradient(double[] p, double[] grad) {
+			odeSystem.getJacobian(0, p, jacobian);
+			grad[0] = jacobian[3 * coordinate];
+			grad[1] = jacobian[3 * coordinate + 1];
+			grad[2] = jacobian[3 * coordinate + 2];
+		}
+	}
+
+	/**
+	 * Collects the observed coordinate of the crossing points into a
+	 * primitive array.
+	 */
+	private static class MaximaCollector implements DataSourceListener {
+
+		private final int coordinate;
+		private final double[] values;
+		private int count;
+
+		public MaximaCollector(int coordinate, int capacity) {
+			this.coordinate = coordinate;
+			this.values = new double[capacity];
+		}
+
+		public boolean isFull() {
+			return count == values.length;
+		}
+
+		public double[] getValues() {
+			return Arrays.copyOf(values, count);
+		}
+
+		@Override
+		public void dataPointGenerated(DataSourceEvent event) {
+			if (count < values.length)
+				values[count++] =
+						(coordinate == 0) ? event.getX() : (coordinate == 1) ? event.getY()
+								: event.getZ();
+		}
+
+		@Override
+		public void dataSourceReset(DataSourceEvent event) {
+			count = 0;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private int count = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, BifurcationEngine.class.getSimpleName() + "-worker-"
+					+ count++);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TRANSIENT_TIME_DEFAULT = 100.0;
+	private static final double SAMPLE_TIME_DEFAULT = 200.0;
+	private static final int MAX_MAXIMA_DEFAULT = 500;
+
+	// Sampling is done in chunks of this much time, so that it can stop early
+	// once enough maxima have been found.
+	private static final double SAMPLE_CHUNK = 10.0;
+
+	private final ODESystemFactory_3D factory;
+	private final String coefficientName;
+	private final double from;
+	private final double to;
+	private final int count;
+
+	private int coordinate;
+	private double transientTime;
+	private double sampleTime;
+	private int maxMaxima;
+	private double relTolerance;
+	private int threadCount;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param factory
+	 *            makes the ODE systems to be integrated
+	 * @param coefficientName
+	 *            the coefficient to sweep. Must be one of the keys of the ODE
+	 *            system's getCoefficients().
+	 * @param from
+	 *            the first coefficient value
+	 * @param to
+	 *            the last coefficient value
+	 * @param count
+	 *            the number of coefficient values, evenly spaced from first to
+	 *            last
+	 */
+	public BifurcationEngine(ODESystemFactory_3D factory, String coefficientName,
+			double from, double to, int count) {
+		if (factory == null)
+			throw new IllegalArgumentException("factory cannot be null");
+		if (coefficientName == null)
+			throw new IllegalArgumentException("coefficientName cannot be null");
+		if (!(count > 0))
+			throw new IllegalArgumentException("Bad value count=" + count + " -- must be > 0");
+		ODESystem_3D prototype = factory.newSystem();
+		if (!prototype.getCoefficients().containsKey(coefficientName))
+			throw new IllegalArgumentException("Coefficient \"" + coefficientName
+					+ "\" not recognized.");
+
+		this.factory = factory;
+		this.coefficientName = coefficientName;
+		this.from = from;
+		this.to = to;
+		this.count = count;
+		this.coordinate = 2;
+		this.transientTime = TRANSIENT_TIME_DEFAULT;
+		this.sampleTime = SAMPLE_TIME_DEFAULT;
+		this.maxMaxima = MAX_MAXIMA_DEFAULT;
+		this.relTolerance = new DormandPrince45_3D(prototype).getRelTolerance();
+		this.threadCount = Runtime.getRuntime().availableProcessors();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public String getCoefficientName() {
+		return coefficientName;
+	}
+
+	public double getFrom() {
+		return from;
+	}
+
+	public double getTo() {
+		return to;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the coefficient's i-th value.
+	 */
+	public double getCoefficientValue(int i) {
+		return (count == 1) ? from : from + i * (to - from) / (count - 1);
+	}
+
+	/**
+	 * Returns the index of the coordinate whose maxima are collected. The
+	 * default is 2 (z).
+	 */
+	public int getCoordinate() {
+		return coordinate;
+	}
+
+	public void setCoordinate(int coordinate) {
+		if (!(coordinate >= 0 && coordinate < 3))
+			throw new IllegalArgumentException("Bad value coordinate=" + coordinate
+					+ " -- must be 0, 1 or 2");
+		this.coordinate = coordinate;
+	}
+
+	/**
+	 * Returns the time integrated, for each coefficient value, before maxima
+	 * are collected.
+	 */
+	public double getTransientTime() {
+		return transientTime;
+	}
+
+	public void setTransientTime(double transientTime) {
+		if (!(transientTime >= 0))
+			throw new IllegalArgumentException("Bad value transientTime=" + transientTime
+					+ " -- must be >= 0");
+		this.transientTime = transientTime;
+	}
+
+	/**
+	 * Returns the longest time integrated, for each coefficient value, while
+	 * collecting maxima.
+	 */
+	public double getSampleTime() {
+		return sampleTime;
+	}
+
+	public void setSampleTime(double sampleTime) {
+		if (!(sampleTime > 0))
+			throw new IllegalArgumentException("Bad value sampleTime=" + sampleTime
+					+ " -- must be > 0");
+		this.sampleTime = sampleTime;
+	}
+
+	/**
+	 * Returns the most maxima collected for each coefficient value.
+	 */
+	public int getMaxMaxima() {
+		return maxMaxima;
+	}
+
+	public void setMaxMaxima(int maxMaxima) {
+		if (!(maxMaxima > 0))
+			throw new IllegalArgumentException("Bad value maxMaxima=" + maxMaxima
+					+ " -- must be > 0");
+		this.maxMaxima = maxMaxima;
+	}
+
+	/**
+	 * Returns the integrator's relative error tolerance.
+	 */
+	public double getRelTolerance() {
+		return relTolerance;
+	}
+
+	public void setRelTolerance(double relTolerance) {
+		if (!(relTolerance > 0))
+			throw new IllegalArgumentException("Bad value relTolerance=" + relTolerance
+					+ " -- must be > 0");
+		this.relTolerance = relTolerance;
+	}
+
+	/**
+	 * Returns the number of worker threads. The default is the number of
+	 * processors.
+	 */
+	public int getThreadCount() {
+		return threadCount;
+	}
+
+	public void setThreadCount(int threadCount) {
+		if (!(threadCount > 0))
+			throw new IllegalArgumentException("Bad value threadCount=" + threadCount
+					+ " -- must be > 0");
+		this.threadCount = threadCount;
+	}
+
+	/**
+	 * Calculates the diagram, blocking until it is done.
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting. The workers are stopped.
+	 */
+	public Result run() throws InterruptedException {
+		final String mtdName = "run";
+		final long startMillis = System.currentTimeMillis();
+
+		final double[] values = new double[count];
+		for (int i = 0; i < count; i++)
+			values[i] = getCoefficientValue(i);
+
+		final ExecutorService executor =
+				Executors.newFixedThreadPool(threadCount, new DaemonThreadFactory());
+		final double[][] maxima = new double[count][];
+		try {
+			final List<Future<double[]>> results = new ArrayList<Future<double[]>>(count);
+			for (int i = 0; i < count; i++)
+				results.add(executor.submit(new Sweep(values[i])));
+			for (int i = 0; i < count; i++) {
+				try {
+					maxima[i] = results.get(i).get();
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Error)
+						throw (Error) cause;
+					throw (cause instanceof RuntimeException) ? (RuntimeException) cause
+							: new IllegalStateException(cause);
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		final String coordinateLabel = factory.newSystem().getCoordinateLabels()[coordinate];
+		final Result result =
+				new Result(coefficientName, coordinateLabel, values, maxima,
+						System.currentTimeMillis() - startMillis);
+		if (logger.isLoggable(Level.INFO))
+			logger.logp(Level.INFO, clsName, mtdName, count + " values of "
+					+ coefficientName + " on " + threadCount + " threads in "
+					+ result.getElapsedMillis() + " ms");
+		return result;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Integrates the ODE system with the given coefficient value and returns
+	 * the maxima found after the transient. Called on a worker thread.
+	 */
+	private double[] findMaxima(double value) {
+		final ODESystem_3D odeSystem = factory.newSystem();
+		Map<String, Double> coeffs = new HashMap<String, Double>();
+		coeffs.put(coefficientName, Double.valueOf(value));
+		odeSystem.setCoefficients(coeffs);
+
+		final DormandPrince45_3D integrator = new DormandPrince45_3D(odeSystem);
+		integrator.setRelTolerance(relTolerance);
+		final PoincareDataSource section =
+				new PoincareDataSource("", integrator, new ExtremumSection(odeSystem,
+						coordinate), PoincareDataSource.Direction.DOWNWARD);
+		final MaximaCollector collector = new MaximaCollector(coordinate, maxMaxima);
+
+		section.advanceTo(transientTime, 0);
+		section.setReuseEvents(true);
+		section.addDataSourceListener(collector);
+		final double stopTime = transientTime + sampleTime;
+		double t = transientTime;
+		while (t < stopTime && !collector.isFull() && !Thread.currentThread().isInterrupted()) {
+			t = Math.min(t + SAMPLE_CHUNK, stopTime);
+			section.advanceTo(t, 1);
+		}
+		return collector.getValues();
+	}
+}
@@ -0,0 +1,203 @@
+package lorenz.lab10;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A snapshot of the state of a {@link DataSourceContainer} and all its data
+ * sources, from which a run can be resumed where it was instead of being
+ * re-integrated from the start.
+ * <p>
+ * Capturing a checkpoint writes the container's state into a byte array in
+ * memory. That is a few hundred bytes per data source and takes microseconds,
+ * so it can be done between steps on the thread that is stepping the sources;
+ * writing the array to a file can then be left to another thread (see
+ * {@link Checkpointer}). Restoring a checkpoint requires a container with the
+ * same data sources, e.g. one set up by the same {@link ScenarioModel}.
+ * <p>
+ * File format, big-endian: magic "LCHK", version, the container's time, the
+ * length of the state, then the state written by
+ * {@link DataSourceContainer#writeState(DataOutput)}.
+ *
+ * @author jehanson
+ */
+public class Checkpoint {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	public static final int MAGIC = 0x4c43484b; // "LCHK"
+	public static final int VERSION = 1;
+
+	private final double time;
+	private final byte[] state;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	private Checkpoint(double time, byte[] state) {
+		super();
+		this.time = time;
+		this.state = state;
+	}
+
+	/**
+	 * Captures the state of the container and its data sources. The sources
+	 * must not be stepped while this runs.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a data source isn't {@link Checkpointable}
+	 */
+	public static Checkpoint capture(DataSourceContainer sources) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+		try {
+			sources.writeState(new DataOutputStream(bytes));
+		}
+		catch (IOException e) {
+			// ByteArrayOutputStream doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return new Checkpoint(sources.getCurrentTime(), bytes.toByteArray());
+	}
+
+	/**
+	 * Reads a checkpoint written by {@link #write(File)}.
+	 */
+	public static Checkpoint read(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			if (in.readInt() != MAGIC)
+				throw new IOException(file + " is not a checkpoint file");
+			int version = in.readInt();
+			if (version != VERSION)
+				throw new IOException("Unsupported version " + version + " in " + file);
+			final double time = in.readDouble();
+			final int length = in.readInt();
+			if (length < 0)
+				throw new IOException("Bad state length " + length + " in " + file);
+			byte[] state = new byte[length];
+			in.readFully(state);
+			return new Checkpoint(time, state);
+		}
+		finally {
+			in.close();
+		}
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	/**
+	 * Returns the container's time when the checkpoint was captured.
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * Returns the size of the captured state in bytes.
+	 */
+	public int getSize() {
+		return state.length;
+	}
+
+	/**
+	 * Restores the container and its data sources to the captured state, and
+	 * tells each source's listeners that it was reset. The sources must not
+	 * be stepped while this runs.
+	 *
+	 * @throws IOException
+	 *             if the container doesn't have the data sources that were
+	 *             captured
+	 */
+	public void restore(DataSourceContainer sources) throws IOException {
+		sources.readState(new DataInputStream(new ByteArrayInputStream(state)));
+	}
+
+	/**
+	 * Writes the checkpoint to a file. The file is written under a temporary
+	 * name and then renamed, so an existing checkpoint is replaced only by a
+	 * complete one.
+	 */
+	public void write(File file) throws IOException {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream fos = new FileOutputStream(tmp);
+		try {
+			DataOutputStream out = new DataOutputStream(fos);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeDouble(time);
+			out.writeInt(state.length);
+			out.write(state);
+			out.flush();
+			fos.getFD().sync();
+		}
+		finally {
+			fos.close();
+		}
+		// renameTo won't replace an existing file on some platforms
+		if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+			throw new IOException("Cannot rename " + tmp + " to " + file);
+	}
+
+	// =============================================
+	// Helpers for writeState and readState
+	// =============================================
+
+	static void writeArray(DataOutput out, double[] a) throws IOException {
+		for (double v : a)
+			out.writeDouble(v);
+	}
+
+	/**
+	 * Reads into an array of the same length as the one written.
+	 */
+	static void readArray(DataInput in, double[] a) throws IOException {
+		for (int i = 0; i < a.length; i++)
+			a[i] = in.readDouble();
+	}
+
+	static void writePoint(DataOutput out, DataPoint p) throws IOException {
+		out.writeDouble(p.getX());
+		out.writeDouble(p.getY());
+		out.writeDouble(p.getZ());
+	}
+
+	static DataPoint readPoint(DataInput in) throws IOException {
+		return new DataPoint(in.readDouble(), in.readDouble(), in.readDouble());
+	}
+
+	static void writeCoefficients(DataOutput out, Map<String, Double> coefficients)
+			throws IOException {
+		out.writeInt(coefficients.size());
+		for (Map.Entry<String, Double> e : coefficients.entrySet()) {
+			out.writeUTF(e.getKey());
+			out.writeDouble(e.getValue().doubleValue());
+		}
+	}
+
+	static Map<String, Double> readCoefficients(DataInput in) throws IOException {
+		final int n = in.readInt();
+		if (n < 0)
+			throw new IOException("Bad coefficient count " + n);
+		Map<String, Double> coefficients = new TreeMap<String, Double>();
+		for (int i = 0; i < n; i++) {
+			String name = in.readUTF();
+			coefficients.put(name, Double.valueOf(in.readDouble()));
+		}
+		return coefficients;
+	}
+}
@@ -0,0 +1,175 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Saves the data sources to a {@link Checkpoint} file, and restores them from
+ * one. The state is captured and restored between two of the runner's steps,
+ * so it can be done while the runner is running; the file is written and read
+ * on the UI thread.
+ * <p>
+ * A checkpoint can only be restored into the scenario that saved it.
+ *
+ * @author jehanson
+ */
+public class CheckpointControl {
+
+	private static final String clsName = CheckpointControl.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ======================================
+	// Variables
+	// ======================================
+
+	public static final String FILE_DEFAULT = "lorenzlab.checkpoint";
+
+	private final DataSourceContainer sources;
+	private final RunnerControl runner;
+	private Composite cpane;
+	private Text fileField;
+	private Button saveButton;
+	private Button restoreButton;
+	private Label statusLabel;
+
+	// ======================================
+	// Creation
+	// ======================================
+
+	public CheckpointControl(DataSourceContainer sources, RunnerControl runner) {
+		if (sources == null)
+			throw new IllegalArgumentException("Argument \"sources\" cannot be null");
+		if (runner == null)
+			throw new IllegalArgumentException("Argument \"runner\" cannot be null");
+		this.sources = sources;
+		this.runner = runner;
+	}
+
+	// ======================================
+	// Operation
+	// ======================================
+
+	public Control buildControls(Composite parent) {
+		cpane = new Composite(parent, SWT.NONE);
+		cpane.setLayout(new GridLayout(4, true));
+
+		Label fileLabel = new Label(cpane, SWT.LEFT);
+		fileLabel.setText("Checkpoint file:");
+		fileLabel.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 4, 1));
+
+		fileField = new Text(cpane, SWT.SINGLE | SWT.LEFT);
+		fileField.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 4, 1));
+		fileField.setText(FILE_DEFAULT);
+
+		saveButton = new Button(cpane, SWT.PUSH);
+		saveButton.setText("Save");
+		saveButton.setToolTipText("save the data sources to the checkpoint file");
+		saveButton.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		saveButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				save(getFile());
+			}
+		});
+
+		restoreButton = new Button(cpane, SWT.PUSH);
+		restoreButton.setText("Restore");
+		restoreButton.setToolTipText("restore the data sources from the checkpoint file");
+		restoreButton
+				.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 2, 1));
+		restoreButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				restore(getFile());
+			}
+		});
+
+		statusLabel = new Label(cpane, SWT.LEFT);
+		statusLabel.setText("");
+		statusLabel.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 4, 1));
+
+		return cpane;
+	}
+
+	/**
+	 * Captures the data sources between two steps and writes them to the file.
+	 * Failures are logged and shown in the status line.
+	 */
+	public void save(File file) {
+		final String mtdName = "save";
+		final Checkpoint[] captured = new Checkpoint[1];
+		try {
+			runner.runBetweenSteps(new Runnable() {
+				@Override
+				public void run() {
+					captured[0] = Checkpoint.capture(sources);
+				}
+			});
+			captured[0].write(file);
+			showStatus("Saved t=" + captured[0].getTime() + " to " + file.getName());
+		}
+		catch (Exception e) {
+			logger.logp(Level.WARNING, clsName, mtdName, "Cannot save checkpoint to "
+					+ file, e);
+			showStatus("Save failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the file and restores the data sources from it between two steps.
+	 * Failures are logged and shown in the status line.
+	 */
+	public void restore(File file) {
+		final String mtdName = "restore";
+		final IOException[] failure = new IOException[1];
+		try {
+			final Checkpoint checkpoint = Checkpoint.read(file);
+			runner.runBetweenSteps(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						checkpoint.restore(sources);
+					}
+					catch (IOException e) {
+						failure[0] = e;
+					}
+				}
+			});
+			if (failure[0] != null)
+				throw failure[0];
+			showStatus("Restored t=" + checkpoint.getTime() + " from " + file.getName());
+		}
+		catch (Exception e) {
+			logger.logp(Level.WARNING, clsName, mtdName,
+					"Cannot restore checkpoint from " + file, e);
+			showStatus("Restore failed: " + e.getMessage());
+		}
+	}
+
+	// =================================
+	// Private
+	// =================================
+
+	private File getFile() {
+		String name = fileField.getText().trim();
+		return new File(name.length() == 0 ? FILE_DEFAULT : name);
+	}
+
+	private void showStatus(String text) {
+		if (statusLabel != null && !statusLabel.isDisposed())
+			statusLabel.setText(text);
+	}
+}
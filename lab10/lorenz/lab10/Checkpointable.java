@@ -0,0 +1,33 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * An object whose state can be saved to a checkpoint and later restored, so
+ * that a run can pick up where it was instead of starting over. See
+ * {@link Checkpoint}.
+ * <p>
+ * The state is written in a compact binary form, not by Java serialization.
+ * It is the object's changing state -- a data source's current time and
+ * point, its random number generator, its integrator's adaptive step size, and
+ * the like -- plus those of its settings that a user can change while it runs.
+ * It is restored into an object of the same class, built the same way: a
+ * checkpoint is not a recipe for creating one.
+ * 
+ * @author jehanson
+ */
+public interface Checkpointable {
+
+	/**
+	 * Writes this object's state.
+	 */
+	public void writeState(DataOutput out) throws IOException;
+
+	/**
+	 * Reads back state written by writeState and makes it this object's
+	 * state.
+	 */
+	public void readState(DataInput in) throws IOException;
+}
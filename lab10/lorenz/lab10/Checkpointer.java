@@ -0,0 +1,139 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Takes a {@link Checkpoint} of a {@link DataSourceContainer} every so often
+ * and writes it to a file on a background thread, so the thread stepping the
+ * sources pays only for capturing the state in memory.
+ * <p>
+ * The stepping thread calls {@link #maybeCheckpoint(DataSourceContainer)}
+ * between steps. If the disk falls behind, a checkpoint that hasn't been
+ * written yet is replaced by the newer one rather than queued.
+ *
+ * @author jehanson
+ */
+public class Checkpointer {
+
+	private static final String clsName = Checkpointer.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	private class Writer implements Runnable {
+
+		@Override
+		public void run() {
+			final String mtdName = "run";
+			Checkpoint cp = pending.getAndSet(null);
+			if (cp == null)
+				return;
+			try {
+				cp.write(file);
+				if (logger.isLoggable(Level.FINE))
+					logger.logp(Level.FINE, clsName, mtdName, "Wrote checkpoint at t="
+							+ cp.getTime() + " to " + file);
+			}
+			catch (IOException e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "Cannot write checkpoint to "
+							+ file, e);
+			}
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, Checkpointer.class.getSimpleName());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private final File file;
+	private final long intervalMillis;
+	private final ExecutorService executor;
+	private final AtomicReference<Checkpoint> pending;
+	private long lastMillis;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param file
+	 *            the checkpoint file, replaced by each new checkpoint
+	 * @param intervalMillis
+	 *            wall-clock time between checkpoints
+	 */
+	public Checkpointer(File file, long intervalMillis) {
+		super();
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		if (!(intervalMillis >= 0))
+			throw new IllegalArgumentException("Bad value intervalMillis=" + intervalMillis
+					+ " -- must be >= 0");
+		this.file = file;
+		this.intervalMillis = intervalMillis;
+		this.executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory());
+		this.pending = new AtomicReference<Checkpoint>();
+		this.lastMillis = System.currentTimeMillis();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Takes a checkpoint if the interval has passed since the last one. Call
+	 * between steps, on the thread that steps the sources.
+	 *
+	 * @return true if a checkpoint was taken
+	 */
+	public boolean maybeCheckpoint(DataSourceContainer sources) {
+		final long now = System.currentTimeMillis();
+		if (now - lastMillis < intervalMillis)
+			return false;
+		checkpoint(sources);
+		return true;
+	}
+
+	/**
+	 * Takes a checkpoint now and queues it to be written.
+	 */
+	public void checkpoint(DataSourceContainer sources) {
+		lastMillis = System.currentTimeMillis();
+		// if the previous one is still pending, its writer will write this one
+		if (pending.getAndSet(Checkpoint.capture(sources)) == null)
+			executor.execute(new Writer());
+	}
+
+	/**
+	 * Waits for any pending checkpoint to be written, then stops the
+	 * background thread.
+	 */
+	public void close() throws InterruptedException {
+		executor.shutdown();
+		executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+}
@@ -0,0 +1,134 @@
+package lorenz.lab10;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Base class for the ODE systems generated by {@link EquationCompiler}. Holds
+ * everything the equations declare except the equations themselves:
+ * coordinate labels, coefficients, initial state and ranges. The generated
+ * subclass implements takeDerivatives, reading the coefficients from
+ * {@link #c}.
+ * <p>
+ * This class and its constructor are public because the generated subclass
+ * is loaded by a class loader of its own.
+ * 
+ * @author jehanson
+ */
+public abstract class CompiledODESystem extends AbstractODESystem_3D {
+
+	// =====================================
+	// Variables
+	// =====================================
+
+	private final String name;
+	private final String equations;
+	private final String[] coordinateLabels;
+	private final String[] coefficientLabels;
+	private final double[] coefficientDefaults;
+	private final DataPoint initialState;
+	private final DataBox bounds;
+
+	/**
+	 * Current coefficient values, in order of declaration.
+	 */
+	protected final double[] c;
+
+	// =====================================
+	// Creation
+	// =====================================
+
+	/**
+	 * @param name
+	 *            the system's name
+	 * @param equations
+	 *            the source text of the equations
+	 * @param coordinateLabels
+	 *            length-3 array of coordinate names
+	 * @param coefficientLabels
+	 *            coefficient names, in order of declaration
+	 * @param coefficientDefaults
+	 *            coefficient default values, in the same order
+	 * @param initialState
+	 *            length-3 array
+	 * @param min
+	 *            length-3 array of lower bounds of the data
+	 * @param max
+	 *            length-3 array of upper bounds of the data
+	 */
+	protected CompiledODESystem(String name, String equations, String[] coordinateLabels,
+			String[] coefficientLabels, double[] coefficientDefaults, double[] initialState,
+			double[] min, double[] max) {
+		super();
+		this.name = name;
+		this.equations = equations;
+		this.coordinateLabels = coordinateLabels.clone();
+		this.coefficientLabels = coefficientLabels.clone();
+		this.coefficientDefaults = coefficientDefaults.clone();
+		this.c = coefficientDefaults.clone();
+		this.initialState = new DataPoint(initialState[0], initialState[1], initialState[2]);
+		this.bounds =
+				new DataBox(new DataPoint(min[0], min[1], min[2]), new DataPoint(max[0],
+						max[1], max[2]));
+	}
+
+	// =====================================
+	// Operation
+	// =====================================
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the source text this system was compiled from.
+	 */
+	public String getEquations() {
+		return equations;
+	}
+
+	@Override
+	public String[] getCoordinateLabels() {
+		return coordinateLabels.clone();
+	}
+
+	@Override
+	public DataBox getDataBounds() {
+		return new DataBox(bounds);
+	}
+
+	@Override
+	public DataPoint getInitialStateHint() {
+		return initialState;
+	}
+
+	@Override
+	public Map<String, Double> getCoefficients() {
+		Map<String, Double> coeffs = new LinkedHashMap<String, Double>();
+		for (int i = 0; i < coefficientLabels.length; i++)
+			coeffs.put(coefficientLabels[i], Double.valueOf(c[i]));
+		return coeffs;
+	}
+
+	@Override
+	public Map<String, Double> getCoefficientsHint() {
+		Map<String, Double> coeffs = new LinkedHashMap<String, Double>();
+		for (int i = 0; i < coefficientLabels.length; i++)
+			coeffs.put(coefficientLabels[i], Double.valueOf(coefficientDefaults[i]));
+		return coeffs;
+	}
+
+	@Override
+	public void setCoefficients(Map<String, Double> coefficients) {
+		for (int i = 0; i < coefficientLabels.length; i++) {
+			Double v = coefficients.get(coefficientLabels[i]);
+			if (v != null)
+				c[i] = v.doubleValue();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
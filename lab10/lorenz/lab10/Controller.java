@@ -14,6 +14,8 @@ public class Controller {
 
 	private final RunnerControl runnerControls;
 	private final ScenarioControl scenarioControls;
+	private final CheckpointControl checkpointControls;
+	private final ViewerControl viewerControls;
 	
 	// ======================================
 	// Creation
@@ -23,6 +25,8 @@ public class Controller {
 		this.runnerControls = new RunnerControl(sources);
 		this.scenarioControls = new ScenarioControl(sources, viewer);
 		runnerControls.addRunnerControlListener(scenarioControls);
+		this.checkpointControls = new CheckpointControl(sources, runnerControls);
+		this.viewerControls = new ViewerControl(viewer);
 	}
 
 	// ======================================
@@ -40,6 +44,12 @@ public class Controller {
 		Control runnerPane = runnerControls.buildControls(cpane);
 		runnerPane.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false,  1, 1));
 
+		Control checkpointPane = checkpointControls.buildControls(cpane);
+		checkpointPane.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 1, 1));
+
+		Control viewerPane = viewerControls.buildControls(cpane);
+		viewerPane.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 1, 1));
+
 		Control scenarioPane = scenarioControls.buildControls(cpane);
 		scenarioPane.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true,  1, 1));
 		
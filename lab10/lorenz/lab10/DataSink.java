@@ -0,0 +1,27 @@
+package lorenz.lab10;
+
+import java.io.IOException;
+
+/**
+ * A destination for the points produced by a run, e.g. by the
+ * {@link BatchRunner}. A sink is added as a listener to every data source in
+ * the run. If the sources are stepped in parallel it is called from several
+ * threads at once, so implementations must be threadsafe.
+ * <p>
+ * Listener methods can't throw IOExceptions. Sinks that do I/O hold on to the
+ * first one and throw it from flush or close.
+ * 
+ * @author jehanson
+ */
+public interface DataSink extends DataSourceListener {
+
+	/**
+	 * Writes out anything buffered.
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Flushes, then releases any resources held by this sink.
+	 */
+	public void close() throws IOException;
+}
@@ -22,6 +22,11 @@ public abstract class DataSource implements Steppable {
 
 	private String name;
 	private final List<DataSourceListener> dsListeners;
+	private boolean reuseEvents;
+	private final DataSourceEvent reusableEvent;
+	private final double[] stateBuffer;
+	// steps taken by advanceTo since it last emitted a point
+	private int emitPhase;
 
 	// ===================================
 	// Creation
@@ -32,6 +37,10 @@ public abstract class DataSource implements Steppable {
 			throw new IllegalArgumentException("name cannot be null");
 		this.name = name;
 		this.dsListeners = new ArrayList<DataSourceListener>();
+		this.reuseEvents = false;
+		this.reusableEvent = new DataSourceEvent(this);
+		this.stateBuffer = new double[3];
+		this.emitPhase = 0;
 	}
 
 	// ===================================
@@ -46,6 +55,38 @@ public abstract class DataSource implements Steppable {
 
 	public abstract DataPoint getCurrentPoint();
 
+	/**
+	 * Copies the current state into the given array, without creating a
+	 * DataPoint. This implementation goes through getCurrentPoint(); subclasses
+	 * should override it.
+	 * 
+	 * @param p
+	 *            The array into which the state is placed. Must be a non-null
+	 *            array of length >= 3.
+	 */
+	public void copyCurrentState(double[] p) {
+		DataPoint dp = getCurrentPoint();
+		p[0] = dp.getX();
+		p[1] = dp.getY();
+		p[2] = dp.getZ();
+	}
+
+	public boolean isReusingEvents() {
+		return reuseEvents;
+	}
+
+	/**
+	 * Turns on or off the zero-garbage stepping mode. When on, step() fills in
+	 * and sends the same DataSourceEvent instance every time, and creates no
+	 * DataPoint unless a listener asks the event for one. Only turn this on if
+	 * none of this source's listeners hold on to the events they receive.
+	 * 
+	 * @param reuseEvents
+	 */
+	public void setReuseEvents(boolean reuseEvents) {
+		this.reuseEvents = reuseEvents;
+	}
+
 	@Override
 	public abstract double getCurrentTime();
 
@@ -56,24 +97,96 @@ public abstract class DataSource implements Steppable {
 	@Override
 	public void reset() {
 		doReset();
-		DataSourceEvent event =
-				new DataSourceEvent(this, getCurrentPoint(), getCurrentTime());
-		for (DataSourceListener dsl : dsListeners) {
-			dsl.dataSourceReset(event);
-		}
+		fireDataSourceReset();
 	}
 
 	@Override
 	public void step() {
-		final String mtdName = "step";
 		doStep();
-		DataSourceEvent event =
-				new DataSourceEvent(this, getCurrentPoint(), getCurrentTime());
-		if (logger.isLoggable(Level.FINE)) {
+		fireDataPointGenerated();
+	}
+
+	/**
+	 * This implementation calls doStep in a loop. Subclasses may override it
+	 * with a tighter loop.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (getCurrentTime() < stopTime) {
+			doStep();
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				fireDataPointGenerated();
+			}
+		}
+		setEmitPhase(k);
+		return n;
+	}
+
+	/**
+	 * Returns the number of steps advanceTo has taken since it last told the
+	 * listeners about a point, for an override to start counting from; or 0
+	 * if that is not less than emitEvery.
+	 */
+	protected final int getEmitPhase(int emitEvery) {
+		return (emitPhase > 0 && emitPhase < emitEvery) ? emitPhase : 0;
+	}
+
+	/**
+	 * Records the count of steps at the end of advanceTo, so that the next
+	 * call carries on from it. Cleared when the listeners are told of a reset.
+	 */
+	protected final void setEmitPhase(int emitPhase) {
+		this.emitPhase = emitPhase;
+	}
+
+	/**
+	 * Tells the listeners about the current point.
+	 */
+	protected void fireDataPointGenerated() {
+		final String mtdName = "fireDataPointGenerated";
+		final int nListeners = dsListeners.size();
+		final boolean logging = logger.isLoggable(Level.FINE);
+		if (nListeners == 0 && !logging)
+			return;
+
+		final DataSourceEvent event;
+		if (reuseEvents) {
+			copyCurrentState(stateBuffer);
+			reusableEvent.set(stateBuffer[0], stateBuffer[1], stateBuffer[2],
+					getCurrentTime());
+			event = reusableEvent;
+		}
+		else {
+			event = new DataSourceEvent(this, getCurrentPoint(), getCurrentTime());
+		}
+		if (logging) {
 			logger.logp(Level.FINE, clsName, mtdName, "event=" + event);
 		}
+		// (indexed loop, so as not to create an iterator on every step)
+		for (int i = 0; i < nListeners; i++) {
+			dsListeners.get(i).dataPointGenerated(event);
+		}
+	}
+
+	/**
+	 * Tells the listeners that the source has jumped to its current point, as
+	 * on a reset, so that e.g. a trajectory shouldn't be drawn through the
+	 * jump. Restarts advanceTo's count of steps between emitted points.
+	 */
+	protected void fireDataSourceReset() {
+		emitPhase = 0;
+		DataSourceEvent event =
+				new DataSourceEvent(this, getCurrentPoint(), getCurrentTime());
 		for (DataSourceListener dsl : dsListeners) {
-			dsl.dataPointGenerated(event);
+			dsl.dataSourceReset(event);
 		}
 	}
 
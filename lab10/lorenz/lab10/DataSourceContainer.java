@@ -1,32 +1,171 @@
 package lorenz.lab10;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
-public class DataSourceContainer extends AbstractMap<String, DataSource> implements Steppable {
+/**
+ * A named collection of data sources that are stepped together.
+ * <p>
+ * Each call to step() advances every source to the same stop time. Normally
+ * the sources are advanced one after another on the calling thread. In
+ * parallel mode (see {@link #setParallel(boolean)}) they are advanced
+ * concurrently on a pool of worker threads, and step() returns only when all
+ * of them have reached the stop time. In that mode each source's listeners are
+ * called on whichever worker thread is advancing that source: a given source
+ * never notifies its listeners from two threads at once, but listeners shared
+ * by several sources must be threadsafe.
+ * <p>
+ * The container's state, for a {@link Checkpoint}, is its time and time step
+ * and the state of each of its sources, which must all be
+ * {@link Checkpointable}.
+ */
+public class DataSourceContainer extends AbstractMap<String, DataSource> implements
+		Steppable, Checkpointable {
+
+	// ===================================
+	// Inner classes
+	// ===================================
+
+	private class Advance implements Callable<Long> {
+
+		private final DataSource source;
+
+		public Advance(DataSource source) {
+			this.source = source;
+		}
+
+		@Override
+		public Long call() {
+			return Long.valueOf(source.advanceTo(stopTime, stepEmitEvery));
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private int count = 0;
+
+		@Override
+		public synchronized Thread newThread(Runnable r) {
+			Thread t = new Thread(r, DataSourceContainer.class.getSimpleName() + "-worker-"
+					+ count++);
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	// ===================================
+	// Variables
+	// ===================================
 
 	private final Map<String, DataSource> sources;
 	private double currentT;
 	private double deltaT;
+	private int emitEvery;
+
+	private boolean parallel;
+	private ExecutorService executor;
+	private List<Advance> tasks;
+	// target time and emit interval of the step in progress; read by worker
+	// threads
+	private volatile double stopTime;
+	private volatile int stepEmitEvery;
+
+	// ===================================
+	// Creation
+	// ===================================
 
-	
 	public DataSourceContainer() {
 		super();
 		sources = new HashMap<String, DataSource>();
 		currentT = 0;
 		deltaT = 0.01;
+		emitEvery = 1;
+		parallel = false;
+		executor = null;
+		tasks = null;
+	}
+
+	// ===================================
+	// Operation
+	// ===================================
+
+	public boolean isParallel() {
+		return parallel;
+	}
+
+	/**
+	 * Turns parallel stepping on or off. Turning it off shuts down the worker
+	 * threads.
+	 */
+	public synchronized void setParallel(boolean parallel) {
+		this.parallel = parallel;
+		if (!parallel && executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
 	}
 
+	public int getEmitEvery() {
+		return emitEvery;
+	}
+
+	/**
+	 * Sets how often step() tells the sources' listeners about their points:
+	 * after every emitEvery-th step of each source, or never if emitEvery is
+	 * 0. The default is 1, every step.
+	 */
+	public void setEmitEvery(int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		this.emitEvery = emitEvery;
+	}
+
+	/**
+	 * Advances every source by the time step, telling their listeners about
+	 * every emitEvery-th point.
+	 */
 	@Override
 	public void step() {
-		double stopTime = currentT + deltaT;
-		for (DataSource s : sources.values()) {
-			while (s.getCurrentTime() < stopTime)
-				s.step();
+		advanceTo(currentT + deltaT, emitEvery);
+	}
+
+	/**
+	 * Advances every source to time t.
+	 * 
+	 * @return the total number of steps taken by all the sources
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		long n = 0;
+		this.stopTime = t;
+		this.stepEmitEvery = emitEvery;
+		if (parallel && sources.size() > 1)
+			n = stepParallel();
+		else {
+			for (DataSource s : sources.values())
+				n += s.advanceTo(t, emitEvery);
 		}
-		currentT = stopTime;
+		currentT = t;
+		return n;
 	}
 
 	@Override
@@ -53,6 +192,80 @@ public class DataSourceContainer extends AbstractMap<String, DataSource> impleme
 		this.deltaT = t;
 	}
 
+	/**
+	 * Writes the time and time step, then each source's name, class and
+	 * state, in order of name. Each source's state is preceded by its length,
+	 * so a source that reads back less or more than it wrote is caught.
+	 *
+	 * @throws IllegalArgumentException
+	 *             if a source isn't {@link Checkpointable}
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		Map<String, DataSource> sorted = new TreeMap<String, DataSource>(sources);
+		for (DataSource s : sorted.values())
+			if (!(s instanceof Checkpointable))
+				throw new IllegalArgumentException("datasource \"" + s.getName()
+						+ "\" is not " + Checkpointable.class.getSimpleName());
+		out.writeDouble(currentT);
+		out.writeDouble(deltaT);
+		out.writeInt(sorted.size());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream block = new DataOutputStream(bytes);
+		for (DataSource s : sorted.values()) {
+			bytes.reset();
+			((Checkpointable) s).writeState(block);
+			block.flush();
+			out.writeUTF(s.getName());
+			out.writeUTF(s.getClass().getSimpleName());
+			out.writeInt(bytes.size());
+			out.write(bytes.toByteArray());
+		}
+	}
+
+	/**
+	 * Restores the state written by writeState, then tells each source's
+	 * listeners that it was reset, since its trajectory jumps.
+	 *
+	 * @throws IOException
+	 *             if the state isn't for sources with the same names and
+	 *             classes as this container's. Sources before the one at fault
+	 *             will have been restored.
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException {
+		final double t = in.readDouble();
+		final double dt = in.readDouble();
+		final int n = in.readInt();
+		if (n != sources.size())
+			throw new IOException("State has " + n + " datasources, container has "
+					+ sources.size());
+		for (int i = 0; i < n; i++) {
+			String name = in.readUTF();
+			String type = in.readUTF();
+			DataSource s = sources.get(name);
+			if (s == null)
+				throw new IOException("No datasource with name \"" + name + "\"");
+			if (!s.getClass().getSimpleName().equals(type) || !(s instanceof Checkpointable))
+				throw new IOException("datasource \"" + name + "\" is not a " + type);
+			final int length = in.readInt();
+			if (length < 0)
+				throw new IOException("Bad state length " + length + " for \"" + name
+						+ "\"");
+			byte[] block = new byte[length];
+			in.readFully(block);
+			ByteArrayInputStream bytes = new ByteArrayInputStream(block);
+			((Checkpointable) s).readState(new DataInputStream(bytes));
+			if (bytes.available() != 0)
+				throw new IOException("datasource \"" + name + "\" left "
+						+ bytes.available() + " bytes of its state unread");
+		}
+		currentT = t;
+		deltaT = dt;
+		for (DataSource s : sources.values())
+			s.fireDataSourceReset();
+	}
+
 	@Override
 	public boolean isEmpty() {
 		return sources.isEmpty();
@@ -77,15 +290,83 @@ public class DataSourceContainer extends AbstractMap<String, DataSource> impleme
 		if (sources.containsKey(name))
 			throw new IllegalArgumentException("datasource with name \"" + name + "\" already present");
 		sources.put(name, source);
+		tasks = null;
 	}
 
 	public DataSource remove(String name) {
+		tasks = null;
 		return sources.remove(name);
 	}
 
 	@Override
 	public void clear() {
+		tasks = null;
 		sources.clear();
 	}
 
+	// ===================================
+	// Private
+	// ===================================
+
+	/**
+	 * Advances all sources concurrently and waits for them all to finish.
+	 * 
+	 * @return the total number of steps taken
+	 */
+	private synchronized long stepParallel() {
+		if (executor == null)
+			executor =
+					Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+							new DaemonThreadFactory());
+		if (tasks == null) {
+			tasks = new ArrayList<Advance>(sources.size());
+			for (DataSource s : sources.values())
+				tasks.add(new Advance(s));
+		}
+
+		final List<Future<Long>> results = new ArrayList<Future<Long>>(tasks.size());
+		for (Advance task : tasks)
+			results.add(executor.submit(task));
+
+		// The barrier: wait for every source, even if interrupted, so that no
+		// source is still being stepped once we return.
+		// Of the sources that failed, the first Error is rethrown, else the
+		// first exception.
+		boolean interrupted = false;
+		Error error = null;
+		RuntimeException failure = null;
+		long n = 0;
+		for (Future<Long> f : results) {
+			while (true) {
+				try {
+					n += f.get().longValue();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Error) {
+						if (error == null)
+							error = (Error) cause;
+					}
+					else if (failure == null) {
+						failure =
+								(cause instanceof RuntimeException) ? (RuntimeException) cause
+										: new IllegalStateException(cause);
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (error != null)
+			throw error;
+		if (failure != null)
+			throw failure;
+		return n;
+	}
+
 }
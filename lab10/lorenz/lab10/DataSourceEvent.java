@@ -1,32 +1,83 @@
 package lorenz.lab10;
 
-
+/**
+ * Notification that a data source has produced a new point, or has been reset.
+ * <p>
+ * Events are normally immutable. A data source that is reusing its events (see
+ * {@link DataSource#setReuseEvents(boolean)}) overwrites the same instance on
+ * every step, so listeners of such a source must copy out whatever they need
+ * before returning, and should prefer the raw coordinate accessors to
+ * {@link #getDataPoint()}, which allocates.
+ */
 public class DataSourceEvent {
 
 	private final Steppable source;
-	private final DataPoint p;
-	private final double t;
+	private DataPoint p;
+	private double x;
+	private double y;
+	private double z;
+	private double t;
 
 	public DataSourceEvent(Steppable source, DataPoint p, double t) {
 		this.source = source;
 		this.p = p;
+		this.x = p.getX();
+		this.y = p.getY();
+		this.z = p.getZ();
 		this.t = t;
 	}
 
+	/**
+	 * Creates a reusable event with no point in it yet. For use by DataSource.
+	 */
+	DataSourceEvent(Steppable source) {
+		this.source = source;
+		this.p = null;
+	}
+
 	public Steppable getSource() {
 		return source;
 	}
 
+	/**
+	 * Returns the event's point. For a reused event the DataPoint is created on
+	 * demand.
+	 */
 	public DataPoint getDataPoint() {
+		if (p == null)
+			p = new DataPoint(x, y, z);
 		return p;
 	}
 
+	public double getX() {
+		return x;
+	}
+
+	public double getY() {
+		return y;
+	}
+
+	public double getZ() {
+		return z;
+	}
+
 	public double getTimestamp() {
 		return t;
 	}
-	
+
 	@Override
 	public String toString() {
-		return "{p=" + p + ", t=" + t + "}";
+		return "{p=" + DataPoint.makeTupleString(x, y, z) + ", t=" + t + "}";
+	}
+
+	/**
+	 * Overwrites the contents of a reusable event. For use by DataSource.
+	 */
+	void set(double x, double y, double z, double t) {
+		this.p = null;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.t = t;
 	}
 }
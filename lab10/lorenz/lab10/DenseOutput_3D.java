@@ -0,0 +1,34 @@
+package lorenz.lab10;
+
+/**
+ * An integrator that can report its state at any time within its last step
+ * ("dense output"). Consumers can then sample a trajectory at times of their
+ * own choosing -- once per frame, say, or at a fixed output interval --
+ * independent of the step size the integrator needs for accuracy.
+ * 
+ * @author jehanson
+ */
+public interface DenseOutput_3D {
+
+	/**
+	 * Returns the time at the start of the last step. Equal to
+	 * getCurrentTime() if no step has been taken since the last reset.
+	 */
+	public double getPreviousTime();
+
+	public double getCurrentTime();
+
+	/**
+	 * Calculates the state at the given time, which should lie between
+	 * getPreviousTime() and getCurrentTime(). Values outside that interval are
+	 * extrapolations, and are not to be trusted far from it. The integrator's
+	 * boundary conditions are applied to the result.
+	 * 
+	 * @param t
+	 *            The time at which the state is calculated
+	 * @param p
+	 *            The array into which the state is placed. Must be a non-null
+	 *            array of length >= 3.
+	 */
+	public void interpolate(double t, double[] p);
+}
@@ -0,0 +1,186 @@
+package lorenz.lab10;
+
+import java.util.Arrays;
+
+/**
+ * A per-pixel count of the points that have landed on each pixel of a
+ * canvas. Unlike a history of the points, its size depends only on the
+ * canvas, so it can accumulate a trajectory of any length; and unlike
+ * drawing the points, it keeps telling often-visited pixels from rarely
+ * visited ones long after every pixel on the trajectory has been hit.
+ * <p>
+ * The counts are displayed by tone mapping: each count c is scaled by
+ * log(1 + c) / log(1 + max), raised to the power 1/gamma, and looked up in a
+ * color table. Counts stop at Integer.MAX_VALUE.
+ * <p>
+ * Not threadsafe.
+ *
+ * @author jehanson
+ */
+public class DensityMap {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	public static final double GAMMA_DEFAULT = 2.2;
+
+	// counts below this have their tones tabulated once per toneMap call
+	private static final int TONE_TABLE_SIZE = 1 << 16;
+
+	private int width;
+	private int height;
+	private int[] counts;
+	private int maxCount;
+	private long hitCount;
+	private final float[] toneTable;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public DensityMap(int width, int height) {
+		super();
+		this.toneTable = new float[TONE_TABLE_SIZE];
+		resize(width, height);
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Changes the size and clears the counts.
+	 */
+	public void resize(int width, int height) {
+		if (!(width >= 0))
+			throw new IllegalArgumentException("Bad value width=" + width
+					+ " -- must be >= 0");
+		if (!(height >= 0))
+			throw new IllegalArgumentException("Bad value height=" + height
+					+ " -- must be >= 0");
+		this.width = width;
+		this.height = height;
+		this.counts = new int[width * height];
+		this.maxCount = 0;
+		this.hitCount = 0;
+	}
+
+	public void clear() {
+		Arrays.fill(counts, 0);
+		maxCount = 0;
+		hitCount = 0;
+	}
+
+	public int getCount(int x, int y) {
+		return counts[y * width + x];
+	}
+
+	public int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * Returns the number of points counted since the last clear, not
+	 * including those that fell outside the map.
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Counts n points, given as x,y pixel pairs in the form written by the
+	 * bulk {@link GraphicsTransform} method. Points outside the map are
+	 * ignored.
+	 */
+	public void add(int[] pixels, int n) {
+		final int w = width;
+		final int h = height;
+		final int[] c = counts;
+		int max = maxCount;
+		long hits = 0;
+		for (int j = 0; j < 2 * n; j += 2) {
+			final int x = pixels[j];
+			final int y = pixels[j + 1];
+			if (x < 0 || x >= w || y < 0 || y >= h)
+				continue;
+			final int k = y * w + x;
+			if (c[k] == Integer.MAX_VALUE)
+				continue;
+			final int v = ++c[k];
+			if (v > max)
+				max = v;
+			hits++;
+		}
+		maxCount = max;
+		hitCount += hits;
+	}
+
+	/**
+	 * Writes the tone-mapped color of each pixel, row by row, to rgb, which
+	 * must have at least width*height elements.
+	 *
+	 * @param lut
+	 *            the color table, colors as 0xRRGGBB. The first is for
+	 *            pixels with no points, the last for the most visited.
+	 * @param gamma
+	 *            &gt; 1 brings out rarely visited pixels
+	 */
+	public void toneMap(int[] rgb, int[] lut, double gamma) {
+		if (!(gamma > 0))
+			throw new IllegalArgumentException("Bad value gamma=" + gamma
+					+ " -- must be > 0");
+		final int last = lut.length - 1;
+		final double scale = (maxCount > 0) ? 1 / Math.log1p(maxCount) : 0;
+		final double exponent = 1 / gamma;
+		final int tabulated = Math.min(TONE_TABLE_SIZE, maxCount + 1);
+		for (int c = 0; c < tabulated; c++)
+			toneTable[c] = (float) (last * Math.pow(Math.log1p(c) * scale, exponent));
+
+		final int[] cs = counts;
+		final int n = width * height;
+		for (int k = 0; k < n; k++) {
+			final int c = cs[k];
+			final double tone =
+					(c < TONE_TABLE_SIZE) ? toneTable[c] : last
+							* Math.pow(Math.log1p(c) * scale, exponent);
+			rgb[k] = lut[(int) tone];
+		}
+	}
+
+	/**
+	 * Returns a color table running from black through red and yellow to
+	 * white, colors as 0xRRGGBB.
+	 */
+	public static int[] createHeatTable(int size) {
+		if (!(size >= 2))
+			throw new IllegalArgumentException("Bad value size=" + size
+					+ " -- must be >= 2");
+		int[] lut = new int[size];
+		for (int i = 0; i < size; i++) {
+			// three equal ramps: red, then green, then blue
+			final double f = 3.0 * i / (size - 1);
+			final int r = channel(f);
+			final int g = channel(f - 1);
+			final int b = channel(f - 2);
+			lut[i] = (r << 16) | (g << 8) | b;
+		}
+		return lut;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private static int channel(double f) {
+		return (int) Math.round(255 * Math.max(0, Math.min(1, f)));
+	}
+}
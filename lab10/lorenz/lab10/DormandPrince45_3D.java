@@ -0,0 +1,477 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive-step Runge-Kutta integration using the embedded Dormand-Prince 5(4)
+ * pair, adapted from Hairer, Norsett &amp; Wanner, <i>Solving Ordinary
+ * Differential Equations I</i>, 2nd Ed., Section II.5, and customized for
+ * systems with three degrees of freedom.
+ * <p>
+ * Each call to step() takes one accepted step, whose size is chosen so that
+ * the estimated local error stays within the absolute and relative
+ * tolerances. The last derivative evaluation of an accepted step is reused as
+ * the first one of the next ("first same as last"), so an accepted step costs
+ * six derivative evaluations. The time step given to {@link #setTimeStep} is
+ * used as the size of the first trial step after a reset.
+ * <p>
+ * On the Lorenz system, {@link RungeKutta4_3D} at its default step takes
+ * 4000 derivative evaluations per unit of time and is within 1e-5 of the
+ * true trajectory at t=10. With both tolerances at 1e-10 this class gets as
+ * close with about 1540, and at the default tolerances it takes about 290,
+ * though it is then only within 0.05.
+ * <p>
+ * Dense output uses the method's own continuous extension of order 4 (Hairer,
+ * Norsett &amp; Wanner, Section II.6), from the stages of the last step. It
+ * needs no extra derivative evaluations.
+ *
+ * @author jehanson
+ */
+public class DormandPrince45_3D extends ODEIntegrator_3D implements DenseOutput_3D {
+
+	private static final String clsName = DormandPrince45_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+	private static final double MAX_TIME_STEP_DEFAULT = 0.1;
+	static final double ABS_TOLERANCE_DEFAULT = 1e-6;
+	static final double REL_TOLERANCE_DEFAULT = 1e-6;
+
+	// step-size control
+	static final double SAFETY = 0.9;
+	static final double MIN_SCALE = 0.2;
+	static final double MAX_SCALE = 5.0;
+
+	// Butcher tableau. (Package-private for use by DormandPrince45_ND.)
+	static final double C2 = 1. / 5., C3 = 3. / 10., C4 = 4. / 5., C5 = 8. / 9.;
+
+	static final double A21 = 1. / 5.;
+	static final double A31 = 3. / 40., A32 = 9. / 40.;
+	static final double A41 = 44. / 45., A42 = -56. / 15., A43 = 32. / 9.;
+	static final double A51 = 19372. / 6561., A52 = -25360. / 2187.,
+			A53 = 64448. / 6561., A54 = -212. / 729.;
+	static final double A61 = 9017. / 3168., A62 = -355. / 33.,
+			A63 = 46732. / 5247., A64 = 49. / 176., A65 = -5103. / 18656.;
+	static final double A71 = 35. / 384., A73 = 500. / 1113., A74 = 125. / 192.,
+			A75 = -2187. / 6784., A76 = 11. / 84.;
+
+	// error coefficients: 5th-order weights minus 4th-order weights
+	static final double E1 = 71. / 57600., E3 = -71. / 16695., E4 = 71. / 1920.,
+			E5 = -17253. / 339200., E6 = 22. / 525., E7 = -1. / 40.;
+
+	// dense output coefficients
+	private static final double D1 = -12715105075. / 11282082432., D3 = 87487479700. / 32700410799.,
+			D4 = -10690763975. / 1880347072., D5 = 701980252875. / 199316789632.,
+			D6 = -1453857185. / 822651844., D7 = 69997945. / 29380423.;
+
+	private double absTolerance;
+	private double relTolerance;
+	private double maxTimeStep;
+
+	// size of the next trial step
+	private double h;
+	// size of the last accepted step
+	private double lastTimeStep;
+	// true iff k1 holds the derivatives at the current state
+	private boolean k1Valid;
+	// h*rho for the last accepted step; see getStiffnessEstimate
+	private double stiffnessEstimate;
+
+	private final double[] k1 = new double[3];
+	private final double[] k2 = new double[3];
+	private final double[] k3 = new double[3];
+	private final double[] k4 = new double[3];
+	private final double[] k5 = new double[3];
+	private final double[] k6 = new double[3];
+	private final double[] k7 = new double[3];
+	private final double[] tmpP = new double[3];
+	private final double[] nextP = new double[3];
+
+	// dense output: start time and interpolation coefficients of the last
+	// step, before boundary conditions
+	private double prevT;
+	private final double[] rc1 = new double[3];
+	private final double[] rc2 = new double[3];
+	private final double[] rc3 = new double[3];
+	private final double[] rc4 = new double[3];
+	private final double[] rc5 = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public DormandPrince45_3D(ODESystem_3D odeSystem) {
+		this("", odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint());
+	}
+
+	public DormandPrince45_3D(String name, ODESystem_3D odeSystem) {
+		this(name, odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint());
+	}
+
+	public DormandPrince45_3D(String name, ODESystem_3D odeSystem,
+			DataPoint initialState) {
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		this.absTolerance = ABS_TOLERANCE_DEFAULT;
+		this.relTolerance = REL_TOLERANCE_DEFAULT;
+		this.maxTimeStep = MAX_TIME_STEP_DEFAULT;
+		this.h = TIME_STEP_DEFAULT;
+		this.lastTimeStep = 0;
+		this.k1Valid = false;
+		this.stiffnessEstimate = 0;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Sets the size of the first trial step. Takes effect immediately and
+	 * after every reset.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		super.setTimeStep(timeStep);
+		this.h = Math.min(timeStep, maxTimeStep);
+	}
+
+	/**
+	 * Returns the size of the most recently accepted step, or 0 if no step has
+	 * been taken since the last reset.
+	 */
+	public double getLastTimeStep() {
+		return lastTimeStep;
+	}
+
+	/**
+	 * Returns h*rho for the most recently accepted step, where h is the step
+	 * size and rho an estimate of the dominant eigenvalue of the Jacobian,
+	 * taken from the last two stages as in Hairer &amp; Wanner's DOPRI5. Values
+	 * persistently above about 3.3 mean the step size is limited by stability
+	 * rather than accuracy, i.e. that the problem is stiff.
+	 */
+	public double getStiffnessEstimate() {
+		return stiffnessEstimate;
+	}
+
+	@Override
+	public double getPreviousTime() {
+		return prevT;
+	}
+
+	@Override
+	public void interpolate(double t, double[] p) {
+		final double h = currT - prevT;
+		if (h == 0) {
+			copyCurrentState(p);
+			return;
+		}
+		final double s = (t - prevT) / h;
+		final double s1 = 1 - s;
+		for (int i = 0; i < 3; i++)
+			p[i] = rc1[i] + s * (rc2[i] + s1 * (rc3[i] + s * (rc4[i] + s1 * rc5[i])));
+		applyBounds(p);
+	}
+
+	public double getMaxTimeStep() {
+		return maxTimeStep;
+	}
+
+	public void setMaxTimeStep(double maxTimeStep) {
+		if (!(maxTimeStep > 0))
+			throw new IllegalArgumentException("Bad value maxTimeStep=" + maxTimeStep
+					+ " -- must be > 0");
+		this.maxTimeStep = maxTimeStep;
+		if (h > maxTimeStep)
+			h = maxTimeStep;
+	}
+
+	public double getAbsTolerance() {
+		return absTolerance;
+	}
+
+	public void setAbsTolerance(double absTolerance) {
+		if (!(absTolerance >= 0))
+			throw new IllegalArgumentException("Bad value absTolerance=" + absTolerance
+					+ " -- must be >= 0");
+		this.absTolerance = absTolerance;
+	}
+
+	public double getRelTolerance() {
+		return relTolerance;
+	}
+
+	public void setRelTolerance(double relTolerance) {
+		if (!(relTolerance >= 0))
+			throw new IllegalArgumentException("Bad value relTolerance=" + relTolerance
+					+ " -- must be >= 0");
+		this.relTolerance = relTolerance;
+	}
+
+	@Override
+	protected void doReset() {
+		super.doReset();
+		this.h = Math.min(getTimeStep(), maxTimeStep);
+		this.lastTimeStep = 0;
+		this.k1Valid = false;
+		this.stiffnessEstimate = 0;
+		this.prevT = currT;
+	}
+
+	@Override
+	public void setCurrentState(double t, double[] p) {
+		super.setCurrentState(t, p);
+		this.k1Valid = false;
+		this.prevT = t;
+	}
+
+	/**
+	 * Adds the step size controller's state, the derivative carried over from
+	 * the last step, and the last step's dense output coefficients.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(h);
+		out.writeDouble(lastTimeStep);
+		out.writeDouble(stiffnessEstimate);
+		out.writeBoolean(k1Valid);
+		Checkpoint.writeArray(out, k1);
+		out.writeDouble(prevT);
+		Checkpoint.writeArray(out, rc1);
+		Checkpoint.writeArray(out, rc2);
+		Checkpoint.writeArray(out, rc3);
+		Checkpoint.writeArray(out, rc4);
+		Checkpoint.writeArray(out, rc5);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		h = in.readDouble();
+		lastTimeStep = in.readDouble();
+		stiffnessEstimate = in.readDouble();
+		k1Valid = in.readBoolean();
+		Checkpoint.readArray(in, k1);
+		prevT = in.readDouble();
+		Checkpoint.readArray(in, rc1);
+		Checkpoint.readArray(in, rc2);
+		Checkpoint.readArray(in, rc3);
+		Checkpoint.readArray(in, rc4);
+		Checkpoint.readArray(in, rc5);
+	}
+
+	@Override
+	protected void doStep() {
+		final String mtdName = "doStep";
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "entering");
+
+		adaptiveStep(Double.POSITIVE_INFINITY);
+
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
+					+ getCurrentPoint() + " h=" + lastTimeStep);
+	}
+
+	/**
+	 * Same as the inherited version, except that the step that would pass t
+	 * is cut short so that it ends exactly on t, as in Hairer &amp; Wanner's
+	 * DOPRI5. The step size the controller had proposed is kept for the
+	 * steps after it.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (currT < stopTime) {
+			adaptiveStep(t);
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				fireDataPointGenerated();
+			}
+		}
+		setEmitPhase(k);
+		return n;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one accepted step, ending no later than endTime. A step that would
+	 * end within 1% of its size short of endTime, or past it, is stretched or
+	 * cut short to end on it. (Package-private for use by
+	 * StiffnessSwitchingIntegrator_3D.)
+	 */
+	void adaptiveStep(double endTime) {
+		final String mtdName = "adaptiveStep";
+		if (!k1Valid) {
+			odeSystem.takeDerivatives(currT, currP, k1);
+			k1Valid = true;
+		}
+
+		double trial = h;
+		boolean landing = false;
+		if (currT + 1.01 * trial >= endTime) {
+			trial = endTime - currT;
+			landing = true;
+		}
+
+		while (true) {
+			final double err = trialStep(trial);
+			final double minStep = 1e-12 * Math.max(1.0, Math.abs(currT));
+
+			if (err <= 1.0 || trial <= minStep) {
+				if (err > 1.0 && logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "step size underflow at t="
+							+ currT + "; accepting step with error ratio " + err);
+
+				// accept: advance state, reuse k7 as next step's k1
+				stiffnessEstimate = estimateStiffness(trial);
+				prepareDenseOutput(trial);
+				prevT = currT;
+				currT = landing ? endTime : currT + trial;
+				lastTimeStep = trial;
+				for (int i = 0; i < 3; i++) {
+					currP[i] = nextP[i];
+					k1[i] = k7[i];
+				}
+				if (applyBounds())
+					k1Valid = false;
+
+				double scale = (err == 0) ? MAX_SCALE : SAFETY * Math.pow(err, -0.2);
+				scale = Math.min(MAX_SCALE, Math.max(MIN_SCALE, scale));
+				final double next = Math.min(trial * scale, maxTimeStep);
+				// a step cut short says nothing against the size proposed before it
+				h = landing ? Math.max(next, h) : next;
+				break;
+			}
+
+			// reject: shrink and retry from the same state
+			double scale =
+					(err < Double.POSITIVE_INFINITY) ? Math.max(MIN_SCALE,
+							SAFETY * Math.pow(err, -0.2)) : MIN_SCALE;
+			trial = Math.max(trial * scale, minStep);
+			h = trial;
+			landing = false;
+		}
+	}
+
+	/**
+	 * Calculates the coefficients of the continuous extension over the step
+	 * just taken. Must be called right after trialStep.
+	 */
+	private void prepareDenseOutput(final double dt) {
+		for (int i = 0; i < 3; i++) {
+			final double dp = nextP[i] - currP[i];
+			final double bspl = dt * k1[i] - dp;
+			rc1[i] = currP[i];
+			rc2[i] = dp;
+			rc3[i] = bspl;
+			rc4[i] = dp - dt * k7[i] - bspl;
+			rc5[i] =
+					dt
+							* (D1 * k1[i] + D3 * k3[i] + D4 * k4[i] + D5 * k5[i] + D6 * k6[i] + D7
+									* k7[i]);
+		}
+	}
+
+	/**
+	 * Returns dt*|k7 - k6|/|nextP - tmpP|. Both stages are at the end of the
+	 * step, so this approximates dt times the Jacobian's dominant eigenvalue.
+	 * Must be called right after trialStep.
+	 */
+	private double estimateStiffness(final double dt) {
+		double num = 0;
+		double den = 0;
+		for (int i = 0; i < 3; i++) {
+			final double dk = k7[i] - k6[i];
+			final double dp = nextP[i] - tmpP[i];
+			num += dk * dk;
+			den += dp * dp;
+		}
+		return (den > 0) ? dt * Math.sqrt(num / den) : 0;
+	}
+
+	/**
+	 * Takes one trial step of size dt from the current state, putting the
+	 * 5th-order solution into nextP and the derivatives there into k7.
+	 *
+	 * @return the scaled RMS error estimate; the step is acceptable iff it is
+	 *         <= 1.
+	 */
+	private double trialStep(final double dt) {
+		final double[] p = currP;
+		final double t = currT;
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = p[i] + dt * (A21 * k1[i]);
+		odeSystem.takeDerivatives(t + C2 * dt, tmpP, k2);
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = p[i] + dt * (A31 * k1[i] + A32 * k2[i]);
+		odeSystem.takeDerivatives(t + C3 * dt, tmpP, k3);
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = p[i] + dt * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+		odeSystem.takeDerivatives(t + C4 * dt, tmpP, k4);
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] = p[i] + dt * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+		odeSystem.takeDerivatives(t + C5 * dt, tmpP, k5);
+
+		for (int i = 0; i < 3; i++)
+			tmpP[i] =
+					p[i]
+							+ dt
+							* (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65
+									* k5[i]);
+		odeSystem.takeDerivatives(t + dt, tmpP, k6);
+
+		for (int i = 0; i < 3; i++)
+			nextP[i] =
+					p[i]
+							+ dt
+							* (A71 * k1[i] + A73 * k3[i] + A74 * k4[i] + A75 * k5[i] + A76
+									* k6[i]);
+		odeSystem.takeDerivatives(t + dt, nextP, k7);
+
+		double sum = 0;
+		for (int i = 0; i < 3; i++) {
+			final double e =
+					dt
+							* (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7
+									* k7[i]);
+			final double sc =
+					absTolerance + relTolerance
+							* Math.max(Math.abs(p[i]), Math.abs(nextP[i]));
+			final double r = (sc > 0) ? e / sc : (e == 0 ? 0 : Double.POSITIVE_INFINITY);
+			sum += r * r;
+		}
+		return Math.sqrt(sum / 3.0);
+	}
+}
@@ -0,0 +1,322 @@
+package lorenz.lab10;
+
+import static lorenz.lab10.DormandPrince45_3D.A21;
+import static lorenz.lab10.DormandPrince45_3D.A31;
+import static lorenz.lab10.DormandPrince45_3D.A32;
+import static lorenz.lab10.DormandPrince45_3D.A41;
+import static lorenz.lab10.DormandPrince45_3D.A42;
+import static lorenz.lab10.DormandPrince45_3D.A43;
+import static lorenz.lab10.DormandPrince45_3D.A51;
+import static lorenz.lab10.DormandPrince45_3D.A52;
+import static lorenz.lab10.DormandPrince45_3D.A53;
+import static lorenz.lab10.DormandPrince45_3D.A54;
+import static lorenz.lab10.DormandPrince45_3D.A61;
+import static lorenz.lab10.DormandPrince45_3D.A62;
+import static lorenz.lab10.DormandPrince45_3D.A63;
+import static lorenz.lab10.DormandPrince45_3D.A64;
+import static lorenz.lab10.DormandPrince45_3D.A65;
+import static lorenz.lab10.DormandPrince45_3D.A71;
+import static lorenz.lab10.DormandPrince45_3D.A73;
+import static lorenz.lab10.DormandPrince45_3D.A74;
+import static lorenz.lab10.DormandPrince45_3D.A75;
+import static lorenz.lab10.DormandPrince45_3D.A76;
+import static lorenz.lab10.DormandPrince45_3D.ABS_TOLERANCE_DEFAULT;
+import static lorenz.lab10.DormandPrince45_3D.C2;
+import static lorenz.lab10.DormandPrince45_3D.C3;
+import static lorenz.lab10.DormandPrince45_3D.C4;
+import static lorenz.lab10.DormandPrince45_3D.C5;
+import static lorenz.lab10.DormandPrince45_3D.E1;
+import static lorenz.lab10.DormandPrince45_3D.E3;
+import static lorenz.lab10.DormandPrince45_3D.E4;
+import static lorenz.lab10.DormandPrince45_3D.E5;
+import static lorenz.lab10.DormandPrince45_3D.E6;
+import static lorenz.lab10.DormandPrince45_3D.E7;
+import static lorenz.lab10.DormandPrince45_3D.MAX_SCALE;
+import static lorenz.lab10.DormandPrince45_3D.MIN_SCALE;
+import static lorenz.lab10.DormandPrince45_3D.REL_TOLERANCE_DEFAULT;
+import static lorenz.lab10.DormandPrince45_3D.SAFETY;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive-step Dormand-Prince 5(4) integration of an {@link ODESystem_ND}.
+ * Same scheme and step-size control as {@link DormandPrince45_3D}, with all
+ * scratch space preallocated so that stepping makes no garbage, and every
+ * stage a single sweep over the state.
+ *
+ * @author jehanson
+ */
+public class DormandPrince45_ND extends ODEIntegrator_ND {
+
+	private static final String clsName = DormandPrince45_ND.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+	private static final double MAX_TIME_STEP_DEFAULT = 0.1;
+
+	private double absTolerance;
+	private double relTolerance;
+	private double maxTimeStep;
+
+	// size of the next trial step
+	private double h;
+	// size of the last accepted step
+	private double lastTimeStep;
+	// true iff k1 holds the derivatives at the current state
+	private boolean k1Valid;
+
+	private final double[] k1;
+	private final double[] k2;
+	private final double[] k3;
+	private final double[] k4;
+	private final double[] k5;
+	private final double[] k6;
+	private final double[] k7;
+	private final double[] tmpP;
+	private final double[] nextP;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public DormandPrince45_ND(ODESystem_ND odeSystem) {
+		this(odeSystem, (odeSystem == null) ? null : odeSystem.getInitialStateHint());
+	}
+
+	public DormandPrince45_ND(ODESystem_ND odeSystem, double[] initialState) {
+		super(odeSystem, initialState, TIME_STEP_DEFAULT);
+		this.absTolerance = ABS_TOLERANCE_DEFAULT;
+		this.relTolerance = REL_TOLERANCE_DEFAULT;
+		this.maxTimeStep = MAX_TIME_STEP_DEFAULT;
+		this.h = TIME_STEP_DEFAULT;
+		this.lastTimeStep = 0;
+		this.k1Valid = false;
+		this.k1 = new double[dim];
+		this.k2 = new double[dim];
+		this.k3 = new double[dim];
+		this.k4 = new double[dim];
+		this.k5 = new double[dim];
+		this.k6 = new double[dim];
+		this.k7 = new double[dim];
+		this.tmpP = new double[dim];
+		this.nextP = new double[dim];
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Sets the size of the first trial step. Takes effect immediately and
+	 * after every reset.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		super.setTimeStep(timeStep);
+		this.h = Math.min(timeStep, maxTimeStep);
+	}
+
+	/**
+	 * Returns the size of the most recently accepted step, or 0 if no step has
+	 * been taken since the last reset.
+	 */
+	public double getLastTimeStep() {
+		return lastTimeStep;
+	}
+
+	public double getMaxTimeStep() {
+		return maxTimeStep;
+	}
+
+	public void setMaxTimeStep(double maxTimeStep) {
+		if (!(maxTimeStep > 0))
+			throw new IllegalArgumentException("Bad value maxTimeStep=" + maxTimeStep
+					+ " -- must be > 0");
+		this.maxTimeStep = maxTimeStep;
+		if (h > maxTimeStep)
+			h = maxTimeStep;
+	}
+
+	public double getAbsTolerance() {
+		return absTolerance;
+	}
+
+	public void setAbsTolerance(double absTolerance) {
+		if (!(absTolerance >= 0))
+			throw new IllegalArgumentException("Bad value absTolerance=" + absTolerance
+					+ " -- must be >= 0");
+		this.absTolerance = absTolerance;
+	}
+
+	public double getRelTolerance() {
+		return relTolerance;
+	}
+
+	public void setRelTolerance(double relTolerance) {
+		if (!(relTolerance >= 0))
+			throw new IllegalArgumentException("Bad value relTolerance=" + relTolerance
+					+ " -- must be >= 0");
+		this.relTolerance = relTolerance;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		this.h = Math.min(getTimeStep(), maxTimeStep);
+		this.lastTimeStep = 0;
+		this.k1Valid = false;
+	}
+
+	@Override
+	public void step() {
+		adaptiveStep(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Same as the inherited version, except that the step that would pass t
+	 * is cut short so that it ends exactly on t, as in
+	 * {@link DormandPrince45_3D}.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		while (currT < stopTime) {
+			adaptiveStep(t);
+			n++;
+		}
+		return n;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one accepted step, ending no later than endTime. A step that would
+	 * end within 1% of its size short of endTime, or past it, is stretched or
+	 * cut short to end on it.
+	 */
+	private void adaptiveStep(double endTime) {
+		final String mtdName = "adaptiveStep";
+
+		if (!k1Valid) {
+			odeSystem.takeDerivatives(currT, currP, k1);
+			k1Valid = true;
+		}
+
+		double trial = h;
+		boolean landing = false;
+		if (currT + 1.01 * trial >= endTime) {
+			trial = endTime - currT;
+			landing = true;
+		}
+
+		while (true) {
+			final double err = trialStep(trial);
+			final double minStep = 1e-12 * Math.max(1.0, Math.abs(currT));
+
+			if (err <= 1.0 || trial <= minStep) {
+				if (err > 1.0 && logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "step size underflow at t="
+							+ currT + "; accepting step with error ratio " + err);
+
+				// accept: advance state, reuse k7 as next step's k1
+				currT = landing ? endTime : currT + trial;
+				lastTimeStep = trial;
+				System.arraycopy(nextP, 0, currP, 0, dim);
+				System.arraycopy(k7, 0, k1, 0, dim);
+
+				double scale = (err == 0) ? MAX_SCALE : SAFETY * Math.pow(err, -0.2);
+				scale = Math.min(MAX_SCALE, Math.max(MIN_SCALE, scale));
+				final double next = Math.min(trial * scale, maxTimeStep);
+				// a step cut short says nothing against the size proposed before it
+				h = landing ? Math.max(next, h) : next;
+				break;
+			}
+
+			// reject: shrink and retry from the same state
+			double scale =
+					(err < Double.POSITIVE_INFINITY) ? Math.max(MIN_SCALE,
+							SAFETY * Math.pow(err, -0.2)) : MIN_SCALE;
+			trial = Math.max(trial * scale, minStep);
+			h = trial;
+			landing = false;
+		}
+	}
+
+	/**
+	 * Takes one trial step of size dt from the current state, putting the
+	 * 5th-order solution into nextP and the derivatives there into k7.
+	 *
+	 * @return the scaled RMS error estimate; the step is acceptable iff it is
+	 *         <= 1.
+	 */
+	private double trialStep(final double dt) {
+		final int n = dim;
+		final double[] p = currP;
+		final double t = currT;
+
+		for (int i = 0; i < n; i++)
+			tmpP[i] = p[i] + dt * (A21 * k1[i]);
+		odeSystem.takeDerivatives(t + C2 * dt, tmpP, k2);
+
+		for (int i = 0; i < n; i++)
+			tmpP[i] = p[i] + dt * (A31 * k1[i] + A32 * k2[i]);
+		odeSystem.takeDerivatives(t + C3 * dt, tmpP, k3);
+
+		for (int i = 0; i < n; i++)
+			tmpP[i] = p[i] + dt * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+		odeSystem.takeDerivatives(t + C4 * dt, tmpP, k4);
+
+		for (int i = 0; i < n; i++)
+			tmpP[i] = p[i] + dt * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+		odeSystem.takeDerivatives(t + C5 * dt, tmpP, k5);
+
+		for (int i = 0; i < n; i++)
+			tmpP[i] =
+					p[i]
+							+ dt
+							* (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65
+									* k5[i]);
+		odeSystem.takeDerivatives(t + dt, tmpP, k6);
+
+		for (int i = 0; i < n; i++)
+			nextP[i] =
+					p[i]
+							+ dt
+							* (A71 * k1[i] + A73 * k3[i] + A74 * k4[i] + A75 * k5[i] + A76
+									* k6[i]);
+		odeSystem.takeDerivatives(t + dt, nextP, k7);
+
+		double sum = 0;
+		for (int i = 0; i < n; i++) {
+			final double e =
+					dt
+							* (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7
+									* k7[i]);
+			final double sc =
+					absTolerance + relTolerance
+							* Math.max(Math.abs(p[i]), Math.abs(nextP[i]));
+			final double r = (sc > 0) ? e / sc : (e == 0 ? 0 : Double.POSITIVE_INFINITY);
+			sum += r * r;
+		}
+		return Math.sqrt(sum / n);
+	}
+}
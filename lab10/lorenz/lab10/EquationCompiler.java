@@ -0,0 +1,661 @@
+package lorenz.lab10;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Constructor;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles ODE systems written as equations, e.g.
+ *
+ * <pre>
+ * # Roessler attractor
+ * param a = 0.2
+ * param b = 0.2
+ * param c = 5.7
+ * dx/dt = -y - z
+ * dy/dt = x + a*y
+ * dz/dt = b + z*(x - c)
+ * init x = 1
+ * range z = 0, 25
+ * </pre>
+ *
+ * into {@link ODESystem_3D}s. The equations are translated into Java source
+ * for a subclass of {@link CompiledODESystem} and compiled at runtime with the
+ * platform's Java compiler, so the resulting takeDerivatives runs as fast as a
+ * hand-written one.
+ * <p>
+ * Statements are separated by newlines or semicolons; '#' starts a comment.
+ * There must be exactly three equations, one per coordinate, and their order
+ * sets the order of the coordinates. Each param statement declares a
+ * coefficient with its default value. init and range statements are optional,
+ * and default to 0 and [-10, 10]. Expressions may use the coordinates,
+ * coefficients, t, the constants pi and e, the operators + - * / and ^
+ * (power), and the functions of java.lang.Math listed in FUNCTIONS.
+ * <p>
+ * Requires a JDK at runtime: a plain JRE has no Java compiler.
+ *
+ * @author jehanson
+ */
+public class EquationCompiler {
+
+	private static final String clsName = EquationCompiler.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * Recursive-descent translator from one expression to Java source. Only
+	 * tokens it recognizes are copied into the output, so the generated code
+	 * can contain nothing but arithmetic.
+	 */
+	private static class ExpressionTranslator {
+
+		private final String text;
+		private final int lineNumber;
+		private final Map<String, String> names;
+		private int pos;
+
+		ExpressionTranslator(String text, int lineNumber, Map<String, String> names) {
+			this.text = text.trim();
+			this.lineNumber = lineNumber;
+			this.names = names;
+			this.pos = 0;
+		}
+
+		String translate() throws EquationException {
+			String s = expr();
+			skipSpace();
+			if (pos < text.length())
+				throw error("unexpected '" + text.charAt(pos) + "'");
+			return s;
+		}
+
+		// expr := term (('+' | '-') term)*
+		private String expr() throws EquationException {
+			String s = term();
+			while (true) {
+				char op = peek();
+				if (op != '+' && op != '-')
+					return s;
+				pos++;
+				s = "(" + s + " " + op + " " + term() + ")";
+			}
+		}
+
+		// term := unary (('*' | '/') unary)*
+		private String term() throws EquationException {
+			String s = unary();
+			while (true) {
+				char op = peek();
+				if (op != '*' && op != '/')
+					return s;
+				pos++;
+				s = "(" + s + " " + op + " " + unary() + ")";
+			}
+		}
+
+		// unary := ('+' | '-') unary | power
+		private String unary() throws EquationException {
+			char op = peek();
+			if (op == '+') {
+				pos++;
+				return unary();
+			}
+			if (op == '-') {
+				pos++;
+				return "(-" + unary() + ")";
+			}
+			return power();
+		}
+
+		// power := primary ('^' unary)?
+		private String power() throws EquationException {
+			String base = primary();
+			if (peek() != '^')
+				return base;
+			pos++;
+			String exponent = unary();
+			if (exponent.equals("2.0"))
+				return "pow2(" + base + ")";
+			if (exponent.equals("3.0"))
+				return "pow3(" + base + ")";
+			return "Math.pow(" + base + ", " + exponent + ")";
+		}
+
+		// primary := number | name | function '(' args ')' | '(' expr ')'
+		private String primary() throws EquationException {
+			char ch = peek();
+			if (ch == '(') {
+				pos++;
+				String s = expr();
+				expect(')');
+				return s;
+			}
+			if (Character.isDigit(ch) || ch == '.')
+				return number();
+			if (Character.isJavaIdentifierStart(ch)) {
+				String id = identifier();
+				if (peek() == '(') {
+					Integer arity = FUNCTIONS.get(id);
+					if (arity == null)
+						throw error("unknown function \"" + id + "\"");
+					pos++;
+					StringBuilder call = new StringBuilder("Math." + id + "(");
+					for (int i = 0; i < arity.intValue(); i++) {
+						if (i > 0) {
+							expect(',');
+							call.append(", ");
+						}
+						call.append(expr());
+					}
+					expect(')');
+					return call.append(")").toString();
+				}
+				String javaName = names.get(id);
+				if (javaName == null)
+					throw error("unknown name \"" + id + "\"");
+				return javaName;
+			}
+			if (ch == 0)
+				throw error("unexpected end of expression");
+			throw error("unexpected '" + ch + "'");
+		}
+
+		private String number() throws EquationException {
+			Matcher m = NUMBER.matcher(text);
+			m.region(pos, text.length());
+			if (!m.lookingAt())
+				throw error("bad number");
+			pos = m.end();
+			double v = Double.parseDouble(m.group());
+			if (Double.isInfinite(v))
+				throw error("number out of range: " + m.group());
+			return Double.toString(v);
+		}
+
+		private String identifier() {
+			int start = pos;
+			while (pos < text.length() && Character.isJavaIdentifierPart(text.charAt(pos)))
+				pos++;
+			return text.substring(start, pos);
+		}
+
+		private void expect(char ch) throws EquationException {
+			if (peek() != ch)
+				throw error("expected '" + ch + "'");
+			pos++;
+		}
+
+		/**
+		 * Skips whitespace and returns the next character, or 0 at the end.
+		 */
+		private char peek() {
+			skipSpace();
+			return (pos < text.length()) ? text.charAt(pos) : 0;
+		}
+
+		private void skipSpace() {
+			while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+				pos++;
+		}
+
+		private EquationException error(String msg) {
+			return new EquationException(msg + " at column " + (pos + 1) + " of \""
+					+ text + "\"", lineNumber);
+		}
+	}
+
+	/**
+	 * Holds the compiled classes in memory.
+	 */
+	private static class MemoryFileManager extends
+			ForwardingJavaFileManager<StandardJavaFileManager> {
+
+		private final Map<String, ByteArrayOutputStream> classes =
+				new HashMap<String, ByteArrayOutputStream>();
+
+		MemoryFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(Location location, final String className,
+				JavaFileObject.Kind kind, FileObject sibling) {
+			return new SimpleJavaFileObject(URI.create("mem:///"
+					+ className.replace('.', '/') + kind.extension), kind) {
+				@Override
+				public OutputStream openOutputStream() {
+					ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+					classes.put(className, bytes);
+					return bytes;
+				}
+			};
+		}
+
+		ClassLoader createClassLoader(ClassLoader parent) {
+			return new ClassLoader(parent) {
+				@Override
+				protected Class<?> findClass(String name) throws ClassNotFoundException {
+					ByteArrayOutputStream bytes = classes.get(name);
+					if (bytes == null)
+						return super.findClass(name);
+					byte[] b = bytes.toByteArray();
+					return defineClass(name, b, 0, b.length);
+				}
+			};
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	/**
+	 * The functions that may be used in expressions, with their numbers of
+	 * arguments. Each is the java.lang.Math method of the same name.
+	 */
+	public static final Map<String, Integer> FUNCTIONS;
+
+	static {
+		Map<String, Integer> f = new LinkedHashMap<String, Integer>();
+		for (String s : new String[] { "sin", "cos", "tan", "asin", "acos", "atan",
+				"sinh", "cosh", "tanh", "exp", "log", "log10", "sqrt", "cbrt", "abs",
+				"floor", "ceil", "signum" })
+			f.put(s, Integer.valueOf(1));
+		for (String s : new String[] { "atan2", "pow", "hypot", "min", "max" })
+			f.put(s, Integer.valueOf(2));
+		FUNCTIONS = Collections.unmodifiableMap(f);
+	}
+
+	private static final String GENERATED_PACKAGE = "lorenz.lab10.generated";
+
+	private static final double RANGE_MIN_DEFAULT = -10;
+	private static final double RANGE_MAX_DEFAULT = 10;
+
+	private static final String IDENT = "([\\p{L}_][\\p{L}\\p{N}_]*)";
+	private static final Pattern EQUATION = Pattern.compile("d\\s*" + IDENT
+			+ "\\s*/\\s*dt\\s*=(.*)");
+	private static final Pattern PARAM = Pattern.compile("param\\s+" + IDENT
+			+ "\\s*=(.*)");
+	private static final Pattern INIT = Pattern.compile("init\\s+" + IDENT + "\\s*=(.*)");
+	private static final Pattern RANGE = Pattern.compile("range\\s+" + IDENT
+			+ "\\s*=([^,]*),(.*)");
+	private static final Pattern NUMBER = Pattern
+			.compile("(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+	private static int classCounter = 0;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	private EquationCompiler() {}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	/**
+	 * Compiles the equations in the given file. The system is named after the
+	 * file, less its extension.
+	 */
+	public static CompiledODESystem compile(File file) throws IOException,
+			EquationException {
+		StringBuilder sb = new StringBuilder();
+		Reader in = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			char[] buf = new char[4096];
+			int n;
+			while ((n = in.read(buf)) > 0)
+				sb.append(buf, 0, n);
+		}
+		finally {
+			in.close();
+		}
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0)
+			name = name.substring(0, dot);
+		return compile(name, sb.toString());
+	}
+
+	/**
+	 * Compiles the given equations.
+	 *
+	 * @param name
+	 *            name of the system
+	 * @param equations
+	 *            the equations' source text
+	 * @throws EquationException
+	 *             if the equations are malformed, or there is no Java compiler
+	 */
+	public static CompiledODESystem compile(String name, String equations)
+			throws EquationException {
+		final String mtdName = "compile";
+		if (name == null)
+			throw new IllegalArgumentException("name cannot be null");
+		if (equations == null)
+			throw new IllegalArgumentException("equations cannot be null");
+
+		// ---------------------------------------
+		// 1. Sort the statements by kind.
+
+		List<String> coordinates = new ArrayList<String>();
+		List<String> rhs = new ArrayList<String>();
+		List<Integer> rhsLines = new ArrayList<Integer>();
+		Map<String, Double> params = new LinkedHashMap<String, Double>();
+		Map<String, Double> inits = new HashMap<String, Double>();
+		Map<String, double[]> ranges = new HashMap<String, double[]>();
+		Map<String, Integer> optionLines = new HashMap<String, Integer>();
+
+		String[] lines = equations.split("\r?\n|\r", -1);
+		for (int ln = 0; ln < lines.length; ln++) {
+			final int lineNumber = ln + 1;
+			String line = lines[ln];
+			int hash = line.indexOf('#');
+			if (hash >= 0)
+				line = line.substring(0, hash);
+			for (String stmt : line.split(";")) {
+				stmt = stmt.trim();
+				if (stmt.length() == 0)
+					continue;
+				Matcher m;
+				if ((m = EQUATION.matcher(stmt)).matches()) {
+					String id = m.group(1);
+					if (coordinates.contains(id))
+						throw new EquationException("second equation for " + id, lineNumber);
+					coordinates.add(id);
+					rhs.add(m.group(2));
+					rhsLines.add(Integer.valueOf(lineNumber));
+				}
+				else if ((m = PARAM.matcher(stmt)).matches()) {
+					String id = m.group(1);
+					if (params.containsKey(id))
+						throw new EquationException("duplicate param " + id, lineNumber);
+					params.put(id, Double.valueOf(parseNumber(m.group(2), lineNumber)));
+				}
+				else if ((m = INIT.matcher(stmt)).matches()) {
+					inits.put(m.group(1), Double.valueOf(parseNumber(m.group(2), lineNumber)));
+					optionLines.put(m.group(1), Integer.valueOf(lineNumber));
+				}
+				else if ((m = RANGE.matcher(stmt)).matches()) {
+					double lo = parseNumber(m.group(2), lineNumber);
+					double hi = parseNumber(m.group(3), lineNumber);
+					if (!(lo < hi))
+						throw new EquationException("empty range for " + m.group(1), lineNumber);
+					ranges.put(m.group(1), new double[] { lo, hi });
+					optionLines.put(m.group(1), Integer.valueOf(lineNumber));
+				}
+				else {
+					throw new EquationException("unrecognized statement \"" + stmt + "\"",
+							lineNumber);
+				}
+			}
+		}
+
+		// ---------------------------------------
+		// 2. Check the declarations, and name everything for the generated code.
+
+		if (coordinates.size() != 3)
+			throw new EquationException("need exactly 3 equations, found "
+					+ coordinates.size(), 0);
+
+		Map<String, String> names = new HashMap<String, String>();
+		names.put("t", "t");
+		names.put("pi", "Math.PI");
+		names.put("e", "Math.E");
+		for (int i = 0; i < 3; i++) {
+			String id = coordinates.get(i);
+			if (names.containsKey(id))
+				throw new EquationException("\"" + id + "\" is reserved", rhsLines.get(i)
+						.intValue());
+			names.put(id, "q" + i);
+		}
+		int k = 0;
+		for (String id : params.keySet()) {
+			if (names.containsKey(id))
+				throw new EquationException("param \"" + id
+						+ "\" clashes with a coordinate or reserved name", 0);
+			names.put(id, "k" + k++);
+		}
+		for (String id : optionLines.keySet()) {
+			if (!coordinates.contains(id))
+				throw new EquationException("\"" + id + "\" is not a coordinate",
+						optionLines.get(id).intValue());
+		}
+
+		String[] exprs = new String[3];
+		for (int i = 0; i < 3; i++)
+			exprs[i] =
+					new ExpressionTranslator(rhs.get(i), rhsLines.get(i).intValue(), names)
+							.translate();
+
+		// ---------------------------------------
+		// 3. Generate and compile.
+
+		final String simpleName;
+		synchronized (EquationCompiler.class) {
+			simpleName = "CompiledSystem" + classCounter++;
+		}
+		final String className = GENERATED_PACKAGE + "." + simpleName;
+		String source = generateSource(simpleName, params.size(), exprs);
+		if (logger.isLoggable(Level.FINE))
+			logger.logp(Level.FINE, clsName, mtdName, "generated source:\n" + source);
+
+		Class<?> cls = compileClass(className, source);
+
+		// ---------------------------------------
+		// 4. Instantiate.
+
+		String[] coefficientLabels = params.keySet().toArray(new String[params.size()]);
+		double[] coefficientDefaults = new double[params.size()];
+		k = 0;
+		for (Double v : params.values())
+			coefficientDefaults[k++] = v.doubleValue();
+		double[] ic = new double[3];
+		double[] min = new double[3];
+		double[] max = new double[3];
+		for (int i = 0; i < 3; i++) {
+			String id = coordinates.get(i);
+			Double v = inits.get(id);
+			ic[i] = (v == null) ? 0 : v.doubleValue();
+			double[] r = ranges.get(id);
+			min[i] = (r == null) ? RANGE_MIN_DEFAULT : r[0];
+			max[i] = (r == null) ? RANGE_MAX_DEFAULT : r[1];
+		}
+
+		try {
+			Constructor<?> ctor =
+					cls.getConstructor(String.class, String.class, String[].class,
+							String[].class, double[].class, double[].class, double[].class,
+							double[].class);
+			return (CompiledODESystem) ctor.newInstance(name, equations, coordinates
+					.toArray(new String[3]), coefficientLabels, coefficientDefaults, ic, min,
+					max);
+		}
+		catch (Exception e) {
+			throw new EquationException("cannot instantiate the compiled system", e);
+		}
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private static double parseNumber(String s, int lineNumber) throws EquationException {
+		try {
+			double v = Double.parseDouble(s.trim());
+			if (Double.isNaN(v) || Double.isInfinite(v))
+				throw new NumberFormatException();
+			return v;
+		}
+		catch (NumberFormatException e) {
+			throw new EquationException("bad number \"" + s.trim() + "\"", lineNumber);
+		}
+	}
+
+	private static String generateSource(String simpleName, int nCoeffs, String[] exprs) {
+		final String nl = "\n";
+		StringBuilder coeffLocals = new StringBuilder();
+		if (nCoeffs > 0)
+			coeffLocals.append("\t\tfinal double[] c = this.c;").append(nl);
+		for (int i = 0; i < nCoeffs; i++)
+			coeffLocals.append("\t\tfinal double k" + i + " = c[" + i + "];").append(nl);
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package " + GENERATED_PACKAGE + ";").append(nl).append(nl);
+		sb.append("public final class " + simpleName + " extends ")
+				.append(CompiledODESystem.class.getName()).append(" {").append(nl);
+
+		sb.append("\tpublic " + simpleName + "(String a0, String a1, String[] a2, ")
+				.append("String[] a3, double[] a4, double[] a5, double[] a6, double[] a7) {")
+				.append(nl);
+		sb.append("\t\tsuper(a0, a1, a2, a3, a4, a5, a6, a7);").append(nl);
+		sb.append("\t}").append(nl).append(nl);
+
+		sb.append("\tpublic void takeDerivatives(double t, double[] p, double[] dpdt) {")
+				.append(nl);
+		sb.append(coeffLocals);
+		sb.append("\t\tfinal double q0 = p[0];").append(nl);
+		sb.append("\t\tfinal double q1 = p[1];").append(nl);
+		sb.append("\t\tfinal double q2 = p[2];").append(nl);
+		for (int i = 0; i < 3; i++)
+			sb.append("\t\tdpdt[" + i + "] = " + exprs[i] + ";").append(nl);
+		sb.append("\t}").append(nl).append(nl);
+
+		sb.append("\tpublic void takeDerivatives(double t, double[] x, double[] y, ")
+				.append("double[] z, double[] dxdt, double[] dydt, double[] dzdt, ")
+				.append("int from, int to) {").append(nl);
+		sb.append(coeffLocals);
+		sb.append("\t\tfor (int i = from; i < to; i++) {").append(nl);
+		sb.append("\t\t\tfinal double q0 = x[i];").append(nl);
+		sb.append("\t\t\tfinal double q1 = y[i];").append(nl);
+		sb.append("\t\t\tfinal double q2 = z[i];").append(nl);
+		sb.append("\t\t\tdxdt[i] = " + exprs[0] + ";").append(nl);
+		sb.append("\t\t\tdydt[i] = " + exprs[1] + ";").append(nl);
+		sb.append("\t\t\tdzdt[i] = " + exprs[2] + ";").append(nl);
+		sb.append("\t\t}").append(nl);
+		sb.append("\t}").append(nl).append(nl);
+
+		sb.append("\tprivate static double pow2(double a) {").append(nl);
+		sb.append("\t\treturn a * a;").append(nl);
+		sb.append("\t}").append(nl).append(nl);
+		sb.append("\tprivate static double pow3(double a) {").append(nl);
+		sb.append("\t\treturn a * a * a;").append(nl);
+		sb.append("\t}").append(nl);
+		sb.append("}").append(nl);
+		return sb.toString();
+	}
+
+	private static Class<?> compileClass(String className, final String source)
+			throws EquationException {
+		final String mtdName = "compileClass";
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		if (javac == null)
+			throw new EquationException(
+					"no Java compiler available; equations need a JDK, not a JRE", 0);
+
+		DiagnosticCollector<JavaFileObject> diagnostics =
+				new DiagnosticCollector<JavaFileObject>();
+		MemoryFileManager fileManager =
+				new MemoryFileManager(javac.getStandardFileManager(diagnostics, null, null));
+		try {
+			return compileClass(javac, fileManager, diagnostics, className, source);
+		}
+		finally {
+			// the class bytes stay in memory; this closes the standard file
+			// manager's open jars
+			try {
+				fileManager.close();
+			}
+			catch (IOException e) {
+				if (logger.isLoggable(Level.FINE))
+					logger.logp(Level.FINE, clsName, mtdName, "ignoring " + e);
+			}
+		}
+	}
+
+	private static Class<?> compileClass(JavaCompiler javac,
+			MemoryFileManager fileManager, DiagnosticCollector<JavaFileObject> diagnostics,
+			String className, final String source) throws EquationException {
+		JavaFileObject sourceFile =
+				new SimpleJavaFileObject(URI.create("string:///"
+						+ className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension),
+						JavaFileObject.Kind.SOURCE) {
+					@Override
+					public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+						return source;
+					}
+				};
+
+		List<String> options = Arrays.asList("-classpath", getClassPath());
+		Boolean ok =
+				javac.getTask(null, fileManager, diagnostics, options, null,
+						Arrays.asList(sourceFile)).call();
+		if (!Boolean.TRUE.equals(ok)) {
+			StringBuilder msg = new StringBuilder("compilation failed:");
+			for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+				msg.append("\n").append(d.getMessage(null));
+			throw new EquationException(msg.toString(), 0);
+		}
+
+		try {
+			return fileManager.createClassLoader(CompiledODESystem.class.getClassLoader())
+					.loadClass(className);
+		}
+		catch (ClassNotFoundException e) {
+			throw new EquationException("compiled class went missing", e);
+		}
+	}
+
+	/**
+	 * Returns the class path to compile against: the JVM's own, plus wherever
+	 * CompiledODESystem was loaded from, in case that isn't on it.
+	 */
+	private static String getClassPath() {
+		String cp = System.getProperty("java.class.path", "");
+		CodeSource cs = CompiledODESystem.class.getProtectionDomain().getCodeSource();
+		URL url = (cs == null) ? null : cs.getLocation();
+		if (url != null && "file".equals(url.getProtocol())) {
+			try {
+				cp = new File(url.toURI()).getPath() + File.pathSeparator + cp;
+			}
+			catch (URISyntaxException e) {
+				// leave it off
+			}
+		}
+		return cp;
+	}
+}
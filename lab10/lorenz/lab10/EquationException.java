@@ -0,0 +1,31 @@
+package lorenz.lab10;
+
+/**
+ * Thrown when a set of equations cannot be parsed or compiled.
+ * 
+ * @author jehanson
+ */
+public class EquationException extends Exception {
+
+	private static final long serialVersionUID = -2986061204377712153L;
+
+	private final int lineNumber;
+
+	public EquationException(String message, int lineNumber) {
+		super((lineNumber > 0) ? "line " + lineNumber + ": " + message : message);
+		this.lineNumber = lineNumber;
+	}
+
+	public EquationException(String message, Throwable cause) {
+		super(message, cause);
+		this.lineNumber = 0;
+	}
+
+	/**
+	 * Returns the number of the offending line, counting from 1, or 0 if the
+	 * problem isn't tied to a line.
+	 */
+	public int getLineNumber() {
+		return lineNumber;
+	}
+}
@@ -0,0 +1,41 @@
+package lorenz.lab10;
+
+import lorenz.lab10.PropertySheet.FieldValidator;
+
+/**
+ * Scenario for an ODE system compiled from equations by
+ * {@link EquationCompiler}. The coefficients declared in the equations appear
+ * in the system parameters sheet like any other system's.
+ * 
+ * @author jehanson
+ */
+public class EquationScenario extends ODETrajectoryPairScenario {
+
+	// ========================================
+	// Creation
+	// ========================================
+
+	public EquationScenario(CompiledODESystem sys) {
+		super(sys);
+	}
+
+	// ========================================
+	// Operation
+	// ========================================
+
+	@Override
+	protected PropertySheet.FieldValidator getCoefficientValidator(String coefficientLabel) {
+		if (coefficientLabel == null)
+			throw new IllegalArgumentException(
+					"Argument \"coefficientLabel\" cannot be null");
+		return PropertySheet.DoubleValidator.any();
+	}
+
+	@Override
+	protected FieldValidator getCoordinateValidator(String coordinateLabel) {
+		if (coordinateLabel == null)
+			throw new IllegalArgumentException(
+					"Argument \"coordinateLabel\" cannot be null");
+		return PropertySheet.DoubleValidator.any();
+	}
+}
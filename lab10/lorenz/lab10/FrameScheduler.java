@@ -0,0 +1,195 @@
+package lorenz.lab10;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.swt.widgets.Display;
+
+/**
+ * Renders at a fixed frame rate, whatever the rate at which the data to be
+ * rendered changes. Producers on any thread call {@link #markDirty()}, which
+ * only sets a flag; a timer on the UI thread, started with
+ * {@link Display#timerExec(int, Runnable)}, checks the flag once per frame
+ * and runs the renderer if it is set. However fast the data arrives, at most
+ * one frame's worth of work is queued on the UI thread.
+ * <p>
+ * The renderer is timed, and if it takes longer than a frame, frames are
+ * skipped: the next one is put off by as many whole frame periods as the
+ * render time, averaged over recent frames, needs. The UI thread thus keeps
+ * time for handling input, and the rendered frames stay on the frame grid.
+ * <p>
+ * Apart from markDirty, methods must be called on the UI thread.
+ *
+ * @author jehanson
+ */
+public class FrameScheduler {
+
+	private static final String clsName = FrameScheduler.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	private class Tick implements Runnable {
+
+		@Override
+		public void run() {
+			if (tick != this || display.isDisposed())
+				return;
+			final int delay = frame();
+			display.timerExec(delay, this);
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	public static final double TARGET_FPS_DEFAULT = 30;
+
+	// weight of the latest frame in the average render time
+	private static final double SMOOTHING = 0.2;
+
+	private final Display display;
+	private final Runnable renderer;
+	private double targetFps;
+	private volatile boolean dirty;
+
+	// the running timer, or null
+	private Tick tick;
+	private double averageRenderMillis;
+	private long frameCount;
+	private long skippedCount;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param display
+	 * @param renderer
+	 *            run on the UI thread once per frame in which something is
+	 *            dirty. Should do all of its rendering before it returns, e.g.
+	 *            by calling redraw() and then update() on the control, so that
+	 *            its time can be measured.
+	 */
+	public FrameScheduler(Display display, Runnable renderer) {
+		super();
+		if (display == null)
+			throw new IllegalArgumentException("display cannot be null");
+		if (renderer == null)
+			throw new IllegalArgumentException("renderer cannot be null");
+		this.display = display;
+		this.renderer = renderer;
+		this.targetFps = TARGET_FPS_DEFAULT;
+		this.dirty = false;
+		this.tick = null;
+		this.averageRenderMillis = 0;
+		this.frameCount = 0;
+		this.skippedCount = 0;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public double getTargetFps() {
+		return targetFps;
+	}
+
+	/**
+	 * Sets the frame rate. Takes effect from the next frame.
+	 */
+	public void setTargetFps(double targetFps) {
+		if (!(targetFps > 0 && targetFps <= 1000))
+			throw new IllegalArgumentException("Bad value targetFps=" + targetFps
+					+ " -- must be > 0 and <= 1000");
+		this.targetFps = targetFps;
+	}
+
+	/**
+	 * Asks for a frame to be rendered. Threadsafe, and cheap enough to call for
+	 * every new data point.
+	 */
+	public void markDirty() {
+		dirty = true;
+	}
+
+	public boolean isRunning() {
+		return tick != null;
+	}
+
+	public void start() {
+		if (tick != null)
+			return;
+		tick = new Tick();
+		display.timerExec(getFrameMillis(), tick);
+	}
+
+	public void stop() {
+		if (tick == null)
+			return;
+		display.timerExec(-1, tick);
+		tick = null;
+	}
+
+	/**
+	 * Returns the number of frames rendered.
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the number of frames skipped because rendering took too long.
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+
+	/**
+	 * Returns the render time, averaged over recent frames.
+	 */
+	public double getAverageRenderMillis() {
+		return averageRenderMillis;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private int getFrameMillis() {
+		return Math.max(1, (int) Math.round(1000 / targetFps));
+	}
+
+	/**
+	 * Renders a frame if anything is dirty. Returns the delay until the next.
+	 */
+	private int frame() {
+		final String mtdName = "frame";
+		final int frameMillis = getFrameMillis();
+		if (!dirty)
+			return frameMillis;
+
+		// cleared first, so marks made while rendering get the next frame
+		dirty = false;
+		final long start = System.nanoTime();
+		renderer.run();
+		final double renderMillis = (System.nanoTime() - start) / 1e6;
+		averageRenderMillis =
+				(frameCount == 0) ? renderMillis : averageRenderMillis + SMOOTHING
+						* (renderMillis - averageRenderMillis);
+		frameCount++;
+
+		final int skip = (int) Math.ceil(averageRenderMillis / frameMillis) - 1;
+		if (skip > 0) {
+			skippedCount += skip;
+			if (logger.isLoggable(Level.FINER))
+				logger.logp(Level.FINER, clsName, mtdName, "average render time "
+						+ averageRenderMillis + " ms; skipping " + skip + " frames");
+		}
+		// next frame on the frame grid, at least 1 ms from now
+		return Math.max(1, (1 + Math.max(skip, 0)) * frameMillis - (int) renderMillis);
+	}
+}
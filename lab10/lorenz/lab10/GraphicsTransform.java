@@ -10,4 +10,13 @@ public interface GraphicsTransform {
 
 	public abstract Point dataToGraphics(DataPoint dataPt);
 
+	/**
+	 * Transforms length points, given by parallel coordinate arrays starting
+	 * at offset, to pixels. Writes them to the pixels array as x,y pairs, in
+	 * the form taken by GC.drawPolyline: point i goes to pixels[2*i] and
+	 * pixels[2*i+1]. Allocates nothing.
+	 */
+	public abstract void dataToGraphics(double[] xs, double[] ys, double[] zs,
+			int offset, int length, int[] pixels);
+
 }
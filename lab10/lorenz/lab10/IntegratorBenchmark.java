@@ -0,0 +1,270 @@
+package lorenz.lab10;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the cost and accuracy of the ODE integrators on one trajectory of
+ * an ODE scenario's system. For each integrator it reports, per unit of
+ * simulated time, the number of derivative evaluations and the wall-clock
+ * time, and the distance at the end of the run from a reference trajectory
+ * computed with RK4 at a hundredth of the smallest time step.
+ * <p>
+ * Usage: <code>IntegratorBenchmark [options]</code>, with options
+ * <dl>
+ * <dt>-scenario <i>name</i></dt>
+ * <dd>an ODE scenario as for {@link BatchRunner}; PlanarPendulum by
+ * default</dd>
+ * <dt>-until <i>t</i></dt>
+ * <dd>simulated time of each run (default 10)</dd>
+ * <dt>-dt <i>h</i></dt>
+ * <dd>time step of the fixed-step integrators (RK4 and ABM4 in PECE and PEC
+ * modes); may be repeated. Default 0.02, 0.01 and 0.005.</dd>
+ * <dt>-tol <i>tol</i></dt>
+ * <dd>absolute and relative tolerance of DP45; may be repeated. Default 1e-6
+ * and 1e-10.</dd>
+ * </dl>
+ *
+ * @author jehanson
+ */
+public class IntegratorBenchmark {
+
+	// ==========================================
+	// main
+	// ==========================================
+
+	public static void main(String[] args) {
+		String scenario = "PlanarPendulum";
+		double until = UNTIL_DEFAULT;
+		List<Double> steps = new ArrayList<Double>();
+		List<Double> tolerances = new ArrayList<Double>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				String arg = args[i];
+				if (i + 1 >= args.length)
+					throw new IllegalArgumentException("Missing value for " + arg);
+				else if (arg.equals("-scenario"))
+					scenario = args[++i];
+				else if (arg.equals("-until"))
+					until = Double.parseDouble(args[++i]);
+				else if (arg.equals("-dt"))
+					steps.add(Double.valueOf(args[++i]));
+				else if (arg.equals("-tol"))
+					tolerances.add(Double.valueOf(args[++i]));
+				else
+					throw new IllegalArgumentException("Unrecognized option " + arg);
+			}
+			if (!(until > 0))
+				throw new IllegalArgumentException("Bad value until=" + until
+						+ " -- must be > 0");
+		}
+		catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: " + IntegratorBenchmark.class.getSimpleName()
+					+ " [-scenario name|file.ode] [-until t] [-dt h]... [-tol tol]...");
+			System.exit(2);
+		}
+		if (steps.isEmpty())
+			for (double h : STEPS_DEFAULT)
+				steps.add(Double.valueOf(h));
+		if (tolerances.isEmpty())
+			for (double tol : TOLERANCES_DEFAULT)
+				tolerances.add(Double.valueOf(tol));
+
+		try {
+			ScenarioModel model = BatchRunner.createModel(scenario);
+			if (!(model instanceof ODETrajectoryPairModel))
+				throw new IllegalArgumentException("Scenario \"" + scenario
+						+ "\" is not an ODE scenario");
+			IntegratorBenchmark bench =
+					new IntegratorBenchmark(((ODETrajectoryPairModel) model).getSystem(),
+							until);
+
+			double smallest = Double.POSITIVE_INFINITY;
+			for (Double h : steps)
+				smallest = Math.min(smallest, h.doubleValue());
+			bench.computeReference(smallest / REFERENCE_STEP_DIVISOR);
+
+			System.out.println(String.format("%-12s %10s %14s %14s %10s", "integrator",
+					"h or tol", "evals/unit t", "us/unit t", "error"));
+			for (Double h : steps) {
+				bench.run(new RungeKutta4_3D("RK4", bench.counter), h.doubleValue());
+				bench.run(new AdamsBashforthMoulton4_3D("ABM4 PECE", bench.counter,
+						bench.counter.getInitialStateHint(),
+						AdamsBashforthMoulton4_3D.Mode.PECE), h.doubleValue());
+				bench.run(new AdamsBashforthMoulton4_3D("ABM4 PEC", bench.counter,
+						bench.counter.getInitialStateHint(),
+						AdamsBashforthMoulton4_3D.Mode.PEC), h.doubleValue());
+			}
+			for (Double tol : tolerances) {
+				DormandPrince45_3D dp = new DormandPrince45_3D("DP45", bench.counter);
+				dp.setAbsTolerance(tol.doubleValue());
+				dp.setRelTolerance(tol.doubleValue());
+				bench.run(dp, tol.doubleValue());
+			}
+		}
+		catch (Exception e) {
+			System.err.println("Benchmark failed: " + e);
+			System.exit(1);
+		}
+	}
+
+	// ==========================================
+	// Inner classes
+	// ==========================================
+
+	/**
+	 * Counts the derivative evaluations made of the wrapped system.
+	 */
+	private static class CountingSystem implements ODESystem_3D {
+
+		private final ODESystem_3D sys;
+		private long count;
+
+		public CountingSystem(ODESystem_3D sys) {
+			super();
+			this.sys = sys;
+			this.count = 0;
+		}
+
+		@Override
+		public DataBox getDataBounds() {
+			return sys.getDataBounds();
+		}
+
+		@Override
+		public DataPoint getInitialStateHint() {
+			return sys.getInitialStateHint();
+		}
+
+		@Override
+		public String[] getCoordinateLabels() {
+			return sys.getCoordinateLabels();
+		}
+
+		@Override
+		public Map<String, Double> getCoefficients() {
+			return sys.getCoefficients();
+		}
+
+		@Override
+		public Map<String, Double> getCoefficientsHint() {
+			return sys.getCoefficientsHint();
+		}
+
+		@Override
+		public void setCoefficients(Map<String, Double> coefficients) {
+			sys.setCoefficients(coefficients);
+		}
+
+		@Override
+		public void takeDerivatives(double t, double[] p, double[] dpdt) {
+			count++;
+			sys.takeDerivatives(t, p, dpdt);
+		}
+
+		@Override
+		public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+				double[] dxdt, double[] dydt, double[] dzdt, int from, int to) {
+			count += to - from;
+			sys.takeDerivatives(t, x, y, z, dxdt, dydt, dzdt, from, to);
+		}
+
+		@Override
+		public void getJacobian(double t, double[] p, double[] J) {
+			sys.getJacobian(t, p, J);
+		}
+	}
+
+	// ==========================================
+	// Variables
+	// ==========================================
+
+	private static final double UNTIL_DEFAULT = 10;
+	private static final double[] STEPS_DEFAULT = { 0.02, 0.01, 0.005 };
+	private static final double[] TOLERANCES_DEFAULT = { 1e-6, 1e-10 };
+	private static final double REFERENCE_STEP_DIVISOR = 100;
+	// untimed runs of each integrator go on for this long, to let the JIT
+	// compiler finish; then the fastest of the timed runs counts
+	private static final long WARMUP_NANOS = 500000000L;
+	private static final int REPEATS = 5;
+
+	private final ODESystem_3D sys;
+	private final CountingSystem counter;
+	private final double until;
+	private DataPoint reference;
+
+	// ==========================================
+	// Creation
+	// ==========================================
+
+	public IntegratorBenchmark(ODESystem_3D sys, double until) {
+		super();
+		if (sys == null)
+			throw new IllegalArgumentException("sys cannot be null");
+		this.sys = sys;
+		this.counter = new CountingSystem(sys);
+		this.until = until;
+		this.reference = null;
+	}
+
+	// ==========================================
+	// Operation
+	// ==========================================
+
+	public void computeReference(double timeStep) {
+		RungeKutta4_3D rk = new RungeKutta4_3D("reference", sys);
+		rk.setTimeStep(timeStep);
+		rk.reset();
+		rk.advanceTo(until, 0);
+		reference = rk.getCurrentPoint();
+	}
+
+	/**
+	 * Runs the integrator, which must be built on this benchmark's counting
+	 * system, and prints a line of results.
+	 *
+	 * @param setting
+	 *            the time step or tolerance, for the report
+	 */
+	public void run(ODEIntegrator_3D integrator, double setting) {
+		if (!(integrator instanceof DormandPrince45_3D))
+			integrator.setTimeStep(setting);
+
+		counter.count = 0;
+		integrator.reset();
+		integrator.advanceTo(until, 0);
+		final long evals = counter.count;
+		final DataPoint end = integrator.getCurrentPoint();
+
+		final long warmupStart = System.nanoTime();
+		while (System.nanoTime() - warmupStart < WARMUP_NANOS) {
+			integrator.reset();
+			integrator.advanceTo(until, 0);
+		}
+		long best = Long.MAX_VALUE;
+		for (int i = 0; i < REPEATS; i++) {
+			integrator.reset();
+			final long start = System.nanoTime();
+			integrator.advanceTo(until, 0);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		final double error =
+				(reference == null) ? Double.NaN : distance(end, reference);
+		System.out.println(String.format("%-12s %10.3g %14.0f %14.3g %10.2e",
+				integrator.getName(), setting, evals / until, best / 1e3 / until, error));
+	}
+
+	// ==========================================
+	// Private
+	// ==========================================
+
+	private static double distance(DataPoint p, DataPoint q) {
+		final double dx = p.getX() - q.getX();
+		final double dy = p.getY() - q.getY();
+		final double dz = p.getZ() - q.getZ();
+		return Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+}
@@ -0,0 +1,122 @@
+package lorenz.lab10;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Lorenz-96 model: N variables on a ring, with
+ * 
+ * <pre>
+ * dx[i]/dt = (x[i+1] - x[i-2]) * x[i-1] - x[i] + F
+ * </pre>
+ * 
+ * where indices wrap around modulo N, and N >= 4.
+ * 
+ * @author jehanson
+ */
+public class Lorenz96System implements ODESystem_ND {
+
+	// ==================================
+	// Variables
+	// ==================================
+
+	public static final String F_LABEL = "F";
+
+	private static final int DIMENSION_DEFAULT = 40;
+	private static final double F_DEFAULT = 8;
+
+	private final int n;
+	private double f;
+
+	// ==================================
+	// Creation
+	// ==================================
+
+	public Lorenz96System() {
+		this(DIMENSION_DEFAULT);
+	}
+
+	public Lorenz96System(int dimension) {
+		super();
+		if (!(dimension >= 4))
+			throw new IllegalArgumentException("Bad value dimension=" + dimension
+					+ " -- must be >= 4");
+		this.n = dimension;
+		this.f = F_DEFAULT;
+	}
+
+	// ==================================
+	// Operation
+	// ==================================
+
+	@Override
+	public int getDimension() {
+		return n;
+	}
+
+	/**
+	 * Returns the equilibrium x[i] = F, with x[0] perturbed slightly.
+	 */
+	@Override
+	public double[] getInitialStateHint() {
+		double[] p = new double[n];
+		for (int i = 0; i < n; i++)
+			p[i] = f;
+		p[0] += 0.01;
+		return p;
+	}
+
+	@Override
+	public String[] getCoordinateLabels() {
+		String[] labels = new String[n];
+		for (int i = 0; i < n; i++)
+			labels[i] = "x" + i;
+		return labels;
+	}
+
+	@Override
+	public double getCoordinateMinHint(int i) {
+		return -1.5 * Math.abs(f);
+	}
+
+	@Override
+	public double getCoordinateMaxHint(int i) {
+		return 2 * Math.abs(f);
+	}
+
+	@Override
+	public Map<String, Double> getCoefficients() {
+		Map<String, Double> coeffs = new LinkedHashMap<String, Double>();
+		coeffs.put(F_LABEL, Double.valueOf(f));
+		return coeffs;
+	}
+
+	@Override
+	public Map<String, Double> getCoefficientsHint() {
+		Map<String, Double> coeffs = new LinkedHashMap<String, Double>();
+		coeffs.put(F_LABEL, Double.valueOf(F_DEFAULT));
+		return coeffs;
+	}
+
+	@Override
+	public void setCoefficients(Map<String, Double> coefficients) {
+		Double v = coefficients.get(F_LABEL);
+		if (v != null)
+			this.f = v.doubleValue();
+	}
+
+	@Override
+	public void takeDerivatives(double t, double[] p, double[] dpdt) {
+		final int n = this.n;
+		final double f = this.f;
+
+		// The wrap-around terms are peeled off so that the main loop is a
+		// straight sweep with no index arithmetic modulo n.
+		dpdt[0] = (p[1] - p[n - 2]) * p[n - 1] - p[0] + f;
+		dpdt[1] = (p[2] - p[n - 1]) * p[0] - p[1] + f;
+		for (int i = 2; i < n - 1; i++)
+			dpdt[i] = (p[i + 1] - p[i - 2]) * p[i - 1] - p[i] + f;
+		dpdt[n - 1] = (p[0] - p[n - 3]) * p[n - 2] - p[n - 1] + f;
+	}
+
+}
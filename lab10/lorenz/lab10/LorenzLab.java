@@ -1,8 +1,12 @@
 package lorenz.lab10;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.LogManager;
+import java.util.logging.Logger;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.layout.GridData;
@@ -18,6 +22,9 @@ import org.eclipse.swt.widgets.Shell;
  */
 public class LorenzLab {
 
+	private static final String clsName = LorenzLab.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
 	// ==========================================
 	// main
 	// ==========================================
@@ -52,6 +59,7 @@ public class LorenzLab {
 				display.sleep();
 		}
 		llab.getController().dispose();
+		llab.getViewer().dispose();
 		display.dispose();
 	}
 
@@ -59,6 +67,17 @@ public class LorenzLab {
 	// Variables
 	// ==========================================
 
+	/**
+	 * Directory searched for equation files (*.ode) at startup.
+	 */
+	public static final String EQUATIONS_DIR = "lab10/equations";
+
+	/**
+	 * Directory searched at startup for subdirectories of trajectory
+	 * recordings (*.trj), as written by <code>BatchRunner -record</code>.
+	 */
+	public static final String RECORDINGS_DIR = "lab10/recordings";
+
 	private DataSourceContainer sources;
 	private Viewer viewer;
 	private Controller controller;
@@ -77,6 +96,8 @@ public class LorenzLab {
 		this.controller.addScenario("PlanarPendulum", new PlanarPendulumScenario());
 		this.controller.addScenario("RandomFlier", new RandomFlierScenario());
 		this.controller.addScenario("RandomWalker", new RandomWalkerScenario());
+		addEquationScenarios(new File(EQUATIONS_DIR));
+		addReplayScenarios(new File(RECORDINGS_DIR));
 	}
 
 	// ==========================================
@@ -91,4 +112,48 @@ public class LorenzLab {
 		return controller;
 	}
 
+	// ==========================================
+	// Private
+	// ==========================================
+
+	/**
+	 * Adds a scenario for each equation file in the given directory. Files
+	 * that don't compile are skipped.
+	 */
+	private void addEquationScenarios(File dir) {
+		final String mtdName = "addEquationScenarios";
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files);
+		for (File f : files) {
+			if (!f.getName().endsWith(".ode"))
+				continue;
+			try {
+				CompiledODESystem sys = EquationCompiler.compile(f);
+				this.controller.addScenario(sys.getName(), new EquationScenario(sys));
+			}
+			catch (Exception e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "Ignoring equation file "
+							+ f + ": " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Adds a replay scenario for each subdirectory of the given directory that
+	 * contains recordings.
+	 */
+	private void addReplayScenarios(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null)
+			return;
+		Arrays.sort(files);
+		for (File f : files) {
+			if (f.isDirectory() && ReplayModel.listRecordings(f).length > 0)
+				this.controller.addScenario("Replay " + f.getName(), new ReplayScenario(f));
+		}
+	}
+
 }
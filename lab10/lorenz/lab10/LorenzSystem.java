@@ -120,4 +120,33 @@ public class LorenzSystem extends AbstractODESystem_3D {
 		dpdt[2] = p[0] * p[1] - beta * p[2];
 	}
 
+	@Override
+	public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+			double[] dxdt, double[] dydt, double[] dzdt, int from, int to) {
+		final double sigma = this.sigma;
+		final double rho = this.rho;
+		final double beta = this.beta;
+		for (int i = from; i < to; i++) {
+			final double xi = x[i];
+			final double yi = y[i];
+			final double zi = z[i];
+			dxdt[i] = sigma * (yi - xi);
+			dydt[i] = xi * (rho - zi) - yi;
+			dzdt[i] = xi * yi - beta * zi;
+		}
+	}
+
+	@Override
+	public void getJacobian(double t, double[] p, double[] J) {
+		J[0] = -sigma;
+		J[1] = sigma;
+		J[2] = 0;
+		J[3] = rho - p[2];
+		J[4] = -1;
+		J[5] = -p[0];
+		J[6] = p[1];
+		J[7] = p[0];
+		J[8] = -beta;
+	}
+
 }
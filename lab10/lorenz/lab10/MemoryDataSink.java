@@ -0,0 +1,136 @@
+package lorenz.lab10;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps every point in memory, per source, in primitive arrays.
+ * 
+ * @author jehanson
+ */
+public class MemoryDataSink implements DataSink {
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	private static class Series {
+
+		private double[] t = new double[INITIAL_CAPACITY];
+		private double[] x = new double[INITIAL_CAPACITY];
+		private double[] y = new double[INITIAL_CAPACITY];
+		private double[] z = new double[INITIAL_CAPACITY];
+		private int count = 0;
+
+		public void add(DataSourceEvent e) {
+			if (count == t.length) {
+				final int n = 2 * count;
+				t = Arrays.copyOf(t, n);
+				x = Arrays.copyOf(x, n);
+				y = Arrays.copyOf(y, n);
+				z = Arrays.copyOf(z, n);
+			}
+			t[count] = e.getTimestamp();
+			x[count] = e.getX();
+			y[count] = e.getY();
+			z[count] = e.getZ();
+			count++;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final Map<String, Series> series;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public MemoryDataSink() {
+		this.series = new LinkedHashMap<String, Series>();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	/**
+	 * Returns the names of the sources that have produced points, in the order
+	 * of their first points.
+	 */
+	public synchronized Set<String> getSourceNames() {
+		return Collections.unmodifiableSet(new LinkedHashSet<String>(series.keySet()));
+	}
+
+	/**
+	 * Returns the number of points kept from the named source.
+	 */
+	public synchronized int getCount(String name) {
+		Series s = series.get(name);
+		return (s == null) ? 0 : s.count;
+	}
+
+	/**
+	 * Returns a copy of the times of the points kept from the named source.
+	 */
+	public synchronized double[] getTimes(String name) {
+		Series s = series.get(name);
+		return (s == null) ? new double[0] : Arrays.copyOf(s.t, s.count);
+	}
+
+	/**
+	 * Returns a copy of the given coordinate (0, 1 or 2) of the points kept
+	 * from the named source.
+	 */
+	public synchronized double[] getCoordinates(String name, int coordinate) {
+		Series s = series.get(name);
+		if (s == null)
+			return new double[0];
+		switch (coordinate) {
+		case 0:
+			return Arrays.copyOf(s.x, s.count);
+		case 1:
+			return Arrays.copyOf(s.y, s.count);
+		case 2:
+			return Arrays.copyOf(s.z, s.count);
+		default:
+			throw new IllegalArgumentException("Bad value coordinate=" + coordinate
+					+ " -- must be 0, 1 or 2");
+		}
+	}
+
+	/**
+	 * Discards every point kept so far.
+	 */
+	public synchronized void clear() {
+		series.clear();
+	}
+
+	@Override
+	public synchronized void dataPointGenerated(DataSourceEvent e) {
+		final String name = ((DataSource) e.getSource()).getName();
+		Series s = series.get(name);
+		if (s == null) {
+			s = new Series();
+			series.put(name, s);
+		}
+		s.add(e);
+	}
+
+	@Override
+	public void dataSourceReset(DataSourceEvent e) {}
+
+	@Override
+	public void flush() {}
+
+	@Override
+	public void close() {}
+}
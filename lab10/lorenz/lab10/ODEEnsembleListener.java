@@ -0,0 +1,12 @@
+package lorenz.lab10;
+
+/**
+ * 
+ * @author jehanson
+ */
+public interface ODEEnsembleListener {
+
+	public void ensembleReset(ODEEnsemble_3D source);
+
+	public void ensembleStepped(ODEEnsemble_3D source);
+}
@@ -0,0 +1,371 @@
+package lorenz.lab10;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fourth-order Runge-Kutta integration of many trajectories of a single
+ * {@link ODESystem_3D} at once.
+ * <p>
+ * The trajectories' states are kept in three contiguous coordinate arrays
+ * rather than one object per trajectory. The population is stepped one
+ * cache-sized block at a time, and each stage of the integration is a single
+ * loop over the block, using the ODE system's bulk takeDerivatives. All
+ * trajectories share the same time and time step.
+ * <p>
+ * An ensemble is a Steppable but not a DataSource: after each step its
+ * listeners are notified once, and may read the coordinate arrays directly.
+ *
+ * @author jehanson
+ */
+public class ODEEnsemble_3D implements Steppable {
+
+	private static final String clsName = ODEEnsemble_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+
+	// Trajectories are stepped in blocks of this many, so that the scratch
+	// arrays stay in cache however large the ensemble is.
+	private static final int BLOCK_SIZE = 512;
+
+	private final String name;
+	private final ODESystem_3D odeSystem;
+	private final int size;
+	private final List<ODEEnsembleListener> listeners;
+	private DataBox odeBounds;
+
+	private double timeStep;
+	private double currT;
+	// steps taken by advanceTo since it last notified the listeners
+	private int emitPhase;
+
+	// initial states
+	private final double[] x0;
+	private final double[] y0;
+	private final double[] z0;
+
+	// current states
+	private final double[] x;
+	private final double[] y;
+	private final double[] z;
+
+	// scratch space for one block: starting state, stage estimates,
+	// derivatives, weighted sums
+	private final double[] curX;
+	private final double[] curY;
+	private final double[] curZ;
+	private final double[] tmpX;
+	private final double[] tmpY;
+	private final double[] tmpZ;
+	private final double[] dX;
+	private final double[] dY;
+	private final double[] dZ;
+	private final double[] sumX;
+	private final double[] sumY;
+	private final double[] sumZ;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * Creates an ensemble of the given size. Every trajectory starts at the
+	 * ODE system's initial state hint until told otherwise.
+	 */
+	public ODEEnsemble_3D(String name, ODESystem_3D odeSystem, int size) {
+		if (name == null)
+			throw new IllegalArgumentException("name cannot be null");
+		if (odeSystem == null)
+			throw new IllegalArgumentException("odeSystem cannot be null");
+		if (!(size > 0))
+			throw new IllegalArgumentException("Bad value size=" + size + " -- must be > 0");
+
+		this.name = name;
+		this.odeSystem = odeSystem;
+		this.size = size;
+		this.listeners = new ArrayList<ODEEnsembleListener>();
+		this.odeBounds = odeSystem.getDataBounds();
+		this.timeStep = TIME_STEP_DEFAULT;
+
+		this.x0 = new double[size];
+		this.y0 = new double[size];
+		this.z0 = new double[size];
+		this.x = new double[size];
+		this.y = new double[size];
+		this.z = new double[size];
+
+		final int nScratch = Math.min(size, BLOCK_SIZE);
+		this.curX = new double[nScratch];
+		this.curY = new double[nScratch];
+		this.curZ = new double[nScratch];
+		this.tmpX = new double[nScratch];
+		this.tmpY = new double[nScratch];
+		this.tmpZ = new double[nScratch];
+		this.dX = new double[nScratch];
+		this.dY = new double[nScratch];
+		this.dZ = new double[nScratch];
+		this.sumX = new double[nScratch];
+		this.sumY = new double[nScratch];
+		this.sumZ = new double[nScratch];
+
+		DataPoint ic = odeSystem.getInitialStateHint();
+		for (int i = 0; i < size; i++)
+			setInitialState(i, ic.getX(), ic.getY(), ic.getZ());
+		resetState();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public String getName() {
+		return name;
+	}
+
+	public ODESystem_3D getODESystem() {
+		return odeSystem;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public DataBox getDataBoundsHint() {
+		return odeSystem.getDataBounds();
+	}
+
+	/**
+	 * Sets the initial state of one trajectory. Takes effect on the next reset.
+	 */
+	public void setInitialState(int i, double xi, double yi, double zi) {
+		x0[i] = xi;
+		y0[i] = yi;
+		z0[i] = zi;
+	}
+
+	/**
+	 * Sets the initial states of all trajectories, copying from the given
+	 * arrays. Takes effect on the next reset.
+	 */
+	public void setInitialStates(double[] xs, double[] ys, double[] zs) {
+		if (xs.length < size || ys.length < size || zs.length < size)
+			throw new IllegalArgumentException("arrays must have length >= " + size);
+		System.arraycopy(xs, 0, x0, 0, size);
+		System.arraycopy(ys, 0, y0, 0, size);
+		System.arraycopy(zs, 0, z0, 0, size);
+	}
+
+	/**
+	 * Returns the live array of the trajectories' current first coordinates.
+	 * Callers must not modify it.
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the live array of the trajectories' current second coordinates.
+	 * Callers must not modify it.
+	 */
+	public double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the live array of the trajectories' current third coordinates.
+	 * Callers must not modify it.
+	 */
+	public double[] getZ() {
+		return z;
+	}
+
+	public void copyCurrentState(int i, double[] p) {
+		p[0] = x[i];
+		p[1] = y[i];
+		p[2] = z[i];
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currT;
+	}
+
+	@Override
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		this.timeStep = timeStep;
+	}
+
+	@Override
+	public void reset() {
+		resetState();
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).ensembleReset(this);
+	}
+
+	@Override
+	public void step() {
+		final String mtdName = "step";
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "entering. t=" + currT);
+
+		for (int from = 0; from < size; from += BLOCK_SIZE)
+			stepBlock(from, Math.min(from + BLOCK_SIZE, size));
+		currT += timeStep;
+
+		for (int i = 0; i < listeners.size(); i++)
+			listeners.get(i).ensembleStepped(this);
+	}
+
+	/**
+	 * Steps until the current time reaches t, notifying the listeners after
+	 * every emitEvery-th step only. The count of steps carries over from one
+	 * call to the next, and restarts on a reset.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * timeStep;
+		long n = 0;
+		int k = (emitPhase > 0 && emitPhase < emitEvery) ? emitPhase : 0;
+		while (currT < stopTime) {
+			for (int from = 0; from < size; from += BLOCK_SIZE)
+				stepBlock(from, Math.min(from + BLOCK_SIZE, size));
+			currT += timeStep;
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				for (int i = 0; i < listeners.size(); i++)
+					listeners.get(i).ensembleStepped(this);
+			}
+		}
+		emitPhase = k;
+		return n;
+	}
+
+	public void addEnsembleListener(ODEEnsembleListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException("listener cannot be null");
+		listeners.add(listener);
+	}
+
+	public void removeEnsembleListener(ODEEnsembleListener listener) {
+		listeners.remove(listener);
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one RK4 step for trajectories [from, to), which must be at most
+	 * BLOCK_SIZE long. The scratch arrays are indexed relative to from.
+	 */
+	private void stepBlock(final int from, final int to) {
+		final int n = to - from;
+		final double h = timeStep;
+		final double h_2 = 0.5 * h;
+		final double h_6 = h / 6.0;
+		final double t = currT;
+
+		// 0. copy the block's current state into scratch
+		System.arraycopy(x, from, curX, 0, n);
+		System.arraycopy(y, from, curY, 0, n);
+		System.arraycopy(z, from, curZ, 0, n);
+
+		// 1. derivatives at current state
+		odeSystem.takeDerivatives(t, curX, curY, curZ, dX, dY, dZ, 0, n);
+		for (int i = 0; i < n; i++) {
+			sumX[i] = dX[i];
+			tmpX[i] = curX[i] + h_2 * dX[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumY[i] = dY[i];
+			tmpY[i] = curY[i] + h_2 * dY[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumZ[i] = dZ[i];
+			tmpZ[i] = curZ[i] + h_2 * dZ[i];
+		}
+
+		// 2. derivatives at first midpoint estimate
+		odeSystem.takeDerivatives(t + h_2, tmpX, tmpY, tmpZ, dX, dY, dZ, 0, n);
+		for (int i = 0; i < n; i++) {
+			sumX[i] += 2.0 * dX[i];
+			tmpX[i] = curX[i] + h_2 * dX[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumY[i] += 2.0 * dY[i];
+			tmpY[i] = curY[i] + h_2 * dY[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumZ[i] += 2.0 * dZ[i];
+			tmpZ[i] = curZ[i] + h_2 * dZ[i];
+		}
+
+		// 3. derivatives at second midpoint estimate
+		odeSystem.takeDerivatives(t + h_2, tmpX, tmpY, tmpZ, dX, dY, dZ, 0, n);
+		for (int i = 0; i < n; i++) {
+			sumX[i] += 2.0 * dX[i];
+			tmpX[i] = curX[i] + h * dX[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumY[i] += 2.0 * dY[i];
+			tmpY[i] = curY[i] + h * dY[i];
+		}
+		for (int i = 0; i < n; i++) {
+			sumZ[i] += 2.0 * dZ[i];
+			tmpZ[i] = curZ[i] + h * dZ[i];
+		}
+
+		// 4. derivatives at endpoint estimate; combine
+		odeSystem.takeDerivatives(t + h, tmpX, tmpY, tmpZ, dX, dY, dZ, 0, n);
+		for (int i = 0; i < n; i++)
+			x[from + i] = curX[i] + h_6 * (sumX[i] + dX[i]);
+		for (int i = 0; i < n; i++)
+			y[from + i] = curY[i] + h_6 * (sumY[i] + dY[i]);
+		for (int i = 0; i < n; i++)
+			z[from + i] = curZ[i] + h_6 * (sumZ[i] + dZ[i]);
+
+		// 5. boundary conditions. Skip the loops for permeable bounds.
+		final DataBox b = odeBounds;
+		if (b.getXBoundType() != DataBox.BoundType.PERMEABLE)
+			for (int i = from; i < to; i++)
+				x[i] = b.applyXBounds(x[i]);
+		if (b.getYBoundType() != DataBox.BoundType.PERMEABLE)
+			for (int i = from; i < to; i++)
+				y[i] = b.applyYBounds(y[i]);
+		if (b.getZBoundType() != DataBox.BoundType.PERMEABLE)
+			for (int i = from; i < to; i++)
+				z[i] = b.applyZBounds(z[i]);
+	}
+
+	private void resetState() {
+		odeBounds = odeSystem.getDataBounds();
+		System.arraycopy(x0, 0, x, 0, size);
+		System.arraycopy(y0, 0, y, 0, size);
+		System.arraycopy(z0, 0, z, 0, size);
+		currT = 0;
+		emitPhase = 0;
+	}
+}
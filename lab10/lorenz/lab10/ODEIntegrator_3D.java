@@ -0,0 +1,196 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Base class for data sources that numerically integrate an
+ * {@link ODESystem_3D}. Holds the system, its bounds, the initial state and the
+ * current state; subclasses supply the integration scheme in
+ * {@link #doStep()}.
+ * <p>
+ * The checkpointed state is the current time and state, the time step, the
+ * initial state, and the ODE system's coefficients. Subclasses with more
+ * state of their own should override writeState and readState, calling
+ * super first.
+ *
+ * @author jehanson
+ */
+public abstract class ODEIntegrator_3D extends DataSource implements Checkpointable {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	protected final ODESystem_3D odeSystem;
+	protected DataBox odeBounds;
+
+	private DataPoint initialState;
+	private double timeStep;
+
+	/**
+	 * The current state. Subclasses update it in place in doStep.
+	 */
+	protected final double[] currP;
+	protected double currT;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	protected ODEIntegrator_3D(String name, ODESystem_3D odeSystem,
+			DataPoint initialState, double timeStep) {
+		super(name);
+		if (odeSystem == null)
+			throw new IllegalArgumentException("odeSystem cannot be null");
+		if (initialState == null)
+			throw new IllegalArgumentException("initialState cannot be null");
+
+		this.odeSystem = odeSystem;
+		this.odeBounds = odeSystem.getDataBounds();
+		this.initialState = initialState;
+		this.timeStep = timeStep;
+		this.currP = new double[3];
+		resetState();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public ODESystem_3D getODESystem() {
+		return odeSystem;
+	}
+
+	/**
+	 * Returns a defensive copy of the ODE system's data bounds.
+	 */
+	@Override
+	public DataBox getDataBoundsHint() {
+		return odeSystem.getDataBounds();
+	}
+
+	public DataPoint getInitialState() {
+		return this.initialState;
+	}
+
+	public void setInitialState(DataPoint initialState) {
+		this.initialState = initialState;
+	}
+
+	@Override
+	public double getTimeStep() {
+		return this.timeStep;
+	}
+
+	public abstract double getTimeStepDefault();
+
+	@Override
+	public void setTimeStep(double timeStep) {
+		this.timeStep = timeStep;
+	}
+
+	@Override
+	public DataPoint getCurrentPoint() {
+		return new DataPoint(currP[0], currP[1], currP[2]);
+	}
+
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currP[0];
+		p[1] = currP[1];
+		p[2] = currP[2];
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currT;
+	}
+
+	/**
+	 * Moves the integrator to the given state and time without resetting it,
+	 * e.g. to hand a trajectory over from another integrator. Subclasses that
+	 * cache anything computed from the current state should override this and
+	 * call super.
+	 */
+	public void setCurrentState(double t, double[] p) {
+		this.currP[0] = p[0];
+		this.currP[1] = p[1];
+		this.currP[2] = p[2];
+		this.currT = t;
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeDouble(currT);
+		Checkpoint.writeArray(out, currP);
+		out.writeDouble(timeStep);
+		Checkpoint.writePoint(out, initialState);
+		Checkpoint.writeCoefficients(out, odeSystem.getCoefficients());
+	}
+
+	/**
+	 * Restores the state written by writeState. Sets the current state by
+	 * {@link #setCurrentState(double, double[])}, so subclass caches are
+	 * cleared.
+	 */
+	@Override
+	public void readState(DataInput in) throws IOException {
+		final double t = in.readDouble();
+		final double[] p = new double[3];
+		Checkpoint.readArray(in, p);
+		setTimeStep(in.readDouble());
+		setInitialState(Checkpoint.readPoint(in));
+		odeSystem.setCoefficients(Checkpoint.readCoefficients(in));
+		odeBounds = odeSystem.getDataBounds();
+		setCurrentState(t, p);
+	}
+
+	/**
+	 * Restores the initial state and time. Subclasses that keep additional
+	 * per-trajectory state should override this and call super.
+	 */
+	@Override
+	protected void doReset() {
+		resetState();
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Applies the ODE system's boundary conditions to the current state.
+	 *
+	 * @return true if any coordinate was changed by the boundary conditions.
+	 */
+	protected boolean applyBounds() {
+		final double x = odeBounds.applyXBounds(currP[0]);
+		final double y = odeBounds.applyYBounds(currP[1]);
+		final double z = odeBounds.applyZBounds(currP[2]);
+		final boolean changed = (x != currP[0] || y != currP[1] || z != currP[2]);
+		currP[0] = x;
+		currP[1] = y;
+		currP[2] = z;
+		return changed;
+	}
+
+	/**
+	 * Applies the ODE system's boundary conditions to the given point, in
+	 * place.
+	 */
+	protected void applyBounds(double[] p) {
+		p[0] = odeBounds.applyXBounds(p[0]);
+		p[1] = odeBounds.applyYBounds(p[1]);
+		p[2] = odeBounds.applyZBounds(p[2]);
+	}
+
+	private void resetState() {
+		this.odeBounds = odeSystem.getDataBounds();
+		this.currP[0] = initialState.getX();
+		this.currP[1] = initialState.getY();
+		this.currP[2] = initialState.getZ();
+		this.currT = 0;
+	}
+}
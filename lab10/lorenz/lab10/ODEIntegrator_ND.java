@@ -0,0 +1,145 @@
+package lorenz.lab10;
+
+/**
+ * Base class for numerical integrators of an {@link ODESystem_ND}. Holds the
+ * system, the initial state and the current state as primitive length-N
+ * arrays; subclasses supply the integration scheme in {@link #step()}.
+ * <p>
+ * Integrators of N-dimensional systems are not DataSources. Wrap one in a
+ * {@link ProjectionDataSource} to feed three of its coordinates into the
+ * Viewer.
+ *
+ * @author jehanson
+ */
+public abstract class ODEIntegrator_ND implements Steppable {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	protected final ODESystem_ND odeSystem;
+	protected final int dim;
+
+	private final double[] initialState;
+	private double timeStep;
+
+	/**
+	 * The current state. Subclasses update it in place in step.
+	 */
+	protected final double[] currP;
+	protected double currT;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	protected ODEIntegrator_ND(ODESystem_ND odeSystem, double[] initialState,
+			double timeStep) {
+		if (odeSystem == null)
+			throw new IllegalArgumentException("odeSystem cannot be null");
+		this.odeSystem = odeSystem;
+		this.dim = odeSystem.getDimension();
+		if (initialState == null || initialState.length != dim)
+			throw new IllegalArgumentException("initialState must be an array of length "
+					+ dim);
+
+		this.initialState = initialState.clone();
+		this.timeStep = timeStep;
+		this.currP = new double[dim];
+		resetState();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public ODESystem_ND getODESystem() {
+		return odeSystem;
+	}
+
+	public int getDimension() {
+		return dim;
+	}
+
+	/**
+	 * Returns a copy of the initial state.
+	 */
+	public double[] getInitialState() {
+		return initialState.clone();
+	}
+
+	/**
+	 * Sets the initial state, copying from the given array. Takes effect on
+	 * the next reset.
+	 */
+	public void setInitialState(double[] p) {
+		if (p == null || p.length != dim)
+			throw new IllegalArgumentException("p must be an array of length " + dim);
+		System.arraycopy(p, 0, initialState, 0, dim);
+	}
+
+	/**
+	 * Returns the live array holding the current state. Callers must not
+	 * modify it.
+	 */
+	public double[] getCurrentState() {
+		return currP;
+	}
+
+	public double getCurrentState(int i) {
+		return currP[i];
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currT;
+	}
+
+	@Override
+	public double getTimeStep() {
+		return this.timeStep;
+	}
+
+	public abstract double getTimeStepDefault();
+
+	@Override
+	public void setTimeStep(double timeStep) {
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Steps until the current time reaches t. An ND integrator has no
+	 * listeners, so emitEvery only has to be valid.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		while (currT < stopTime) {
+			step();
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Restores the initial state and time. Subclasses that keep additional
+	 * per-trajectory state should override this and call super.
+	 */
+	@Override
+	public void reset() {
+		resetState();
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private void resetState() {
+		System.arraycopy(initialState, 0, currP, 0, dim);
+		currT = 0;
+	}
+}
@@ -0,0 +1,12 @@
+package lorenz.lab10;
+
+/**
+ * Makes new, independent instances of an ODE system, e.g. one per worker
+ * thread, since setCoefficients changes an ODE system's state.
+ *
+ * @author jehanson
+ */
+public interface ODESystemFactory_3D {
+
+	public ODESystem_3D newSystem();
+}
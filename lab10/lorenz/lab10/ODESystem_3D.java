@@ -59,4 +59,54 @@ public interface ODESystem_3D {
 	 */
 	public void takeDerivatives(double t, double[] p, double[] dpdt);
 
-}
\ No newline at end of file
+	/**
+	 * Bulk version of {@link #takeDerivatives(double, double[], double[])} for
+	 * many points stored as separate coordinate arrays ("structure of
+	 * arrays"). For every index i in [from, to), the derivatives at the point
+	 * (x[i], y[i], z[i]) are placed into dxdt[i], dydt[i] and dzdt[i].
+	 * <p>
+	 * Implementations should evaluate the derivatives in a single tight loop.
+	 * 
+	 * @param t
+	 *            The time at which the derivatives are calculated
+	 * @param x
+	 *            first coordinates of the points
+	 * @param y
+	 *            second coordinates of the points
+	 * @param z
+	 *            third coordinates of the points
+	 * @param dxdt
+	 *            array into which d(x)/dt are placed
+	 * @param dydt
+	 *            array into which d(y)/dt are placed
+	 * @param dzdt
+	 *            array into which d(z)/dt are placed
+	 * @param from
+	 *            index of the first point, inclusive
+	 * @param to
+	 *            index of the last point, exclusive
+	 */
+	public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+			double[] dxdt, double[] dydt, double[] dzdt, int from, int to);
+
+	/**
+	 * Calculates the Jacobian matrix of the derivatives, evaluated at the given
+	 * point: <code>J[3*i + j]</code> is set to the partial derivative of
+	 * <code>dp[i]/dt</code> with respect to <code>p[j]</code>.
+	 * <p>
+	 * Implicit integrators call this once per step. Systems that have no
+	 * analytic form may approximate it by finite differences (as
+	 * {@link AbstractODESystem_3D} does).
+	 * 
+	 * @param t
+	 *            The time at which the Jacobian is calculated
+	 * @param p
+	 *            The point at which the Jacobian is calculated. Must be a
+	 *            non-null array of length >= 3.
+	 * @param J
+	 *            The array into which the matrix is placed, in row-major
+	 *            order. Must be a non-null array of length >= 9.
+	 */
+	public void getJacobian(double t, double[] p, double[] J);
+
+}
@@ -0,0 +1,72 @@
+package lorenz.lab10;
+
+import java.util.Map;
+
+/**
+ * System of ordinary differential equations with an arbitrary number of
+ * degrees of freedom. The N-dimensional counterpart of {@link ODESystem_3D}.
+ * 
+ * @author jehanson
+ */
+public interface ODESystem_ND {
+
+	/**
+	 * Returns the number of degrees of freedom, N.
+	 */
+	public int getDimension();
+
+	/**
+	 * Returns a new length-N array holding a suggested initial state.
+	 */
+	public double[] getInitialStateHint();
+
+	/**
+	 * Returns labels for the coordinates of this ODESystem.
+	 * 
+	 * @return length-N array of non-null strings
+	 */
+	public String[] getCoordinateLabels();
+
+	/**
+	 * Returns a hint for the smallest value the given coordinate is expected
+	 * to take, for use in setting up displays.
+	 */
+	public double getCoordinateMinHint(int i);
+
+	/**
+	 * Returns a hint for the largest value the given coordinate is expected to
+	 * take, for use in setting up displays.
+	 */
+	public double getCoordinateMaxHint(int i);
+
+	/**
+	 * @see ODESystem_3D#getCoefficients()
+	 */
+	public Map<String, Double> getCoefficients();
+
+	public Map<String, Double> getCoefficientsHint();
+
+	/**
+	 * @see ODESystem_3D#setCoefficients(Map)
+	 */
+	public void setCoefficients(Map<String, Double> coefficients);
+
+	/**
+	 * Calculates the derivatives with respect to time, evaluated at the given
+	 * point.
+	 * <p>
+	 * Because this method is called so frequently, it signature is tuned for
+	 * efficiency -- i.e, raw arrays, assumed already allocated, are used.
+	 * 
+	 * @param t
+	 *            The time at which the derivatives are calculated.
+	 * @param p
+	 *            The point at which the derivatives are calculated. Must be a
+	 *            non-null array of length >= N.
+	 * @param dpdt
+	 *            The array into which the values of the derivatives are placed.
+	 *            Must be a non-null array of length >= N.
+	 */
+	public void takeDerivatives(double t, double[] p, double[] dpdt);
+
+}
@@ -0,0 +1,166 @@
+package lorenz.lab10;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Two trajectories of the same ODE system, from initial conditions a small
+ * offset apart.
+ *
+ * @author jehanson
+ */
+public class ODETrajectoryPairModel implements ScenarioModel {
+
+	private static final String clsName = ODETrajectoryPairModel.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ================================
+	// Variables
+	// ================================
+
+	public static final DataPoint OFFSET_DEFAULT = new DataPoint(0.01, 0.01, 0.01);
+
+	private final ODESystem_3D sys;
+
+	private DataSourceContainer sources;
+	private ODEIntegrator_3D ds1;
+	private ODEIntegrator_3D ds2;
+	private DataPoint offset;
+
+	// ================================
+	// Creation
+	// ================================
+
+	public ODETrajectoryPairModel(ODESystem_3D sys) {
+		super();
+		if (sys == null)
+			throw new IllegalArgumentException("Argument \"sys\" cannot be null");
+		this.sys = sys;
+		this.sources = null;
+		this.ds1 = null;
+		this.ds2 = null;
+		this.offset = OFFSET_DEFAULT;
+	}
+
+	// ================================
+	// Operation
+	// ================================
+
+	public ODESystem_3D getSystem() {
+		return sys;
+	}
+
+	public String[] getCoordinateLabels() {
+		return sys.getCoordinateLabels();
+	}
+
+	public double getTimeStep() {
+		return (ds1 == null) ? 0 : ds1.getTimeStep();
+	}
+
+	public double getTimeStepDefault() {
+		return (ds1 == null) ? 0 : ds1.getTimeStepDefault();
+	}
+
+	public void setTimeStep(double x) {
+		if (ds1 != null)
+			ds1.setTimeStep(x);
+		if (ds2 != null)
+			ds2.setTimeStep(x);
+		if (sources != null)
+			sources.setTimeStep(x);
+	}
+
+	public DataPoint getIC() {
+		return (ds1 == null) ? DataPoint.ZERO : ds1.getInitialState();
+	}
+
+	public DataPoint getICDefault() {
+		return sys.getInitialStateHint();
+	}
+
+	public void setIC(DataPoint ic) {
+		if (ds1 != null)
+			ds1.setInitialState(ic);
+		if (ds2 != null)
+			ds2.setInitialState(ic.add(offset));
+	}
+
+	/**
+	 * Returns the offset of the second trajectory's initial condition from
+	 * the first's.
+	 */
+	public DataPoint getOffset() {
+		return offset;
+	}
+
+	public void setOffset(DataPoint offset) {
+		if (offset == null)
+			throw new IllegalArgumentException("offset cannot be null");
+		this.offset = offset;
+		if (ds1 != null && ds2 != null)
+			ds2.setInitialState(ds1.getInitialState().add(offset));
+	}
+
+	@Override
+	public DataBox getDataBounds() {
+		return sys.getDataBounds();
+	}
+
+	@Override
+	public List<DataSource> getSources() {
+		List<DataSource> list = new ArrayList<DataSource>(2);
+		if (ds1 != null)
+			list.add(ds1);
+		if (ds2 != null)
+			list.add(ds2);
+		return Collections.unmodifiableList(list);
+	}
+
+	@Override
+	public void setup(DataSourceContainer sources) {
+		final String mtdName = "setup";
+		if (logger.isLoggable(Level.FINE)) {
+			logger.logp(Level.FINE, clsName, mtdName, "enter");
+		}
+
+		this.sources = sources;
+
+		DataPoint ic1 = sys.getInitialStateHint();
+		ds1 = createIntegrator("ds1", sys, ic1);
+		DataPoint ic2 = ic1.add(this.offset);
+		ds2 = createIntegrator("ds2", sys, ic2);
+		sources.add(ds1);
+		sources.add(ds2);
+	}
+
+	@Override
+	public void teardown(DataSourceContainer sources) {
+		final String mtdName = "teardown";
+		if (logger.isLoggable(Level.FINE)) {
+			logger.logp(Level.FINE, clsName, mtdName, "enter");
+		}
+		if (ds1 != null) {
+			sources.remove(ds1.getName());
+			ds1 = null;
+		}
+		if (ds2 != null) {
+			sources.remove(ds2.getName());
+			ds2 = null;
+		}
+		this.sources = null;
+	}
+
+	/**
+	 * Creates the data source used for each of the two trajectories. This
+	 * implementation returns a {@link RungeKutta4_3D}; subclasses may override
+	 * it to use a different integrator.
+	 */
+	protected ODEIntegrator_3D createIntegrator(String name, ODESystem_3D sys,
+			DataPoint ic) {
+		return new RungeKutta4_3D(name, sys, ic);
+	}
+}
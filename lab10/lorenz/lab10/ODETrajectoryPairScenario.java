@@ -36,7 +36,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 				logger.logp(Level.FINE, clsName, mtdName, key + "=" + value);
 			}
 
-			DataPoint ic1 = ds1.getInitialState();
+			DataPoint ic1 = model.getIC();
 			double x = ic1.getX();
 			double y = ic1.getY();
 			double z = ic1.getZ();
@@ -53,12 +53,10 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 				z = Double.parseDouble(value);
 			}
 
-			DataPoint ic = new DataPoint(x, y, z);
-			ds1.setInitialState(ic);
-			ds2.setInitialState(ic.add(offset));
+			model.setIC(new DataPoint(x, y, z));
 
 			if (logger.isLoggable(Level.FINE)) {
-				String msg = "IC is now " + ds1.getInitialState();
+				String msg = "IC is now " + model.getIC();
 				logger.logp(Level.FINE, clsName, mtdName, msg);
 			}
 		}
@@ -73,6 +71,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 				logger.logp(Level.FINE, clsName, mtdName, key + "=" + value);
 			}
 
+			DataPoint offset = model.getOffset();
 			double dx = offset.getX();
 			double dy = offset.getY();
 			double dz = offset.getZ();
@@ -89,11 +88,10 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 				dz = Double.parseDouble(value);
 			}
 
-			offset = new DataPoint(dx, dy, dz);
-			ds2.setInitialState(ds1.getInitialState().add(offset));
+			model.setOffset(new DataPoint(dx, dy, dz));
 
 			if (logger.isLoggable(Level.FINE)) {
-				String msg = "Offset is now " + offset;
+				String msg = "Offset is now " + model.getOffset();
 				logger.logp(Level.FINE, clsName, mtdName, msg);
 			}
 		}
@@ -148,14 +146,11 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 	// Variables
 	// ================================
 
-	private static final DataPoint OFFSET_DEFAULT = new DataPoint(0.01, 0.01, 0.01);
+	private final ODETrajectoryPairModel model;
 	private final ODESystem_3D sys;
 	private final String[] coordinateLabels;
 
 	private DataSourceContainer sources;
-	private RungeKutta4_3D ds1;
-	private RungeKutta4_3D ds2;
-	private DataPoint offset;
 	private Legend legend;
 	private Composite cpane;
 	private PropertySheet sysSheet;
@@ -167,13 +162,15 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 	// ================================
 
 	public ODETrajectoryPairScenario(ODESystem_3D sys) {
-		super();
-		if (sys == null)
-			throw new IllegalArgumentException("Argument \"sys\" cannot be null");
-		this.sys = sys;
+		this(new ODETrajectoryPairModel(sys));
+	}
+
+	protected ODETrajectoryPairScenario(ODETrajectoryPairModel model) {
+		super(model);
+		this.model = model;
+		this.sys = model.getSystem();
 		this.coordinateLabels = sys.getCoordinateLabels();
-		ds1 = null;
-		offset = OFFSET_DEFAULT;
+		sources = null;
 		legend = new Legend();
 		cpane = null;
 		sysSheet = null;
@@ -186,35 +183,27 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 	// ================================
 
 	public double getTimeStep() {
-		return (ds1 == null) ? 0 : ds1.getTimeStep();
+		return model.getTimeStep();
 	}
 
 	public double getTimeStepDefault() {
-		return (ds1 == null) ? 0 : ds1.getTimeStepDefault();
+		return model.getTimeStepDefault();
 	}
 
 	public void setTimeStep(double x) {
-		if (ds1 != null)
-			ds1.setTimeStep(x);
-		if (ds2 != null)
-			ds2.setTimeStep(x);
-		if (sources != null)
-			sources.setTimeStep(x);
+		model.setTimeStep(x);
 	}
 
 	public DataPoint getIC() {
-		return (ds1 == null) ? DataPoint.ZERO : ds1.getInitialState();
+		return model.getIC();
 	}
 
 	public DataPoint getICDefault() {
-		return sys.getInitialStateHint();
+		return model.getICDefault();
 	}
 
 	public void setIC(DataPoint ic) {
-		if (ds1 != null)
-			ds1.setInitialState(ic);
-		if (ds2 != null)
-			ds2.setInitialState(ic.add(offset));
+		model.setIC(ic);
 	}
 
 	public String[] getCoordinateLabels() {
@@ -229,17 +218,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 		}
 
 		this.sources = sources;
-
-		DataPoint ic1 = sys.getInitialStateHint();
-		ds1 = new RungeKutta4_3D("ds1", sys, ic1);
-		DataPoint ic2 = ic1.add(this.offset);
-		ds2 = new RungeKutta4_3D("ds2", sys, ic2);
-		sources.add(ds1);
-		sources.add(ds2);
-
-		viewer.setDataBounds(sys.getDataBounds());
-		viewer.addTimeseries(ds1);
-		viewer.addTimeseries(ds2);
+		super.setup(sources, viewer);
 
 		legend = new Legend();
 		viewer.addViewDecorator(legend);
@@ -251,16 +230,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 		if (logger.isLoggable(Level.FINE)) {
 			logger.logp(Level.FINE, clsName, mtdName, "enter");
 		}
-		if (ds1 != null) {
-			sources.remove(ds1.getName());
-			viewer.removeTimeseries(ds1.getName());
-			ds1 = null;
-		}
-		if (ds2 != null) {
-			sources.remove(ds2.getName());
-			viewer.removeTimeseries(ds2.getName());
-			ds2 = null;
-		}
+		super.teardown(sources, viewer);
 
 		if (legend != null) {
 			viewer.removeViewDecorator(legend);
@@ -324,7 +294,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 		icLabel.setText("Initial Condition");
 		icLabel.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, nCols, 1));
 
-		final DataPoint ic = ds1.getInitialState();
+		final DataPoint ic = model.getIC();
 		icSheet = new PropertySheet();
 		icSheet.setFieldWidthHint(PropertySheet.NUMERIC_FIELD_WIDTH_HINT);
 		icSheet.addPropertyChangeListener(new ICListener());
@@ -363,6 +333,7 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 		offsetSheet = new PropertySheet();
 		offsetSheet.setFieldWidthHint(PropertySheet.NUMERIC_FIELD_WIDTH_HINT);
 		offsetSheet.addPropertyChangeListener(new OffsetListener());
+		final DataPoint offset = model.getOffset();
 		offsetSheet.addProperty(coordinateLabels[0], String.valueOf(offset.getX()),
 				anyDouble);
 		offsetSheet.addProperty(coordinateLabels[1], String.valueOf(offset.getY()),
@@ -381,8 +352,8 @@ public abstract class ODETrajectoryPairScenario extends AbstractScenario {
 		offsetReset.addSelectionListener(new SelectionAdapter() {
 			@Override
 			public void widgetSelected(SelectionEvent e) {
-				offset = OFFSET_DEFAULT;
-				ds2.setInitialState(ds1.getInitialState().add(offset));
+				model.setOffset(ODETrajectoryPairModel.OFFSET_DEFAULT);
+				DataPoint offset = model.getOffset();
 				offsetSheet.setProperty("dx", String.valueOf(offset.getX()));
 				offsetSheet.setProperty("dy", String.valueOf(offset.getY()));
 				offsetSheet.setProperty("dz", String.valueOf(offset.getZ()));
@@ -20,9 +20,13 @@ import java.util.Map;
  * dpdt[2] = -g / L * sin(p[0]);
  * </pre>
  * 
+ * The system is separable, with theta as the position coordinate and phi and
+ * thetaDot in the momentum group.
+ * 
  * @author jehanson
  */
-public class PlanarPendulumSystem extends AbstractODESystem_3D {
+public class PlanarPendulumSystem extends AbstractODESystem_3D implements
+		SeparableODESystem_3D {
 
 	// =====================================
 	// Variables
@@ -122,6 +126,55 @@ public class PlanarPendulumSystem extends AbstractODESystem_3D {
 		dpdt[2] = minusGOverL * Math.sin(p[0]);
 	}
 
+	@Override
+	public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+			double[] dxdt, double[] dydt, double[] dzdt, int from, int to) {
+		final double minusGOverL = this.minusGOverL;
+		for (int i = from; i < to; i++) {
+			dxdt[i] = z[i];
+			dydt[i] = 0;
+			dzdt[i] = minusGOverL * Math.sin(x[i]);
+		}
+	}
+
+	@Override
+	public void getJacobian(double t, double[] p, double[] J) {
+		J[0] = 0;
+		J[1] = 0;
+		J[2] = 1;
+		J[3] = 0;
+		J[4] = 0;
+		J[5] = 0;
+		J[6] = minusGOverL * Math.cos(p[0]);
+		J[7] = 0;
+		J[8] = 0;
+	}
+
+	@Override
+	public boolean[] getPositionCoordinates() {
+		return new boolean[] { true, false, false };
+	}
+
+	@Override
+	public void takePositionDerivatives(double t, double[] p, double[] dpdt) {
+		dpdt[0] = p[2];
+	}
+
+	@Override
+	public void takeMomentumDerivatives(double t, double[] p, double[] dpdt) {
+		dpdt[1] = 0;
+		dpdt[2] = minusGOverL * Math.sin(p[0]);
+	}
+
+	/**
+	 * Returns the energy per unit of mass*L^2:
+	 * <code>thetaDot^2/2 - (g/L) cos(theta)</code>
+	 */
+	@Override
+	public double getEnergy(double[] p) {
+		return 0.5 * p[2] * p[2] + minusGOverL * Math.cos(p[0]);
+	}
+
 	// ===========================
 	// Private
 	// ===========================
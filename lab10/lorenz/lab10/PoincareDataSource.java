@@ -0,0 +1,402 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Emits only the points where an integrator's trajectory crosses a surface of
+ * section, such as the plane z = rho - 1 for the Lorenz system.
+ * <p>
+ * The wrapped integrator is stepped as usual, and the section function is
+ * evaluated at the end of each step. When it changes sign, the crossing is
+ * located within the step using the integrator's dense output: starting from
+ * linear interpolation, then by Newton iteration on the section function
+ * along the trajectory, falling back to bisection whenever a Newton step
+ * would leave the bracket. Listeners see one point per crossing, time-stamped
+ * with the crossing time, so a long run produces orders of magnitude fewer
+ * events than the trajectory itself.
+ * <p>
+ * A sign change caused by the integrator's boundary conditions (wrapping
+ * around periodic bounds, say) is not a crossing, and is discarded: the
+ * section function doesn't go to zero at such a jump.
+ * <p>
+ * The wrapped integrator should not be stepped by anything else. Its
+ * listeners, if any, are notified once per integration step as usual.
+ *
+ * @author jehanson
+ */
+public class PoincareDataSource extends DataSource implements Checkpointable {
+
+	private static final String clsName = PoincareDataSource.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The crossings to report.
+	 */
+	public enum Direction {
+
+		/**
+		 * Crossings from the negative to the positive side of the section.
+		 */
+		UPWARD,
+
+		/**
+		 * Crossings from the positive to the negative side of the section.
+		 */
+		DOWNWARD,
+
+		/**
+		 * All crossings.
+		 */
+		BOTH
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double SEARCH_LIMIT_DEFAULT = 1000.0;
+
+	// A crossing time is converged when the last correction is smaller than
+	// this fraction of the step.
+	private static final double ROOT_TOLERANCE = 1e-12;
+
+	// A located root is accepted only if the section function there is
+	// smaller than this fraction of its values at the ends of the step.
+	private static final double ACCEPT_TOLERANCE = 1e-6;
+
+	private static final int MAX_ITERATIONS = 60;
+
+	private final ODEIntegrator_3D integrator;
+	private final DenseOutput_3D denseOutput;
+	private final ODESystem_3D odeSystem;
+	private final PoincareSection_3D section;
+	private Direction direction;
+	private double searchLimit;
+
+	// section function at the integrator's current state
+	private double currG;
+
+	// the last crossing
+	private double currT;
+	private final double[] currP = new double[3];
+	private long crossingCount;
+
+	// scratch space, preallocated so that stepping makes no garbage
+	private final double[] tmpP = new double[3];
+	private final double[] grad = new double[3];
+	private final double[] pDot = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param name
+	 * @param integrator
+	 *            the integrator to be stepped. Must implement
+	 *            {@link DenseOutput_3D}.
+	 * @param section
+	 *            the surface of section
+	 * @param direction
+	 *            the crossings to report
+	 */
+	public PoincareDataSource(String name, ODEIntegrator_3D integrator,
+			PoincareSection_3D section, Direction direction) {
+		super(name);
+		if (integrator == null)
+			throw new IllegalArgumentException("integrator cannot be null");
+		if (!(integrator instanceof DenseOutput_3D))
+			throw new IllegalArgumentException("integrator must implement "
+					+ DenseOutput_3D.class.getSimpleName());
+		if (section == null)
+			throw new IllegalArgumentException("section cannot be null");
+		if (direction == null)
+			throw new IllegalArgumentException("direction cannot be null");
+		this.integrator = integrator;
+		this.denseOutput = (DenseOutput_3D) integrator;
+		this.odeSystem = integrator.getODESystem();
+		this.section = section;
+		this.direction = direction;
+		this.searchLimit = SEARCH_LIMIT_DEFAULT;
+		resetState();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public ODEIntegrator_3D getIntegrator() {
+		return integrator;
+	}
+
+	public PoincareSection_3D getSection() {
+		return section;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public void setDirection(Direction direction) {
+		if (direction == null)
+			throw new IllegalArgumentException("direction cannot be null");
+		this.direction = direction;
+	}
+
+	/**
+	 * Returns the longest time that step() will integrate while looking for
+	 * the next crossing.
+	 */
+	public double getSearchLimit() {
+		return searchLimit;
+	}
+
+	public void setSearchLimit(double searchLimit) {
+		if (!(searchLimit > 0))
+			throw new IllegalArgumentException("Bad value searchLimit=" + searchLimit
+					+ " -- must be > 0");
+		this.searchLimit = searchLimit;
+	}
+
+	/**
+	 * Returns the number of crossings found since the last reset.
+	 */
+	public long getCrossingCount() {
+		return crossingCount;
+	}
+
+	@Override
+	public DataBox getDataBoundsHint() {
+		return integrator.getDataBoundsHint();
+	}
+
+	/**
+	 * Returns the last crossing point.
+	 */
+	@Override
+	public DataPoint getCurrentPoint() {
+		return new DataPoint(currP[0], currP[1], currP[2]);
+	}
+
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currP[0];
+		p[1] = currP[1];
+		p[2] = currP[2];
+	}
+
+	/**
+	 * Returns the time of the last crossing. The integrator will usually have
+	 * got a little further.
+	 */
+	@Override
+	public double getCurrentTime() {
+		return currT;
+	}
+
+	/**
+	 * Returns the integrator's time step.
+	 */
+	@Override
+	public double getTimeStep() {
+		return integrator.getTimeStep();
+	}
+
+	/**
+	 * Sets the integrator's time step.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		integrator.setTimeStep(timeStep);
+	}
+
+	/**
+	 * Integrates to the next crossing and tells the listeners about it. Tells
+	 * them nothing if there was no crossing within the search limit.
+	 */
+	@Override
+	public void step() {
+		final String mtdName = "step";
+		if (search(integrator.getCurrentTime() + searchLimit, 1, 1, false) == 0
+				&& logger.isLoggable(Level.FINE))
+			logger.logp(Level.FINE, clsName, mtdName, "no crossing by t="
+					+ integrator.getCurrentTime());
+	}
+
+	/**
+	 * Integrates until the integrator's time reaches t, telling the listeners
+	 * about every emitEvery-th crossing on the way.
+	 *
+	 * @return the number of crossings found
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		return search(t, emitEvery, Long.MAX_VALUE, true);
+	}
+
+	/**
+	 * Writes the integrator's state, then the direction, search limit, last
+	 * crossing and crossing count.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		integrator.writeState(out);
+		out.writeUTF(direction.name());
+		out.writeDouble(searchLimit);
+		out.writeDouble(currG);
+		out.writeDouble(currT);
+		Checkpoint.writeArray(out, currP);
+		out.writeLong(crossingCount);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		integrator.readState(in);
+		String name = in.readUTF();
+		try {
+			setDirection(Direction.valueOf(name));
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Unknown direction \"" + name + "\"");
+		}
+		setSearchLimit(in.readDouble());
+		currG = in.readDouble();
+		currT = in.readDouble();
+		Checkpoint.readArray(in, currP);
+		crossingCount = in.readLong();
+	}
+
+	@Override
+	protected void doReset() {
+		integrator.reset();
+		resetState();
+	}
+
+	/**
+	 * Integrates to the next crossing, or to the search limit.
+	 */
+	@Override
+	protected void doStep() {
+		search(integrator.getCurrentTime() + searchLimit, 0, 1, false);
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private void resetState() {
+		integrator.copyCurrentState(currP);
+		this.currT = integrator.getCurrentTime();
+		this.currG = section.value(currP);
+		this.crossingCount = 0;
+	}
+
+	/**
+	 * Steps the integrator until its time reaches t or maxCrossings crossings
+	 * have been found. Tells the listeners about every emitEvery-th crossing,
+	 * counting on from the last call if carryPhase is true, as for advanceTo.
+	 * Returns the number of crossings found.
+	 */
+	private long search(double t, int emitEvery, long maxCrossings,
+			boolean carryPhase) {
+		final double stopTime = t - TIME_TOLERANCE * integrator.getTimeStep();
+		long n = 0;
+		int k = carryPhase ? getEmitPhase(emitEvery) : 0;
+		while (n < maxCrossings && integrator.getCurrentTime() < stopTime) {
+			final double prevG = currG;
+			integrator.step();
+			integrator.copyCurrentState(tmpP);
+			currG = section.value(tmpP);
+			if (isCrossing(prevG, currG) && locate(prevG, currG)) {
+				n++;
+				if (++k == emitEvery) {
+					k = 0;
+					fireDataPointGenerated();
+				}
+			}
+		}
+		if (carryPhase)
+			setEmitPhase(k);
+		return n;
+	}
+
+	private boolean isCrossing(double g0, double g1) {
+		switch (direction) {
+		case UPWARD:
+			return g0 < 0 && g1 >= 0;
+		case DOWNWARD:
+			return g0 > 0 && g1 <= 0;
+		default:
+			return (g0 < 0 && g1 >= 0) || (g0 > 0 && g1 <= 0);
+		}
+	}
+
+	/**
+	 * Finds the root of the section function within the integrator's last
+	 * step, given the function's values at the step's ends. On success, makes
+	 * the root the current crossing and returns true.
+	 */
+	private boolean locate(final double g0, final double g1) {
+		final String mtdName = "locate";
+		double a = denseOutput.getPreviousTime();
+		double b = denseOutput.getCurrentTime();
+		final double tol = ROOT_TOLERANCE * (b - a);
+
+		// first guess by linear interpolation
+		double t = a - g0 * (b - a) / (g1 - g0);
+		double g = 0;
+		for (int iter = 0; iter < MAX_ITERATIONS; iter++) {
+			denseOutput.interpolate(t, tmpP);
+			g = section.value(tmpP);
+			if (g == 0)
+				break;
+
+			// shrink the bracket
+			if ((g < 0) == (g0 < 0))
+				a = t;
+			else
+				b = t;
+
+			// Newton step, dg/dt = grad(g).dp/dt; bisect if it leaves the bracket
+			section.gradient(tmpP, grad);
+			odeSystem.takeDerivatives(t, tmpP, pDot);
+			final double dg = grad[0] * pDot[0] + grad[1] * pDot[1] + grad[2] * pDot[2];
+			double tNext = t - g / dg;
+			if (!(tNext > a && tNext < b))
+				tNext = 0.5 * (a + b);
+
+			final boolean converged = Math.abs(tNext - t) <= tol || b - a <= tol;
+			t = tNext;
+			if (converged) {
+				denseOutput.interpolate(t, tmpP);
+				g = section.value(tmpP);
+				break;
+			}
+		}
+
+		if (!(Math.abs(g) <= ACCEPT_TOLERANCE * Math.max(Math.abs(g0), Math.abs(g1)))) {
+			if (logger.isLoggable(Level.FINE))
+				logger.logp(Level.FINE, clsName, mtdName, "discarding sign change at t="
+						+ t + ", g=" + g);
+			return false;
+		}
+
+		currT = t;
+		currP[0] = tmpP[0];
+		currP[1] = tmpP[1];
+		currP[2] = tmpP[2];
+		crossingCount++;
+		return true;
+	}
+}
@@ -0,0 +1,91 @@
+package lorenz.lab10;
+
+/**
+ * A surface of section for a system with three degrees of freedom, given as
+ * the zero set of a smooth function of the state. A trajectory crosses the
+ * surface wherever the function changes sign along it.
+ *
+ * @author jehanson
+ */
+public interface PoincareSection_3D {
+
+	/**
+	 * Returns the function's value at the given state: zero on the surface,
+	 * positive on one side of it and negative on the other.
+	 */
+	public double value(double[] p);
+
+	/**
+	 * Calculates the function's gradient at the given state.
+	 *
+	 * @param p
+	 *            The state. Must not be modified.
+	 * @param grad
+	 *            The array into which the gradient is placed. Must be a
+	 *            non-null array of length >= 3.
+	 */
+	public void gradient(double[] p, double[] grad);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The plane n.p = c. The function's value is n.p - c, so it increases in
+	 * the direction of n.
+	 */
+	public static class Plane implements PoincareSection_3D {
+
+		private final double nx;
+		private final double ny;
+		private final double nz;
+		private final double c;
+
+		public Plane(double nx, double ny, double nz, double c) {
+			if (nx == 0 && ny == 0 && nz == 0)
+				throw new IllegalArgumentException("normal cannot be zero");
+			this.nx = nx;
+			this.ny = ny;
+			this.nz = nz;
+			this.c = c;
+		}
+
+		/**
+		 * Returns the plane x = c.
+		 */
+		public static Plane x(double c) {
+			return new Plane(1, 0, 0, c);
+		}
+
+		/**
+		 * Returns the plane y = c.
+		 */
+		public static Plane y(double c) {
+			return new Plane(0, 1, 0, c);
+		}
+
+		/**
+		 * Returns the plane z = c.
+		 */
+		public static Plane z(double c) {
+			return new Plane(0, 0, 1, c);
+		}
+
+		@Override
+		public double value(double[] p) {
+			return nx * p[0] + ny * p[1] + nz * p[2] - c;
+		}
+
+		@Override
+		public void gradient(double[] p, double[] grad) {
+			grad[0] = nx;
+			grad[1] = ny;
+			grad[2] = nz;
+		}
+
+		@Override
+		public String toString() {
+			return "{n=" + DataPoint.makeTupleString(nx, ny, nz) + ", c=" + c + "}";
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package lorenz.lab10;
+
+/**
+ * The most recent points of a trajectory, up to a fixed capacity, kept in a
+ * ring buffer of parallel arrays of times and coordinates. Adding a point
+ * takes constant time and allocates nothing; when the buffer is full it
+ * replaces the oldest point. A point costs 32 bytes, against a hundred or so
+ * for a list of {@link DataSourceEvent}s, so a history of millions of points
+ * is practical.
+ * <p>
+ * Points are indexed from 0, the oldest, to size() - 1, the newest. For bulk
+ * reads the backing arrays are available too: the points occupy at most two
+ * runs of them, from {@link #getStart()} to the end of the arrays and then
+ * from 0 on.
+ * <p>
+ * Each point added since the last clear has a sequence number, counting from
+ * 0; the point at index i has sequence number getAddedCount() - size() + i.
+ * This lets a reader keep track of which points it has seen, e.g. to draw
+ * only the new ones.
+ * <p>
+ * Not threadsafe.
+ *
+ * @author jehanson
+ */
+public class PointHistory {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private double[] ts;
+	private double[] xs;
+	private double[] ys;
+	private double[] zs;
+
+	// array index of the oldest point
+	private int start;
+	private int size;
+	private long addedCount;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public PointHistory(int capacity) {
+		super();
+		if (!(capacity > 0))
+			throw new IllegalArgumentException("Bad value capacity=" + capacity
+					+ " -- must be > 0");
+		allocate(capacity);
+		this.start = 0;
+		this.size = 0;
+		this.addedCount = 0;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public int getCapacity() {
+		return ts.length;
+	}
+
+	/**
+	 * Changes the capacity, keeping as many of the newest points as fit.
+	 */
+	public void setCapacity(int capacity) {
+		if (!(capacity > 0))
+			throw new IllegalArgumentException("Bad value capacity=" + capacity
+					+ " -- must be > 0");
+		if (capacity == ts.length)
+			return;
+		final double[] oldTs = ts;
+		final double[] oldXs = xs;
+		final double[] oldYs = ys;
+		final double[] oldZs = zs;
+		final int oldStart = start;
+		final int n = Math.min(size, capacity);
+		final int skip = size - n;
+		allocate(capacity);
+		for (int i = 0; i < n; i++) {
+			final int k = (oldStart + skip + i) % oldTs.length;
+			ts[i] = oldTs[k];
+			xs[i] = oldXs[k];
+			ys[i] = oldYs[k];
+			zs[i] = oldZs[k];
+		}
+		start = 0;
+		size = n;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isFull() {
+		return size == ts.length;
+	}
+
+	/**
+	 * Removes all the points, and restarts the sequence numbers.
+	 */
+	public void clear() {
+		start = 0;
+		size = 0;
+		addedCount = 0;
+	}
+
+	/**
+	 * Returns the number of points added since the last clear, including
+	 * those since replaced.
+	 */
+	public long getAddedCount() {
+		return addedCount;
+	}
+
+	/**
+	 * Adds a point as the newest, replacing the oldest if the history is
+	 * full.
+	 */
+	public void add(double t, double x, double y, double z) {
+		final int capacity = ts.length;
+		int k;
+		if (size < capacity) {
+			k = start + size;
+			if (k >= capacity)
+				k -= capacity;
+			size++;
+		}
+		else {
+			k = start;
+			if (++start == capacity)
+				start = 0;
+		}
+		ts[k] = t;
+		xs[k] = x;
+		ys[k] = y;
+		zs[k] = z;
+		addedCount++;
+	}
+
+	public double getTime(int i) {
+		return ts[index(i)];
+	}
+
+	public double getX(int i) {
+		return xs[index(i)];
+	}
+
+	public double getY(int i) {
+		return ys[index(i)];
+	}
+
+	public double getZ(int i) {
+		return zs[index(i)];
+	}
+
+	/**
+	 * Returns the index in the backing arrays of the oldest point.
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Returns the backing array of times. See the class comment for where
+	 * the points are in it. Not to be modified.
+	 */
+	public double[] getTimeArray() {
+		return ts;
+	}
+
+	public double[] getXArray() {
+		return xs;
+	}
+
+	public double[] getYArray() {
+		return ys;
+	}
+
+	public double[] getZArray() {
+		return zs;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private void allocate(int capacity) {
+		ts = new double[capacity];
+		xs = new double[capacity];
+		ys = new double[capacity];
+		zs = new double[capacity];
+	}
+
+	private int index(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("Bad value i=" + i
+					+ " -- must be >= 0 and < " + size);
+		final int k = start + i;
+		return (k >= ts.length) ? k - ts.length : k;
+	}
+}
@@ -0,0 +1,115 @@
+package lorenz.lab10;
+
+/**
+ * Feeds three chosen coordinates of an N-dimensional integration into the
+ * DataPoint-based pipeline. Stepping this data source steps the wrapped
+ * integrator, which should not be stepped by anything else.
+ *
+ * @author jehanson
+ */
+public class ProjectionDataSource extends DataSource {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private final ODEIntegrator_ND integrator;
+	private final int ix;
+	private final int iy;
+	private final int iz;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param name
+	 * @param integrator
+	 *            the integrator to be stepped
+	 * @param ix
+	 *            index of the coordinate to use as the DataPoint's x
+	 * @param iy
+	 *            index of the coordinate to use as the DataPoint's y
+	 * @param iz
+	 *            index of the coordinate to use as the DataPoint's z
+	 */
+	public ProjectionDataSource(String name, ODEIntegrator_ND integrator, int ix, int iy,
+			int iz) {
+		super(name);
+		if (integrator == null)
+			throw new IllegalArgumentException("integrator cannot be null");
+		final int dim = integrator.getDimension();
+		if (ix < 0 || ix >= dim || iy < 0 || iy >= dim || iz < 0 || iz >= dim)
+			throw new IllegalArgumentException("coordinate indices must be in [0, " + dim
+					+ ")");
+		this.integrator = integrator;
+		this.ix = ix;
+		this.iy = iy;
+		this.iz = iz;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public ODEIntegrator_ND getIntegrator() {
+		return integrator;
+	}
+
+	/**
+	 * Returns labels for the three projected coordinates.
+	 */
+	public String[] getCoordinateLabels() {
+		String[] labels = integrator.getODESystem().getCoordinateLabels();
+		return new String[] { labels[ix], labels[iy], labels[iz] };
+	}
+
+	@Override
+	public DataBox getDataBoundsHint() {
+		ODESystem_ND sys = integrator.getODESystem();
+		return new DataBox(new DataPoint(sys.getCoordinateMinHint(ix),
+				sys.getCoordinateMinHint(iy), sys.getCoordinateMinHint(iz)), new DataPoint(
+				sys.getCoordinateMaxHint(ix), sys.getCoordinateMaxHint(iy),
+				sys.getCoordinateMaxHint(iz)));
+	}
+
+	@Override
+	public DataPoint getCurrentPoint() {
+		final double[] p = integrator.getCurrentState();
+		return new DataPoint(p[ix], p[iy], p[iz]);
+	}
+
+	@Override
+	public void copyCurrentState(double[] dst) {
+		final double[] p = integrator.getCurrentState();
+		dst[0] = p[ix];
+		dst[1] = p[iy];
+		dst[2] = p[iz];
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return integrator.getCurrentTime();
+	}
+
+	@Override
+	public double getTimeStep() {
+		return integrator.getTimeStep();
+	}
+
+	@Override
+	public void setTimeStep(double t) {
+		integrator.setTimeStep(t);
+	}
+
+	@Override
+	protected void doReset() {
+		integrator.reset();
+	}
+
+	@Override
+	protected void doStep() {
+		integrator.step();
+	}
+
+}
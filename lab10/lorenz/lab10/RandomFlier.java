@@ -1,14 +1,19 @@
 package lorenz.lab10;
 
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Particle pushed around a box by random velocity pulses. As with
+ * {@link RandomWalker}, a reset restarts the random number stream too.
+ * 
  * @author jehanson
  * 
  */
-public class RandomFlier extends DataSource {
+public class RandomFlier extends DataSource implements Checkpointable {
 
 	private static final String clsName = RandomFlier.class.getName();
 	private static final Logger logger = Logger.getLogger(clsName);
@@ -24,7 +29,9 @@ public class RandomFlier extends DataSource {
 	
 	private DataPoint initialState;
 	private DataPoint initialVelocity;
-	private final Random rng;
+	// the stream as it was at creation, and the stream in use
+	private final RandomSource initialRng;
+	private RandomSource rng;
 	private DataBox bounds;
 
 	private double pulseSize;
@@ -56,6 +63,17 @@ public class RandomFlier extends DataSource {
 	}
 
 	public RandomFlier(String name, DataPoint initialState) {
+		this(name, initialState, new Xoshiro256());
+	}
+
+	/**
+	 * @param name
+	 * @param initialState
+	 * @param rng
+	 *            the stream of random numbers to use. The flier takes it over:
+	 *            nothing else should draw from it.
+	 */
+	public RandomFlier(String name, DataPoint initialState, RandomSource rng) {
 		super(name);
 
 		if (initialState == null)
@@ -64,7 +82,10 @@ public class RandomFlier extends DataSource {
 		this.initialState = initialState;
 		this.initialVelocity = DEFAULT_INITIAL_VELOCITY;
 		this.bounds = new DataBox(initialState, 2.0);
-		this.rng = new Random();
+		if (rng == null)
+			throw new IllegalArgumentException("rng cannot be null");
+		this.initialRng = rng.copy();
+		this.rng = rng;
 		this.pulseSize = DEFAULT_PULSE_SIZE;
 		this.vMax = DEFAULT_VMAX;
 		this.timeStep = DEFAULT_TIME_STEP;
@@ -119,6 +140,13 @@ public class RandomFlier extends DataSource {
 		return new DataPoint(currentX, currentY, currentZ);
 	}
 
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currentX;
+		p[1] = currentY;
+		p[2] = currentZ;
+	}
+
 	@Override
 	public double getCurrentTime() {
 		return currentT;
@@ -163,8 +191,128 @@ public class RandomFlier extends DataSource {
 		}
 	}
 
+	/**
+	 * Same as the inherited version, but keeps the flier's state in locals
+	 * between emitted points. Changes to the pulse size, maximum speed or time
+	 * step take effect on the next call.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * timeStep;
+		final double h = timeStep;
+		final double a = pulseSize;
+		final double vm = vMax;
+		final double xMin = bounds.getXMin(), xMax = bounds.getXMax();
+		final double yMin = bounds.getYMin(), yMax = bounds.getYMax();
+		final double zMin = bounds.getZMin(), zMax = bounds.getZMax();
+		RandomSource r = rng;
+		double x = currentX, y = currentY, z = currentZ, tt = currentT;
+		double vx = currentVX, vy = currentVY, vz = currentVZ;
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (tt < stopTime) {
+			vx += a * (2 * r.nextDouble() - 1);
+			if (Math.abs(vx) > vm)
+				vx = Math.signum(vx) * vm;
+			vy += a * (2 * r.nextDouble() - 1);
+			if (Math.abs(vy) > vm)
+				vy = Math.signum(vy) * vm;
+			vz += a * (2 * r.nextDouble() - 1);
+			if (Math.abs(vz) > vm)
+				vz = Math.signum(vz) * vm;
+
+			x += vx * h;
+			y += vy * h;
+			z += vz * h;
+			tt += h;
+
+			// same bouncing as doStep
+			if (x < xMin || x > xMax) {
+				vx = -vx;
+				x += 2 * (vx * h);
+			}
+			if (y < yMin || y > yMax) {
+				vy = -vy;
+				y += 2 * (vy * h);
+			}
+			if (z < zMin || z > zMax) {
+				vz = -vz;
+				z += 2 * (vz * h);
+			}
+
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				currentX = x;
+				currentY = y;
+				currentZ = z;
+				currentT = tt;
+				currentVX = vx;
+				currentVY = vy;
+				currentVZ = vz;
+				fireDataPointGenerated();
+				// a listener may have reset us
+				r = rng;
+				x = currentX;
+				y = currentY;
+				z = currentZ;
+				tt = currentT;
+				vx = currentVX;
+				vy = currentVY;
+				vz = currentVZ;
+			}
+		}
+		currentX = x;
+		currentY = y;
+		currentZ = z;
+		currentT = tt;
+		currentVX = vx;
+		currentVY = vy;
+		currentVZ = vz;
+		setEmitPhase(k);
+		return n;
+	}
+
+	/**
+	 * Writes the current time, position and velocity, the pulse size, maximum
+	 * speed and time step, and the state of the random number stream.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeDouble(currentT);
+		out.writeDouble(currentX);
+		out.writeDouble(currentY);
+		out.writeDouble(currentZ);
+		out.writeDouble(currentVX);
+		out.writeDouble(currentVY);
+		out.writeDouble(currentVZ);
+		out.writeDouble(pulseSize);
+		out.writeDouble(vMax);
+		out.writeDouble(timeStep);
+		rng.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		currentT = in.readDouble();
+		currentX = in.readDouble();
+		currentY = in.readDouble();
+		currentZ = in.readDouble();
+		currentVX = in.readDouble();
+		currentVY = in.readDouble();
+		currentVZ = in.readDouble();
+		setPulseSize(in.readDouble());
+		setVMax(in.readDouble());
+		setTimeStep(in.readDouble());
+		rng.readState(in);
+	}
+
 	@Override
 	protected final void doReset() {
+		rng = initialRng.copy();
 		currentVX = initialVelocity.getX();
 		currentVY = initialVelocity.getY();
 		currentVZ = initialVelocity.getZ();
@@ -0,0 +1,117 @@
+package lorenz.lab10;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Two random fliers, seeded so that every run is the same.
+ * 
+ * @author jehanson
+ */
+public class RandomFlierModel implements ScenarioModel {
+
+	private static final String clsName = RandomFlierModel.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ================================
+	// Variables
+	// ================================
+
+	private static final long SEED = 1963L;
+
+	private RandomFlier ds1;
+	private RandomFlier ds2;
+
+	// ================================
+	// Creation
+	// ================================
+
+	public RandomFlierModel() {
+		super();
+		ds1 = null;
+		ds2 = null;
+	}
+
+	// ================================
+	// Operation
+	// ================================
+
+	public double getPulseSize() {
+		return (ds1 == null) ? 0 : ds1.getPulseSize();
+	}
+
+	public void setPulseSize(double x) {
+		if (ds1 != null)
+			ds1.setPulseSize(x);
+		if (ds2 != null)
+			ds2.setPulseSize(x);
+	}
+
+	public double getVMax() {
+		return (ds1 == null) ? 0 : ds1.getVMax();
+	}
+
+	public void setVMax(double x) {
+		if (ds1 != null)
+			ds1.setVMax(x);
+		if (ds2 != null)
+			ds2.setVMax(x);
+	}
+
+	public double getTimeStep() {
+		return (ds1 == null) ? 0 : ds1.getTimeStep();
+	}
+
+	public void setTimeStep(double x) {
+		if (ds1 != null)
+			ds1.setTimeStep(x);
+		if (ds2 != null)
+			ds2.setTimeStep(x);
+	}
+
+	@Override
+	public DataBox getDataBounds() {
+		return (ds1 == null) ? new RandomFlier().getDataBoundsHint() : ds1
+				.getDataBoundsHint();
+	}
+
+	@Override
+	public List<DataSource> getSources() {
+		List<DataSource> list = new ArrayList<DataSource>(2);
+		if (ds1 != null)
+			list.add(ds1);
+		if (ds2 != null)
+			list.add(ds2);
+		return Collections.unmodifiableList(list);
+	}
+
+	@Override
+	public void setup(DataSourceContainer sources) {
+		final String mtdName = "setup";
+		if (logger.isLoggable(Level.FINE)) {
+			logger.logp(Level.FINE, clsName, mtdName, "enter");
+		}
+
+		// Seeded, so that every run is the same
+		RandomSource rng = new Xoshiro256(SEED);
+		ds1 = new RandomFlier(DataSource.getDefaultName(), DataPoint.ZERO, rng.split());
+		ds2 = new RandomFlier(DataSource.getDefaultName(), DataPoint.ZERO, rng.split());
+		sources.add(ds1);
+		sources.add(ds2);
+	}
+
+	@Override
+	public void teardown(DataSourceContainer sources) {
+		if (ds1 != null) {
+			sources.remove(ds1.getName());
+			ds1 = null;
+		}
+		if (ds2 != null) {
+			sources.remove(ds2.getName());
+			ds2 = null;
+		}
+	}
+}
@@ -24,8 +24,7 @@ public class RandomFlierScenario extends AbstractScenario {
 	// Variables
 	// ================================
 
-	private RandomFlier ds1;
-	private RandomFlier ds2;
+	private final RandomFlierModel model;
 	private Composite control;
 
 	// ================================
@@ -33,9 +32,12 @@ public class RandomFlierScenario extends AbstractScenario {
 	// ================================
 
 	public RandomFlierScenario() {
-		super();
-		ds1 = null;
-		ds2 = null;
+		this(new RandomFlierModel());
+	}
+
+	private RandomFlierScenario(RandomFlierModel model) {
+		super(model);
+		this.model = model;
 		control = null;
 	}
 
@@ -43,40 +45,6 @@ public class RandomFlierScenario extends AbstractScenario {
 	// Operation
 	// ================================
 
-	@Override
-	public void setup(DataSourceContainer sources, Viewer viewer) {
-		final String mtdName = "setup";
-		if (logger.isLoggable(Level.FINE)) {
-			logger.logp(Level.FINE, clsName, mtdName, "enter");
-		}
-
-		ds1 = new RandomFlier();
-		ds2 = new RandomFlier();
-
-		sources.add(ds1);
-		sources.add(ds2);
-
-		viewer.setDataBounds(ds1.getDataBoundsHint());
-		viewer.addTimeseries(ds1);
-		viewer.addTimeseries(ds2);
-	}
-
-	@Override
-	public void teardown(DataSourceContainer sources, Viewer viewer) {
-		if (ds1 != null) {
-			String dsName = ds1.getName();
-			sources.remove(dsName);
-			viewer.removeTimeseries(dsName);
-			ds1 = null;
-		}
-		if (ds2 != null) {
-			String dsName = ds2.getName();
-			sources.remove(dsName);
-			viewer.removeTimeseries(dsName);
-			ds2 = null;
-		}
-	}
-
 	@Override
 	public Control buildControls(Composite parent) {
 		control = new Composite(parent, SWT.NONE);
@@ -88,9 +56,9 @@ public class RandomFlierScenario extends AbstractScenario {
 		sheetControl.setLayoutData(new GridData(SWT.END, SWT.FILL, true, false, 2, 1));
 
 		final DoubleValidator posDouble = DoubleValidator.greaterThan(0.);
-		sheet.addProperty("pulseSize", String.valueOf(ds1.getPulseSize()), posDouble);
-		sheet.addProperty("timeStep", String.valueOf(ds1.getTimeStep()), posDouble);
-		sheet.addProperty("vMax", String.valueOf(ds1.getVMax()), posDouble);
+		sheet.addProperty("pulseSize", String.valueOf(model.getPulseSize()), posDouble);
+		sheet.addProperty("timeStep", String.valueOf(model.getTimeStep()), posDouble);
+		sheet.addProperty("vMax", String.valueOf(model.getVMax()), posDouble);
 		sheet.addPropertyChangeListener(new PropertyChangeListener() {
 			@Override
 			public void propertyChanged(Object source, String key, String value) {
@@ -102,19 +70,16 @@ public class RandomFlierScenario extends AbstractScenario {
 				if (key.equals("pulseSize")) {
 					// should be safe b/c of validator
 					double x = Double.parseDouble(value);
-					ds1.setPulseSize(x);
-					ds2.setPulseSize(x);
+					model.setPulseSize(x);
 				}
 				else if (key.equals("timeStep")) {
 					// should be safe b/c of validator
 					double x = Double.parseDouble(value);
-					ds1.setTimeStep(x);
-					ds2.setTimeStep(x);
+					model.setTimeStep(x);
 				}
 				else if (key.equals("vMax")) {
 					double x = Double.parseDouble(value);
-					ds1.setVMax(x);
-					ds2.setVMax(x);
+					model.setVMax(x);
 				}
 			}
 		});
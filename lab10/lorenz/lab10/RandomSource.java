@@ -0,0 +1,52 @@
+package lorenz.lab10;
+
+/**
+ * Source of pseudorandom numbers for the random data sources.
+ * <p>
+ * Unlike java.util.Random, a RandomSource is not thread-safe, and does no
+ * synchronization. Each thread or data source should have a stream of its own,
+ * obtained by {@link #split()}. Given the same seed, a RandomSource and all the
+ * streams split from it produce the same numbers on every run. Its state can be
+ * checkpointed, so that a restored run goes on to produce the same numbers as
+ * the original.
+ * 
+ * @author jehanson
+ */
+public interface RandomSource extends Checkpointable {
+
+	/**
+	 * Returns the next pseudorandom long, uniformly distributed over all 2^64
+	 * values.
+	 */
+	public long nextLong();
+
+	/**
+	 * Returns the next pseudorandom double, uniformly distributed in [0, 1).
+	 */
+	public double nextDouble();
+
+	/**
+	 * Fills the array with pseudorandom doubles, uniformly distributed in [0,
+	 * 1). Equivalent to calling nextDouble once per element, in order.
+	 */
+	public void fillUniform(double[] a);
+
+	/**
+	 * Fills elements [from, to) of the array with pseudorandom doubles,
+	 * uniformly distributed in [0, 1).
+	 */
+	public void fillUniform(double[] a, int from, int to);
+
+	/**
+	 * Returns a new, independent stream, and advances this one. The new
+	 * stream's numbers are determined by this one's state, so a sequence of
+	 * splits from a seeded source is reproducible.
+	 */
+	public RandomSource split();
+
+	/**
+	 * Returns a new source in the same state as this one, which will therefore
+	 * produce the same numbers.
+	 */
+	public RandomSource copy();
+}
@@ -1,14 +1,20 @@
 package lorenz.lab10;
 
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
+ * Random walk in a box with reflective walls. A reset restarts the walker's
+ * random number stream as well as its position, so a walker created with a
+ * seeded {@link RandomSource} repeats the same walk after every reset.
+ * 
  * @author jehanson
  * 
  */
-public class RandomWalker extends DataSource {
+public class RandomWalker extends DataSource implements Checkpointable {
 
 	private static final String clsName = RandomWalker.class.getName();
 	private static final Logger logger = Logger.getLogger(clsName);
@@ -21,7 +27,9 @@ public class RandomWalker extends DataSource {
 	private static final double DEFAULT_TIME_STEP = 1E-3;
 
 	private DataPoint initialState;
-	private final Random rng;
+	// the stream as it was at creation, and the stream in use
+	private final RandomSource initialRng;
+	private RandomSource rng;
 	private DataBox bounds;
 
 	private double stepSize;
@@ -41,13 +49,26 @@ public class RandomWalker extends DataSource {
 	}
 
 	public RandomWalker(String name) {
+		this(name, new Xoshiro256());
+	}
+
+	/**
+	 * @param name
+	 * @param rng
+	 *            the stream of random numbers to use. The walker takes it
+	 *            over: nothing else should draw from it.
+	 */
+	public RandomWalker(String name, RandomSource rng) {
 		super(name);
 
 		this.initialState = DataPoint.ZERO;
 		this.bounds =
 				new DataBox(-1, 1, DataBox.BoundType.REFLECTIVE, -1, 1,
 						DataBox.BoundType.REFLECTIVE, -1, 1, DataBox.BoundType.REFLECTIVE);
-		this.rng = new Random();
+		if (rng == null)
+			throw new IllegalArgumentException("rng cannot be null");
+		this.initialRng = rng.copy();
+		this.rng = rng;
 		this.stepSize = DEFAULT_STEP_SIZE;
 		this.timeStep = DEFAULT_TIME_STEP;
 		this.currentX = initialState.getX();
@@ -95,6 +116,13 @@ public class RandomWalker extends DataSource {
 		return new DataPoint(currentX, currentY, currentZ);
 	}
 
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currentX;
+		p[1] = currentY;
+		p[2] = currentZ;
+	}
+
 	@Override
 	public double getCurrentTime() {
 		return currentT;
@@ -111,12 +139,89 @@ public class RandomWalker extends DataSource {
 		currentT += timeStep;
 
 		currentX = bounds.applyXBounds(currentX);
-		currentY = bounds.applyXBounds(currentY);
-		currentZ = bounds.applyXBounds(currentZ);
+		currentY = bounds.applyYBounds(currentY);
+		currentZ = bounds.applyZBounds(currentZ);
+	}
+
+	/**
+	 * Same as the inherited version, but keeps the walker's state in locals
+	 * between emitted points. Changes to the step sizes take effect on the
+	 * next call.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * timeStep;
+		final double h = timeStep;
+		final double s = stepSize;
+		RandomSource r = rng;
+		final DataBox b = bounds;
+		double x = currentX;
+		double y = currentY;
+		double z = currentZ;
+		double tt = currentT;
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (tt < stopTime) {
+			x = b.applyXBounds(x + s * (2 * r.nextDouble() - 1));
+			y = b.applyYBounds(y + s * (2 * r.nextDouble() - 1));
+			z = b.applyZBounds(z + s * (2 * r.nextDouble() - 1));
+			tt += h;
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				currentX = x;
+				currentY = y;
+				currentZ = z;
+				currentT = tt;
+				fireDataPointGenerated();
+				// a listener may have reset us
+				r = rng;
+				x = currentX;
+				y = currentY;
+				z = currentZ;
+				tt = currentT;
+			}
+		}
+		currentX = x;
+		currentY = y;
+		currentZ = z;
+		currentT = tt;
+		setEmitPhase(k);
+		return n;
+	}
+
+	/**
+	 * Writes the current time and position, the step size and time step, and
+	 * the state of the random number stream.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeDouble(currentT);
+		out.writeDouble(currentX);
+		out.writeDouble(currentY);
+		out.writeDouble(currentZ);
+		out.writeDouble(stepSize);
+		out.writeDouble(timeStep);
+		rng.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		currentT = in.readDouble();
+		currentX = in.readDouble();
+		currentY = in.readDouble();
+		currentZ = in.readDouble();
+		setStepSize(in.readDouble());
+		setTimeStep(in.readDouble());
+		rng.readState(in);
 	}
 
 	@Override
 	protected void doReset() {
+		rng = initialRng.copy();
 		currentX = initialState.getX();
 		currentY = initialState.getY();
 		currentZ = initialState.getZ();
@@ -22,8 +22,7 @@ public class RandomWalkerScenario extends AbstractScenario {
 	// Variables
 	// ================================
 
-	private RandomWalker ds1;
-	private RandomWalker ds2;
+	private final RandomWalkerModel model;
 	private Composite control;
 
 	// ================================
@@ -31,9 +30,12 @@ public class RandomWalkerScenario extends AbstractScenario {
 	// ================================
 
 	public RandomWalkerScenario() {
-		super();
-		ds1 = null;
-		ds2 = null;
+		this(new RandomWalkerModel());
+	}
+
+	private RandomWalkerScenario(RandomWalkerModel model) {
+		super(model);
+		this.model = model;
 		control = null;
 	}
 
@@ -41,40 +43,6 @@ public class RandomWalkerScenario extends AbstractScenario {
 	// Operation
 	// ================================
 
-	@Override
-	public void setup(DataSourceContainer sources, Viewer viewer) {
-		final String mtdName = "setup";
-		if (logger.isLoggable(Level.FINE)) {
-			logger.logp(Level.FINE, clsName, mtdName, "enter");
-		}
-
-		ds1 = new RandomWalker();
-		ds2 = new RandomWalker();
-		
-		sources.add(ds1);
-		sources.add(ds2);
-
-		viewer.setDataBounds(ds1.getDataBoundsHint());
-		viewer.addTimeseries(ds1);
-		viewer.addTimeseries(ds2);
-	}
-
-	@Override
-	public void teardown(DataSourceContainer sources, Viewer viewer) {
-		if (ds1 != null) {
-			String dsName = ds1.getName();
-			sources.remove(dsName);
-			viewer.removeTimeseries(dsName);
-			ds1 = null;
-		}
-		if (ds2 != null) {
-			String dsName = ds2.getName();
-			sources.remove(dsName);
-			viewer.removeTimeseries(dsName);
-			ds2 = null;
-		}
-	}
-
 	@Override
 	public Control buildControls(Composite parent) {
 		control = new Composite(parent, SWT.NONE);
@@ -86,8 +54,8 @@ public class RandomWalkerScenario extends AbstractScenario {
 		sheetControl.setLayoutData(new GridData(SWT.END, SWT.FILL, true, false, 2, 1));
 		
 		final PropertySheet.DoubleValidator posDouble = PropertySheet.DoubleValidator.greaterThan(0.);
-		sheet.addProperty("stepSize", String.valueOf(ds1.getStepSize()), posDouble);
-		sheet.addProperty("timeStep", String.valueOf(ds1.getTimeStep()), posDouble);
+		sheet.addProperty("stepSize", String.valueOf(model.getStepSize()), posDouble);
+		sheet.addProperty("timeStep", String.valueOf(model.getTimeStep()), posDouble);
 		sheet.addPropertyChangeListener(new PropertyChangeListener() {
 			@Override
 			public void propertyChanged(Object source, String key, String value) {
@@ -99,14 +67,12 @@ public class RandomWalkerScenario extends AbstractScenario {
 				if (key.equals("stepSize")) {
 					// should be safe b/c of validator
 					double x = Double.parseDouble(value);
-					ds1.setStepSize(x);
-					ds2.setStepSize(x);
+					model.setStepSize(x);
 				}
 				else if (key.equals("timeStep")) {
 					// should be safe b/c of validator
 					double x = Double.parseDouble(value);
-					ds1.setTimeStep(x);
-					ds2.setTimeStep(x);
+					model.setTimeStep(x);
 				}
 			}
 		});
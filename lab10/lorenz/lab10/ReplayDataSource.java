@@ -0,0 +1,427 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Plays back a trajectory recorded by a {@link TrajectoryRecorder}, reading it
+ * a chunk at a time from the memory-mapped file. Opening a recording reads
+ * only its header and chunk index; after that, playback is sequential reads
+ * from the page cache.
+ * <p>
+ * Each step advances the source's playback clock by its time step, and the
+ * position in the recording by speed times that. With speed 1 and the
+ * recording's own time step, each step plays back one recorded point; with
+ * other settings the current point is interpolated linearly between the
+ * recorded points on either side of the position in the recording, or, if
+ * interpolation is off, is the last recorded point at or before it. The
+ * source's time, and the timestamp of its events, is the playback clock.
+ * <p>
+ * Where the recorded source was reset, the recording starts a new segment;
+ * playback jumps from the end of one segment to the start of the next, and
+ * from the end of the last back to the start of the first if looping.
+ * Listeners are told about such jumps, and about seeks, as if the source had
+ * been reset.
+ *
+ * @author jehanson
+ */
+public class ReplayDataSource extends DataSource implements Checkpointable {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.01;
+
+	private final TrajectoryReader reader;
+	private final DataBox dataBounds;
+	private double timeStep;
+	private double speed;
+	private boolean looping;
+	private boolean interpolating;
+
+	// playback clock
+	private double playT;
+
+	// the chunks of the current segment are [segmentStart, segmentEnd)
+	private int segmentStart;
+	private int segmentEnd;
+	private TrajectoryReader.Chunk chunk;
+	private int chunkIndex;
+	// index in chunk of the first recorded point after recT
+	private int pointIndex;
+
+	// position in the recording
+	private double recT;
+	// the last recorded point at or before recT
+	private double prevT;
+	private final double[] prevP = new double[3];
+	private final double[] currP = new double[3];
+	private boolean atSegmentEnd;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * Opens a recording, and names the source after the recorded one.
+	 */
+	public ReplayDataSource(File file) throws IOException {
+		this(new TrajectoryReader(file));
+	}
+
+	public ReplayDataSource(TrajectoryReader reader) throws IOException {
+		this(reader.getSourceName(), reader);
+	}
+
+	/**
+	 * @param name
+	 * @param reader
+	 *            the recording to be played back. Closed by {@link #close()}.
+	 */
+	public ReplayDataSource(String name, TrajectoryReader reader) throws IOException {
+		super(name);
+		if (reader == null)
+			throw new IllegalArgumentException("reader cannot be null");
+		if (reader.getChunkCount() == 0)
+			throw new IOException(reader.getFile() + " has no points");
+		this.reader = reader;
+		this.dataBounds = reader.getDataBounds();
+		this.timeStep =
+				(reader.getTimeStep() > 0) ? reader.getTimeStep() : TIME_STEP_DEFAULT;
+		this.speed = 1.0;
+		this.looping = false;
+		this.interpolating = true;
+		this.playT = 0;
+		startSegment(0);
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public TrajectoryReader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Returns the ratio of elapsed time in the recording to elapsed playback
+	 * time.
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(double speed) {
+		if (!(speed > 0))
+			throw new IllegalArgumentException("Bad value speed=" + speed
+					+ " -- must be > 0");
+		this.speed = speed;
+	}
+
+	/**
+	 * Returns true if playback goes back to the start after the end of the
+	 * recording. If not, the source stays at the recording's last point.
+	 */
+	public boolean isLooping() {
+		return looping;
+	}
+
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	/**
+	 * Returns true if points between recorded ones are interpolated. Turn this
+	 * off for recordings of sparse events, such as the crossings produced by
+	 * a {@link PoincareDataSource}.
+	 */
+	public boolean isInterpolating() {
+		return interpolating;
+	}
+
+	public void setInterpolating(boolean interpolating) {
+		this.interpolating = interpolating;
+	}
+
+	/**
+	 * Returns true if playback has reached the end of the recording and isn't
+	 * looping.
+	 */
+	public boolean isFinished() {
+		return atSegmentEnd && segmentEnd == reader.getChunkCount() && !looping;
+	}
+
+	/**
+	 * Returns the position in the recording, in the recorded source's time.
+	 */
+	public double getRecordedTime() {
+		return recT;
+	}
+
+	/**
+	 * Moves playback to the given time in the current segment of the
+	 * recording, or to the segment's start or end if the time is outside it.
+	 * Uses the chunk index, so only the chunk containing the time is read.
+	 * Doesn't change the playback clock.
+	 */
+	public void seek(double t) {
+		// the last chunk in the segment that starts at or before t
+		int lo = segmentStart;
+		int hi = segmentEnd - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if (reader.getChunkFirstTime(mid) <= t)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		chunkIndex = lo;
+		chunk = readChunk(chunkIndex);
+
+		// the last point in the chunk at or before t, or the first point
+		int i = 0;
+		int j = chunk.size() - 1;
+		while (i < j) {
+			final int mid = (i + j + 1) >>> 1;
+			if (chunk.getTime(mid) <= t)
+				i = mid;
+			else
+				j = mid - 1;
+		}
+		loadPrevious(i);
+		pointIndex = i + 1;
+		recT = Math.max(t, prevT);
+		updateCurrentPoint();
+		fireDataSourceReset();
+	}
+
+	@Override
+	public DataBox getDataBoundsHint() {
+		return new DataBox(dataBounds);
+	}
+
+	@Override
+	public DataPoint getCurrentPoint() {
+		return new DataPoint(currP[0], currP[1], currP[2]);
+	}
+
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currP[0];
+		p[1] = currP[1];
+		p[2] = currP[2];
+	}
+
+	/**
+	 * Returns the playback clock.
+	 */
+	@Override
+	public double getCurrentTime() {
+		return playT;
+	}
+
+	/**
+	 * Returns the playback time per step. Defaults to the recorded source's
+	 * time step.
+	 */
+	@Override
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		this.timeStep = timeStep;
+	}
+
+	/**
+	 * Writes the playback settings and clock, and the position in the
+	 * recording. The recording itself isn't written: the state must be read
+	 * back into a source playing the same file.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeLong(reader.getPointCount());
+		out.writeDouble(timeStep);
+		out.writeDouble(speed);
+		out.writeBoolean(looping);
+		out.writeBoolean(interpolating);
+		out.writeDouble(playT);
+		out.writeInt(segmentStart);
+		out.writeInt(chunkIndex);
+		out.writeInt(pointIndex);
+		out.writeDouble(recT);
+		out.writeDouble(prevT);
+		Checkpoint.writeArray(out, prevP);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		if (in.readLong() != reader.getPointCount())
+			throw new IOException("State is for a different recording than "
+					+ reader.getFile());
+		setTimeStep(in.readDouble());
+		setSpeed(in.readDouble());
+		setLooping(in.readBoolean());
+		setInterpolating(in.readBoolean());
+		playT = in.readDouble();
+		final int first = in.readInt();
+		final int c = in.readInt();
+		final int i = in.readInt();
+		if (first < 0 || first >= reader.getChunkCount() || c < first
+				|| c >= reader.getChunkCount() || i < 0 || i > reader.getChunkSize(c))
+			throw new IOException("Bad position chunk=" + c + ", point=" + i + " in "
+					+ reader.getFile());
+		startSegment(first);
+		chunkIndex = c;
+		chunk = readChunk(c);
+		pointIndex = i;
+		recT = in.readDouble();
+		prevT = in.readDouble();
+		Checkpoint.readArray(in, prevP);
+		updateCurrentPoint();
+	}
+
+	/**
+	 * Closes the recording.
+	 */
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Restarts the playback clock, and playback from the start of the
+	 * recording.
+	 */
+	@Override
+	protected void doReset() {
+		playT = 0;
+		startSegment(0);
+	}
+
+	@Override
+	protected void doStep() {
+		playT += timeStep;
+		if (!atSegmentEnd) {
+			advance(speed * timeStep);
+			return;
+		}
+		if (segmentEnd < reader.getChunkCount())
+			startSegment(segmentEnd);
+		else if (looping)
+			startSegment(0);
+		else
+			return;
+		fireDataSourceReset();
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Moves playback to the first point of the segment starting with the
+	 * given chunk.
+	 */
+	private void startSegment(int first) {
+		final int nChunks = reader.getChunkCount();
+		segmentStart = first;
+		segmentEnd = first + 1;
+		while (segmentEnd < nChunks && !reader.isChunkAfterReset(segmentEnd))
+			segmentEnd++;
+		chunkIndex = first;
+		chunk = readChunk(first);
+		loadPrevious(0);
+		pointIndex = 1;
+		recT = prevT;
+		updateCurrentPoint();
+	}
+
+	/**
+	 * Moves the position in the recording forward by dt.
+	 */
+	private void advance(double dt) {
+		recT += dt;
+		while (hasNext() && chunk.getTime(pointIndex) <= recT) {
+			loadPrevious(pointIndex);
+			pointIndex++;
+		}
+		updateCurrentPoint();
+	}
+
+	/**
+	 * Makes sure pointIndex refers to a point in the current segment, reading
+	 * the next chunk if need be. Returns false at the end of the segment.
+	 */
+	private boolean hasNext() {
+		while (pointIndex >= chunk.size()) {
+			if (chunkIndex + 1 >= segmentEnd)
+				return false;
+			chunk = readChunk(++chunkIndex);
+			pointIndex = 0;
+		}
+		return true;
+	}
+
+	private void loadPrevious(int i) {
+		prevT = chunk.getTime(i);
+		prevP[0] = chunk.getX(i);
+		prevP[1] = chunk.getY(i);
+		prevP[2] = chunk.getZ(i);
+	}
+
+	private void updateCurrentPoint() {
+		atSegmentEnd = !hasNext();
+		if (atSegmentEnd)
+			recT = prevT;
+		if (atSegmentEnd || !interpolating || recT <= prevT) {
+			currP[0] = prevP[0];
+			currP[1] = prevP[1];
+			currP[2] = prevP[2];
+			return;
+		}
+		final double dx = chunk.getX(pointIndex) - prevP[0];
+		final double dy = chunk.getY(pointIndex) - prevP[1];
+		final double dz = chunk.getZ(pointIndex) - prevP[2];
+		if (isWrap(dx, dataBounds.getXBoundType(), dataBounds.getXMin(), dataBounds
+				.getXMax())
+				|| isWrap(dy, dataBounds.getYBoundType(), dataBounds.getYMin(), dataBounds
+						.getYMax())
+				|| isWrap(dz, dataBounds.getZBoundType(), dataBounds.getZMin(), dataBounds
+						.getZMax())) {
+			// don't interpolate across the wrap
+			currP[0] = prevP[0];
+			currP[1] = prevP[1];
+			currP[2] = prevP[2];
+			return;
+		}
+		final double f = (recT - prevT) / (chunk.getTime(pointIndex) - prevT);
+		currP[0] = prevP[0] + f * dx;
+		currP[1] = prevP[1] + f * dy;
+		currP[2] = prevP[2] + f * dz;
+	}
+
+	/**
+	 * Returns true if a change in a coordinate between recorded points must
+	 * have been a jump around periodic bounds.
+	 */
+	private static boolean isWrap(double d, DataBox.BoundType type, double min,
+			double max) {
+		return type == DataBox.BoundType.PERIODIC && Math.abs(d) > 0.5 * (max - min);
+	}
+
+	private TrajectoryReader.Chunk readChunk(int i) {
+		try {
+			return reader.readChunk(i);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read " + reader.getFile(), e);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays back the trajectory recordings (*.trj) in a directory, e.g. one
+ * written by <code>BatchRunner -record</code>, with a
+ * {@link ReplayDataSource} for each.
+ *
+ * @author jehanson
+ */
+public class ReplayModel implements ScenarioModel {
+
+	private static final String clsName = ReplayModel.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ================================
+	// Variables
+	// ================================
+
+	public static final String FILE_SUFFIX = ".trj";
+
+	private final File dir;
+	private final File[] files;
+	private final List<ReplayDataSource> replays;
+	private double speed;
+	private boolean looping;
+
+	// ================================
+	// Creation
+	// ================================
+
+	/**
+	 * @param dir
+	 *            a directory containing at least one recording
+	 */
+	public ReplayModel(File dir) {
+		super();
+		if (dir == null)
+			throw new IllegalArgumentException("dir cannot be null");
+		this.dir = dir;
+		this.files = listRecordings(dir);
+		if (files.length == 0)
+			throw new IllegalArgumentException("No recordings (*" + FILE_SUFFIX + ") in "
+					+ dir);
+		this.replays = new ArrayList<ReplayDataSource>();
+		this.speed = 1.0;
+		this.looping = true;
+	}
+
+	// ================================
+	// Operation
+	// ================================
+
+	/**
+	 * Returns the recordings in a directory, sorted by name. Empty if there are
+	 * none or the directory can't be read.
+	 */
+	public static File[] listRecordings(File dir) {
+		List<File> list = new ArrayList<File>();
+		File[] all = dir.listFiles();
+		if (all != null)
+			for (File f : all)
+				if (f.isFile() && f.getName().endsWith(FILE_SUFFIX))
+					list.add(f);
+		File[] result = list.toArray(new File[list.size()]);
+		Arrays.sort(result);
+		return result;
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	public void setSpeed(double speed) {
+		if (!(speed > 0))
+			throw new IllegalArgumentException("Bad value speed=" + speed
+					+ " -- must be > 0");
+		this.speed = speed;
+		for (ReplayDataSource r : replays)
+			r.setSpeed(speed);
+	}
+
+	public boolean isLooping() {
+		return looping;
+	}
+
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+		for (ReplayDataSource r : replays)
+			r.setLooping(looping);
+	}
+
+	/**
+	 * Moves every recording to the given recorded time.
+	 */
+	public void seek(double t) {
+		for (ReplayDataSource r : replays)
+			r.seek(t);
+	}
+
+	@Override
+	public DataBox getDataBounds() {
+		if (!replays.isEmpty())
+			return replays.get(0).getDataBoundsHint();
+		try {
+			TrajectoryReader reader = new TrajectoryReader(files[0]);
+			try {
+				return reader.getDataBounds();
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Cannot read " + files[0], e);
+		}
+	}
+
+	@Override
+	public List<DataSource> getSources() {
+		return Collections.<DataSource> unmodifiableList(replays);
+	}
+
+	/**
+	 * Opens the recordings.
+	 *
+	 * @throws IllegalStateException
+	 *             if a recording can't be opened
+	 */
+	@Override
+	public void setup(DataSourceContainer sources) {
+		final String mtdName = "setup";
+		if (logger.isLoggable(Level.FINE)) {
+			logger.logp(Level.FINE, clsName, mtdName, "enter");
+		}
+		for (File f : files) {
+			ReplayDataSource r;
+			try {
+				r = new ReplayDataSource(f);
+			}
+			catch (IOException e) {
+				teardown(sources);
+				throw new IllegalStateException("Cannot open recording " + f, e);
+			}
+			r.setSpeed(speed);
+			r.setLooping(looping);
+			if (r.getReader().getSourceType().equals(
+					PoincareDataSource.class.getSimpleName()))
+				r.setInterpolating(false);
+			replays.add(r);
+			sources.add(r);
+		}
+	}
+
+	/**
+	 * Closes the recordings.
+	 */
+	@Override
+	public void teardown(DataSourceContainer sources) {
+		final String mtdName = "teardown";
+		for (ReplayDataSource r : replays) {
+			sources.remove(r.getName());
+			try {
+				r.close();
+			}
+			catch (IOException e) {
+				if (logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "Ignoring problem closing "
+							+ r.getReader().getFile(), e);
+			}
+		}
+		replays.clear();
+	}
+}
@@ -0,0 +1,105 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * Plays back a directory of trajectory recordings. See {@link ReplayModel}.
+ * 
+ * @author jehanson
+ */
+public class ReplayScenario extends AbstractScenario {
+
+	private static final String clsName = ReplayScenario.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// ================================
+	// Variables
+	// ================================
+
+	private final ReplayModel model;
+	private Composite control;
+
+	// ================================
+	// Creation
+	// ================================
+
+	public ReplayScenario(File dir) {
+		this(new ReplayModel(dir));
+	}
+
+	private ReplayScenario(ReplayModel model) {
+		super(model);
+		this.model = model;
+		control = null;
+	}
+
+	// ================================
+	// Operation
+	// ================================
+
+	@Override
+	public Control buildControls(Composite parent) {
+		control = new Composite(parent, SWT.NONE);
+		control.setLayout(new GridLayout(2, false));
+
+		PropertySheet sheet = new PropertySheet();
+		sheet.setFieldWidthHint(PropertySheet.NUMERIC_FIELD_WIDTH_HINT);
+		Control sheetControl = sheet.buildControls(control);
+		sheetControl.setLayoutData(new GridData(SWT.END, SWT.FILL, true, false, 2, 1));
+
+		sheet.addProperty("speed", String.valueOf(model.getSpeed()),
+				PropertySheet.DoubleValidator.greaterThan(0.));
+		sheet.addProperty("seek", "0", PropertySheet.DoubleValidator.any());
+		sheet.addPropertyChangeListener(new PropertyChangeListener() {
+			@Override
+			public void propertyChanged(Object source, String key, String value) {
+				final String mtdName = "propertyChanged";
+				if (logger.isLoggable(Level.FINE)) {
+					String msg = key + "=" + value;
+					logger.logp(Level.FINE, clsName, mtdName, msg);
+				}
+				if (key.equals("speed")) {
+					// should be safe b/c of validator
+					model.setSpeed(Double.parseDouble(value));
+				}
+				else if (key.equals("seek")) {
+					// should be safe b/c of validator
+					model.seek(Double.parseDouble(value));
+				}
+			}
+		});
+
+		final Button loop = new Button(control, SWT.CHECK);
+		loop.setText("Loop");
+		loop.setSelection(model.isLooping());
+		loop.setLayoutData(new GridData(SWT.END, SWT.CENTER, false, false, 2, 1));
+		loop.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				model.setLooping(loop.getSelection());
+			}
+		});
+
+		return control;
+	}
+
+	@Override
+	public void dispose() {
+		if (control != null) {
+			control.dispose();
+			control = null;
+		}
+	}
+
+}
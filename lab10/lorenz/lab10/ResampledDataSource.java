@@ -0,0 +1,168 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Emits an integrator's trajectory at a fixed output interval, independent of
+ * the integrator's own step size. Each step of this data source steps the
+ * wrapped integrator as many times as needed to pass the next output time,
+ * then uses the integrator's dense output to find the state at exactly that
+ * time. The integrator can then take large, accurate steps while listeners
+ * such as the Viewer still get evenly spaced points -- and only as many as
+ * they need.
+ * <p>
+ * The wrapped integrator should not be stepped by anything else. Its
+ * listeners, if any, are notified once per integration step as usual.
+ *
+ * @author jehanson
+ */
+public class ResampledDataSource extends DataSource implements Checkpointable {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double OUTPUT_INTERVAL_DEFAULT = 0.01;
+
+	private final ODEIntegrator_3D integrator;
+	private final DenseOutput_3D denseOutput;
+	private double outputInterval;
+
+	// time of the last reset, and number of outputs since then. Output times
+	// are calculated as startT + count*outputInterval so that they don't
+	// accumulate roundoff.
+	private double startT;
+	private long count;
+	private double currT;
+	private final double[] currP = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param name
+	 * @param integrator
+	 *            the integrator to be stepped. Must implement
+	 *            {@link DenseOutput_3D}.
+	 */
+	public ResampledDataSource(String name, ODEIntegrator_3D integrator) {
+		super(name);
+		if (integrator == null)
+			throw new IllegalArgumentException("integrator cannot be null");
+		if (!(integrator instanceof DenseOutput_3D))
+			throw new IllegalArgumentException("integrator must implement "
+					+ DenseOutput_3D.class.getSimpleName());
+		this.integrator = integrator;
+		this.denseOutput = (DenseOutput_3D) integrator;
+		this.outputInterval = OUTPUT_INTERVAL_DEFAULT;
+		resetState();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public ODEIntegrator_3D getIntegrator() {
+		return integrator;
+	}
+
+	@Override
+	public DataBox getDataBoundsHint() {
+		return integrator.getDataBoundsHint();
+	}
+
+	@Override
+	public DataPoint getCurrentPoint() {
+		return new DataPoint(currP[0], currP[1], currP[2]);
+	}
+
+	@Override
+	public void copyCurrentState(double[] p) {
+		p[0] = currP[0];
+		p[1] = currP[1];
+		p[2] = currP[2];
+	}
+
+	@Override
+	public double getCurrentTime() {
+		return currT;
+	}
+
+	/**
+	 * Returns the output interval. The integrator's step size is set on the
+	 * integrator itself.
+	 */
+	@Override
+	public double getTimeStep() {
+		return outputInterval;
+	}
+
+	/**
+	 * Sets the output interval. Takes effect at the next output time.
+	 */
+	@Override
+	public void setTimeStep(double outputInterval) {
+		if (!(outputInterval > 0))
+			throw new IllegalArgumentException("Bad value outputInterval="
+					+ outputInterval + " -- must be > 0");
+		// restart the count from here, so that the next output time is
+		// currT + outputInterval
+		this.startT = currT;
+		this.count = 0;
+		this.outputInterval = outputInterval;
+	}
+
+	/**
+	 * Writes the integrator's state, then the output interval and the last
+	 * output.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		integrator.writeState(out);
+		out.writeDouble(outputInterval);
+		out.writeDouble(startT);
+		out.writeLong(count);
+		out.writeDouble(currT);
+		Checkpoint.writeArray(out, currP);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		integrator.readState(in);
+		setTimeStep(in.readDouble());
+		startT = in.readDouble();
+		count = in.readLong();
+		currT = in.readDouble();
+		Checkpoint.readArray(in, currP);
+	}
+
+	@Override
+	protected void doReset() {
+		integrator.reset();
+		resetState();
+	}
+
+	@Override
+	protected void doStep() {
+		final double nextT = startT + (count + 1) * outputInterval;
+		while (integrator.getCurrentTime() < nextT)
+			integrator.step();
+		denseOutput.interpolate(nextT, currP);
+		currT = nextT;
+		count++;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private void resetState() {
+		this.startT = integrator.getCurrentTime();
+		this.count = 0;
+		this.currT = startT;
+		integrator.copyCurrentState(currP);
+	}
+}
@@ -0,0 +1,545 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive-step integration using a linearly implicit Rosenbrock method,
+ * adapted from Hairer &amp; Wanner, <i>Solving Ordinary Differential Equations
+ * II</i>, 2nd Ed., Section IV.7, with the coefficient sets and formulation of
+ * Sandu et al., "Benchmarking stiff ODE solvers for atmospheric chemistry
+ * problems II: Rosenbrock solvers" (1997). Customized for systems with three
+ * degrees of freedom.
+ * <p>
+ * Each step evaluates the ODE system's Jacobian once and solves a few 3x3
+ * linear systems with it, but needs no Newton iteration. The methods are
+ * L-stable, so the step size is limited only by accuracy: stiff systems, such
+ * as the Lorenz system with large sigma, can be integrated with steps many
+ * times larger than an explicit method could take.
+ * <p>
+ * As in {@link DormandPrince45_3D}, each call to step() takes one accepted
+ * step, and the time step given to {@link #setTimeStep} is used as the size
+ * of the first trial step after a reset.
+ *
+ * @author jehanson
+ */
+public class RosenbrockIntegrator_3D extends ODEIntegrator_3D {
+
+	private static final String clsName = RosenbrockIntegrator_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The available coefficient sets. Stage i (from 0) is
+	 * 
+	 * <pre>
+	 * (I/(h*gamma[0]) - J) K[i] = f(t + alpha[i]*h, y + sum_j a[i,j]*K[j])
+	 *                             + sum_j (c[i,j]/h)*K[j] + h*gamma[i]*df/dt
+	 * </pre>
+	 * 
+	 * for j &lt; i; the solution is <code>y + sum_i m[i]*K[i]</code> and the
+	 * error estimate <code>sum_i e[i]*K[i]</code>. a and c are stored row by
+	 * row, lower triangle only. Where newF[i] is false, stage i reuses the
+	 * previous stage's derivative evaluation.
+	 */
+	public enum Method {
+
+		/**
+		 * 3 stages, order 3(2), two derivative evaluations per step.
+		 */
+		ROS3(3, new double[] { 1.0, 1.0, 0.0 }, //
+				new double[] { -1.0156171083877702091975600115545,
+						4.0759956452537699824805835358067,
+						9.2076794298330791242156818474003 }, //
+				new boolean[] { true, true, false }, //
+				new double[] { 1.0, 6.1697947043828245592553615689730,
+						-0.4277225654321857332623837380651 }, //
+				new double[] { 0.5, -2.9079558716805469821718236208017,
+						0.2235406989781156962736090927619 }, //
+				new double[] { 0.0, 0.43586652150845899941601945119356,
+						0.43586652150845899941601945119356 }, //
+				new double[] { 0.43586652150845899941601945119356,
+						0.24291996454816804366592249683314,
+						2.1851380027664058511513169485832 }),
+
+		/**
+		 * 4 stages, order 4(3), three derivative evaluations per step.
+		 */
+		ROS4(4, new double[] { 2.0, 1.867943637803922, 0.2344449711399156,
+				1.867943637803922, 0.2344449711399156, 0.0 }, //
+				new double[] { -7.137615036412310, 2.580708087951457, 0.6515950076447975,
+						-2.137148994382534, -0.3214669691237626, -0.6949742501781779 }, //
+				new boolean[] { true, true, true, false }, //
+				new double[] { 2.255570073418735, 0.2870493262186792, 0.4353179431840180,
+						1.093502252409163 }, //
+				new double[] { -0.2815431932141155, -0.07276199124938920,
+						-0.1082196201495311, -1.093502252409163 }, //
+				new double[] { 0.0, 1.145640000000000, 0.6552168638155900,
+						0.6552168638155900 }, //
+				new double[] { 0.5728200000000000, -1.769193891319233, 0.7592633437920482,
+						-0.1049021087100450 });
+
+		private final int order;
+		private final double[] a;
+		private final double[] c;
+		private final boolean[] newF;
+		private final double[] m;
+		private final double[] e;
+		private final double[] alpha;
+		private final double[] gamma;
+
+		private Method(int order, double[] a, double[] c, boolean[] newF, double[] m,
+				double[] e, double[] alpha, double[] gamma) {
+			this.order = order;
+			this.a = a;
+			this.c = c;
+			this.newF = newF;
+			this.m = m;
+			this.e = e;
+			this.alpha = alpha;
+			this.gamma = gamma;
+		}
+
+		public int getOrder() {
+			return order;
+		}
+
+		public int getStageCount() {
+			return m.length;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+	private static final double MAX_TIME_STEP_DEFAULT = 0.1;
+	private static final double ABS_TOLERANCE_DEFAULT = 1e-6;
+	private static final double REL_TOLERANCE_DEFAULT = 1e-6;
+
+	// step-size control
+	private static final double SAFETY = 0.9;
+	private static final double MIN_SCALE = 0.2;
+	private static final double MAX_SCALE = 6.0;
+
+	// relative step for the finite-difference time derivative
+	private static final double FD_DELTA = Math.sqrt(Math.ulp(1.0));
+
+	private final Method method;
+	private final double expon;
+
+	private double absTolerance;
+	private double relTolerance;
+	private double maxTimeStep;
+
+	// size of the next trial step
+	private double h;
+	// size of the last accepted step
+	private double lastTimeStep;
+	// true iff f0 holds the derivatives at the current state
+	private boolean f0Valid;
+	// h*|J| for the last accepted step; see getStiffnessEstimate
+	private double stiffnessEstimate;
+
+	private final double[] f0 = new double[3];
+	private final double[] f = new double[3];
+	private final double[] dfdt = new double[3];
+	private final double[] jac = new double[9];
+	private final double[] lu = new double[9];
+	private final int[] piv = new int[3];
+	private final double[][] k;
+	private final double[] tmpP = new double[3];
+	private final double[] nextP = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public RosenbrockIntegrator_3D(String name, ODESystem_3D odeSystem, Method method) {
+		this(name, odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint(), method);
+	}
+
+	public RosenbrockIntegrator_3D(String name, ODESystem_3D odeSystem,
+			DataPoint initialState, Method method) {
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		if (method == null)
+			throw new IllegalArgumentException("method cannot be null");
+		this.method = method;
+		this.expon = -1.0 / method.order;
+		this.k = new double[method.getStageCount()][3];
+		this.absTolerance = ABS_TOLERANCE_DEFAULT;
+		this.relTolerance = REL_TOLERANCE_DEFAULT;
+		this.maxTimeStep = MAX_TIME_STEP_DEFAULT;
+		this.h = TIME_STEP_DEFAULT;
+		this.lastTimeStep = 0;
+		this.f0Valid = false;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public Method getMethod() {
+		return method;
+	}
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Sets the size of the first trial step. Takes effect immediately and
+	 * after every reset.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		if (!(timeStep > 0))
+			throw new IllegalArgumentException("Bad value timeStep=" + timeStep
+					+ " -- must be > 0");
+		super.setTimeStep(timeStep);
+		this.h = Math.min(timeStep, maxTimeStep);
+	}
+
+	/**
+	 * Returns the size of the most recently accepted step, or 0 if no step has
+	 * been taken since the last reset.
+	 */
+	public double getLastTimeStep() {
+		return lastTimeStep;
+	}
+
+	/**
+	 * Returns h*|J| for the most recently accepted step, where h is the step
+	 * size and |J| the infinity norm of the Jacobian at the start of the step.
+	 * |J| bounds the Jacobian's dominant eigenvalue from above, so values
+	 * below about 3.3 mean an explicit method could have taken the same step
+	 * stably.
+	 */
+	public double getStiffnessEstimate() {
+		return stiffnessEstimate;
+	}
+
+	public double getMaxTimeStep() {
+		return maxTimeStep;
+	}
+
+	public void setMaxTimeStep(double maxTimeStep) {
+		if (!(maxTimeStep > 0))
+			throw new IllegalArgumentException("Bad value maxTimeStep=" + maxTimeStep
+					+ " -- must be > 0");
+		this.maxTimeStep = maxTimeStep;
+		if (h > maxTimeStep)
+			h = maxTimeStep;
+	}
+
+	public double getAbsTolerance() {
+		return absTolerance;
+	}
+
+	public void setAbsTolerance(double absTolerance) {
+		if (!(absTolerance >= 0))
+			throw new IllegalArgumentException("Bad value absTolerance=" + absTolerance
+					+ " -- must be >= 0");
+		this.absTolerance = absTolerance;
+	}
+
+	public double getRelTolerance() {
+		return relTolerance;
+	}
+
+	public void setRelTolerance(double relTolerance) {
+		if (!(relTolerance >= 0))
+			throw new IllegalArgumentException("Bad value relTolerance=" + relTolerance
+					+ " -- must be >= 0");
+		this.relTolerance = relTolerance;
+	}
+
+	@Override
+	protected void doReset() {
+		super.doReset();
+		this.h = Math.min(getTimeStep(), maxTimeStep);
+		this.lastTimeStep = 0;
+		this.f0Valid = false;
+		this.stiffnessEstimate = 0;
+	}
+
+	@Override
+	public void setCurrentState(double t, double[] p) {
+		super.setCurrentState(t, p);
+		this.f0Valid = false;
+	}
+
+	/**
+	 * Adds the step size controller's state, and the derivative carried over
+	 * from the last step.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeDouble(h);
+		out.writeDouble(lastTimeStep);
+		out.writeDouble(stiffnessEstimate);
+		out.writeBoolean(f0Valid);
+		Checkpoint.writeArray(out, f0);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		h = in.readDouble();
+		lastTimeStep = in.readDouble();
+		stiffnessEstimate = in.readDouble();
+		f0Valid = in.readBoolean();
+		Checkpoint.readArray(in, f0);
+	}
+
+	@Override
+	protected void doStep() {
+		final String mtdName = "doStep";
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "entering");
+
+		adaptiveStep(Double.POSITIVE_INFINITY);
+
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
+					+ DataPoint.makeTupleString(currP[0], currP[1], currP[2]) + " h="
+					+ lastTimeStep);
+	}
+
+	/**
+	 * Same as the inherited version, except that the step that would pass t
+	 * is cut short so that it ends exactly on t, as in
+	 * {@link DormandPrince45_3D}.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (currT < stopTime) {
+			adaptiveStep(t);
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				fireDataPointGenerated();
+			}
+		}
+		setEmitPhase(k);
+		return n;
+	}
+
+	/**
+	 * Takes one accepted step, ending no later than endTime. A step that would
+	 * end within 1% of its size short of endTime, or past it, is stretched or
+	 * cut short to end on it. (Package-private for use by
+	 * StiffnessSwitchingIntegrator_3D.)
+	 */
+	void adaptiveStep(double endTime) {
+		final String mtdName = "adaptiveStep";
+		if (!f0Valid) {
+			odeSystem.takeDerivatives(currT, currP, f0);
+			f0Valid = true;
+		}
+
+		// Jacobian and time derivative, shared by all trial steps
+		odeSystem.getJacobian(currT, currP, jac);
+		final double delta = FD_DELTA * Math.max(1e-5, Math.abs(currT));
+		odeSystem.takeDerivatives(currT + delta, currP, dfdt);
+		for (int i = 0; i < 3; i++)
+			dfdt[i] = (dfdt[i] - f0[i]) / delta;
+
+		double trial = h;
+		boolean landing = false;
+		if (currT + 1.01 * trial >= endTime) {
+			trial = endTime - currT;
+			landing = true;
+		}
+
+		while (true) {
+			final double err = trialStep(trial);
+			final double minStep = 1e-12 * Math.max(1.0, Math.abs(currT));
+
+			if (err <= 1.0 || trial <= minStep) {
+				if (err > 1.0 && logger.isLoggable(Level.WARNING))
+					logger.logp(Level.WARNING, clsName, mtdName, "step size underflow at t="
+							+ currT + "; accepting step with error ratio " + err);
+
+				stiffnessEstimate = trial * jacobianNorm();
+				currT = landing ? endTime : currT + trial;
+				lastTimeStep = trial;
+				for (int i = 0; i < 3; i++)
+					currP[i] = nextP[i];
+				applyBounds();
+				f0Valid = false;
+
+				double scale = (err == 0) ? MAX_SCALE : SAFETY * Math.pow(err, expon);
+				scale = Math.min(MAX_SCALE, Math.max(MIN_SCALE, scale));
+				final double next = Math.min(trial * scale, maxTimeStep);
+				// a step cut short says nothing against the size proposed before it
+				h = landing ? Math.max(next, h) : next;
+				break;
+			}
+
+			// reject: shrink and retry from the same state
+			double scale =
+					(err < Double.POSITIVE_INFINITY) ? Math.max(MIN_SCALE,
+							SAFETY * Math.pow(err, expon)) : MIN_SCALE;
+			trial = Math.max(trial * scale, minStep);
+			h = trial;
+			landing = false;
+		}
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one trial step of size dt from the current state, putting the
+	 * solution into nextP.
+	 *
+	 * @return the scaled RMS error estimate; the step is acceptable iff it is
+	 *         <= 1. Infinite if the linear system is singular.
+	 */
+	private double trialStep(final double dt) {
+		final Method mm = method;
+		final int nStages = k.length;
+		final double[] p = currP;
+
+		// factor (I/(dt*gamma0) - J)
+		final double ghinv = 1.0 / (dt * mm.gamma[0]);
+		for (int i = 0; i < 9; i++)
+			lu[i] = -jac[i];
+		lu[0] += ghinv;
+		lu[4] += ghinv;
+		lu[8] += ghinv;
+		if (!decompose())
+			return Double.POSITIVE_INFINITY;
+
+		for (int s = 0; s < nStages; s++) {
+			final int row = s * (s - 1) / 2;
+			final double[] ks = k[s];
+			if (s == 0) {
+				for (int i = 0; i < 3; i++)
+					f[i] = f0[i];
+			}
+			else if (mm.newF[s]) {
+				for (int i = 0; i < 3; i++) {
+					double sum = p[i];
+					for (int j = 0; j < s; j++)
+						sum += mm.a[row + j] * k[j][i];
+					tmpP[i] = sum;
+				}
+				odeSystem.takeDerivatives(currT + mm.alpha[s] * dt, tmpP, f);
+			}
+			final double hg = dt * mm.gamma[s];
+			for (int i = 0; i < 3; i++) {
+				double sum = f[i] + hg * dfdt[i];
+				for (int j = 0; j < s; j++)
+					sum += (mm.c[row + j] / dt) * k[j][i];
+				ks[i] = sum;
+			}
+			solve(ks);
+		}
+
+		double sum = 0;
+		for (int i = 0; i < 3; i++) {
+			double y = p[i];
+			double e = 0;
+			for (int s = 0; s < nStages; s++) {
+				y += mm.m[s] * k[s][i];
+				e += mm.e[s] * k[s][i];
+			}
+			nextP[i] = y;
+			final double sc = absTolerance + relTolerance * Math.max(Math.abs(p[i]), Math.abs(y));
+			final double r = (sc > 0) ? e / sc : (e == 0 ? 0 : Double.POSITIVE_INFINITY);
+			sum += r * r;
+		}
+		final double err = Math.sqrt(sum / 3.0);
+		// NaN means the trial step blew up; treat it like a singular matrix
+		return (err == err) ? err : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * LU-decomposes lu in place, with partial pivoting.
+	 *
+	 * @return false if the matrix is singular.
+	 */
+	private boolean decompose() {
+		for (int c = 0; c < 3; c++) {
+			int pr = c;
+			double max = Math.abs(lu[3 * c + c]);
+			for (int r = c + 1; r < 3; r++) {
+				final double v = Math.abs(lu[3 * r + c]);
+				if (v > max) {
+					max = v;
+					pr = r;
+				}
+			}
+			if (!(max > 0))
+				return false;
+			piv[c] = pr;
+			if (pr != c) {
+				for (int j = 0; j < 3; j++) {
+					final double tmp = lu[3 * c + j];
+					lu[3 * c + j] = lu[3 * pr + j];
+					lu[3 * pr + j] = tmp;
+				}
+			}
+			final double d = lu[3 * c + c];
+			for (int r = c + 1; r < 3; r++) {
+				final double factor = lu[3 * r + c] / d;
+				lu[3 * r + c] = factor;
+				for (int j = c + 1; j < 3; j++)
+					lu[3 * r + j] -= factor * lu[3 * c + j];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Solves (LU) x = b in place, using the factors left by decompose.
+	 */
+	private void solve(double[] b) {
+		for (int c = 0; c < 3; c++) {
+			final int pr = piv[c];
+			if (pr != c) {
+				final double tmp = b[c];
+				b[c] = b[pr];
+				b[pr] = tmp;
+			}
+		}
+		b[1] -= lu[3] * b[0];
+		b[2] -= lu[6] * b[0] + lu[7] * b[1];
+		b[2] /= lu[8];
+		b[1] = (b[1] - lu[5] * b[2]) / lu[4];
+		b[0] = (b[0] - lu[1] * b[1] - lu[2] * b[2]) / lu[0];
+	}
+
+	/**
+	 * Returns the infinity norm (max row sum) of jac.
+	 */
+	private double jacobianNorm() {
+		double norm = 0;
+		for (int i = 0; i < 3; i++) {
+			final double rowSum =
+					Math.abs(jac[3 * i]) + Math.abs(jac[3 * i + 1]) + Math.abs(jac[3 * i + 2]);
+			if (rowSum > norm)
+				norm = rowSum;
+		}
+		return norm;
+	}
+}
@@ -5,10 +5,15 @@ import java.util.Map;
 
 /**
  * 3-D pendulum with nonzero rotational speed (i.e., <code>d(phi)/dt != 0</code>).
+ * <p>
+ * The system is separable, with theta as the position coordinate and phi and
+ * thetaDot in the momentum group: phi is cyclic, and both its derivative and
+ * thetaDot's depend only on theta.
  * 
  * @author jehanson
  */
-public class RotatingPendulumSystem extends AbstractODESystem_3D {
+public class RotatingPendulumSystem extends AbstractODESystem_3D implements
+		SeparableODESystem_3D {
 
 	// =====================================
 	// Variables
@@ -123,6 +128,78 @@ public class RotatingPendulumSystem extends AbstractODESystem_3D {
 		dpdt[2] = sinTheta * Math.cos(p[0]) * phiDot * phiDot + minusGOverL * sinTheta;
 	}
 
+	@Override
+	public void takeDerivatives(double t, double[] x, double[] y, double[] z,
+			double[] dxdt, double[] dydt, double[] dzdt, int from, int to) {
+		final double L = this.L;
+		final double lambda = this.lambda;
+		final double minusGOverL = this.minusGOverL;
+		for (int i = from; i < to; i++) {
+			final double theta = x[i];
+			final double sinTheta = Math.sin(theta);
+			final double LSinTheta = L * sinTheta;
+			final double phiDot = lambda / (LSinTheta * LSinTheta);
+			dxdt[i] = z[i];
+			dydt[i] = phiDot;
+			dzdt[i] = sinTheta * Math.cos(theta) * phiDot * phiDot + minusGOverL * sinTheta;
+		}
+	}
+
+	@Override
+	public void getJacobian(double t, double[] p, double[] J) {
+		// Only the theta column is nonzero, apart from d(theta)/d(thetaDot).
+		// With phiDot = lambda/(L sin(theta))^2:
+		// d(phiDot)/d(theta) = -2 phiDot cos(theta)/sin(theta)
+		// d(thetaDotDot)/d(theta) = -(sin^2 + 3 cos^2) phiDot^2 - (g/L) cos(theta)
+		final double sinTheta = Math.sin(p[0]);
+		final double cosTheta = Math.cos(p[0]);
+		final double LSinTheta = L * sinTheta;
+		final double phiDot = lambda / (LSinTheta * LSinTheta);
+		J[0] = 0;
+		J[1] = 0;
+		J[2] = 1;
+		J[3] = -2 * phiDot * cosTheta / sinTheta;
+		J[4] = 0;
+		J[5] = 0;
+		J[6] =
+				-(sinTheta * sinTheta + 3 * cosTheta * cosTheta) * phiDot * phiDot
+						+ minusGOverL * cosTheta;
+		J[7] = 0;
+		J[8] = 0;
+	}
+
+	@Override
+	public boolean[] getPositionCoordinates() {
+		return new boolean[] { true, false, false };
+	}
+
+	@Override
+	public void takePositionDerivatives(double t, double[] p, double[] dpdt) {
+		dpdt[0] = p[2];
+	}
+
+	@Override
+	public void takeMomentumDerivatives(double t, double[] p, double[] dpdt) {
+		final double sinTheta = Math.sin(p[0]);
+		final double LSinTheta = L * sinTheta;
+		final double phiDot = lambda/(LSinTheta * LSinTheta);
+		dpdt[1] = phiDot;
+		dpdt[2] = sinTheta * Math.cos(p[0]) * phiDot * phiDot + minusGOverL * sinTheta;
+	}
+
+	/**
+	 * Returns the energy per unit of mass*L^2:
+	 * <code>thetaDot^2/2 + lambda^2/(2 L^4 sin^2(theta)) - (g/L) cos(theta)</code>
+	 */
+	@Override
+	public double getEnergy(double[] p) {
+		final double sinTheta = Math.sin(p[0]);
+		final double LSinTheta = L * sinTheta;
+		final double LLSin2Theta = LSinTheta * LSinTheta;
+		return 0.5 * p[2] * p[2] + 0.5 * lambda * lambda / (LLSin2Theta * L * L)
+				+ minusGOverL * Math.cos(p[0]);
+	}
+
 	// ===========================
 	// Private
 	// ===========================
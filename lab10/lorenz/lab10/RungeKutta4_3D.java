@@ -7,11 +7,15 @@ import java.util.logging.Logger;
  * Fourth-order Runge-Kutta integration, adapted from <i>Numerical Recipes</i>,
  * 2nd Ed., Section 16.1, and customized for systems with three degrees of
  * freedom.
+ * <p>
+ * Dense output is by cubic Hermite interpolation between the ends of the last
+ * step. The derivative at the end of the step costs one extra evaluation,
+ * made only if interpolate is called.
  * 
  * @author jehanson
  * 
  */
-public class RungeKutta4_3D extends DataSource {
+public class RungeKutta4_3D extends ODEIntegrator_3D implements DenseOutput_3D {
 
 	private static final String clsName = RungeKutta4_3D.class.getName();
 	private static final Logger logger = Logger.getLogger(clsName);
@@ -22,13 +26,19 @@ public class RungeKutta4_3D extends DataSource {
 
 	private static final double TIME_STEP_DEFAULT = 0.001;
 
-	private final ODESystem_3D odeSystem;
-	private DataBox odeBounds;
+	// scratch space for doStep, preallocated so that stepping makes no garbage
+	private final double[] tmpP = new double[3]; // position estimates
+	private final double[] tmpPDot1 = new double[3]; // deriv estimates
+	private final double[] tmpPDot2 = new double[3]; // deriv estimates
+	private final double[] tmpPDot3 = new double[3]; // deriv estimates
 
-	private DataPoint initialState;
-	private double timeStep;
-	private double[] currP;
-	private double currT;
+	// dense output: the ends of the last step, before boundary conditions
+	private double prevT;
+	private final double[] prevP = new double[3];
+	private final double[] prevPDot = new double[3];
+	private final double[] endP = new double[3];
+	private final double[] endPDot = new double[3];
+	private boolean endPDotValid;
 
 	// =============================================
 	// Creation
@@ -45,74 +55,58 @@ public class RungeKutta4_3D extends DataSource {
 	}
 
 	public RungeKutta4_3D(String name, ODESystem_3D odeSystem, DataPoint initialState) {
-		super(name);
-		if (odeSystem == null)
-			throw new IllegalArgumentException("odeSystem cannot be null");
-		if (initialState == null)
-			throw new IllegalArgumentException("initialState cannot be null");
-
-		this.odeSystem = odeSystem;
-		this.odeBounds = odeSystem.getDataBounds();
-		this.initialState = initialState;
-		this.timeStep = TIME_STEP_DEFAULT;
-		this.currP = new double[3];
-
-		// (OK to call this in ctor b/c it's final)
-		this.doReset();
-
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		this.prevT = currT;
 	}
 
 	// =============================================
 	// Operation
 	// =============================================
 
-	/**
-	 * Returns a defensive copy of this walker's internal data bounds.
-	 */
 	@Override
-	public DataBox getDataBoundsHint() {
-		return odeSystem.getDataBounds();
-	}
-
-	public DataPoint getInitialState() {
-		return this.initialState;
-	}
-
-	public void setInitialState(DataPoint initialState) {
-		this.initialState = initialState;
-	}
-
-	@Override
-	public double getTimeStep() {
-		return this.timeStep;
-	}
-
 	public double getTimeStepDefault() {
 		return TIME_STEP_DEFAULT;
 	}
 
 	@Override
-	public void setTimeStep(double timeStep) {
-		this.timeStep = timeStep;
+	public double getPreviousTime() {
+		return prevT;
 	}
 
 	@Override
-	public DataPoint getCurrentPoint() {
-		return new DataPoint(currP[0], currP[1], currP[2]);
+	public void interpolate(double t, double[] p) {
+		final double h = currT - prevT;
+		if (h == 0) {
+			copyCurrentState(p);
+			return;
+		}
+		if (!endPDotValid) {
+			odeSystem.takeDerivatives(currT, endP, endPDot);
+			endPDotValid = true;
+		}
+
+		// cubic Hermite basis functions
+		final double s = (t - prevT) / h;
+		final double s1 = 1 - s;
+		final double h00 = (1 + 2 * s) * s1 * s1;
+		final double h10 = s * s1 * s1 * h;
+		final double h01 = s * s * (3 - 2 * s);
+		final double h11 = -s * s * s1 * h;
+		for (int i = 0; i < 3; i++)
+			p[i] = h00 * prevP[i] + h10 * prevPDot[i] + h01 * endP[i] + h11 * endPDot[i];
+		applyBounds(p);
 	}
 
 	@Override
-	public double getCurrentTime() {
-		return currT;
+	public void setCurrentState(double t, double[] p) {
+		super.setCurrentState(t, p);
+		this.prevT = t;
 	}
 
 	@Override
 	protected void doReset() {
-		this.odeBounds = odeSystem.getDataBounds();
-		this.currP[0] = initialState.getX();
-		this.currP[1] = initialState.getY();
-		this.currP[2] = initialState.getZ();
-		this.currT = 0;
+		super.doReset();
+		this.prevT = currT;
 	}
 
 	@Override
@@ -121,13 +115,57 @@ public class RungeKutta4_3D extends DataSource {
 		if (logger.isLoggable(Level.FINER))
 			logger.logp(Level.FINER, clsName, mtdName, "entering");
 
-		// temp variables; preallocate?
+		final double timeStep = getTimeStep();
+		rk4Step(timeStep, timeStep * 0.5, timeStep / 6.0);
+
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
+					+ DataPoint.makeTupleString(currP[0], currP[1], currP[2]));
+	}
+
+	/**
+	 * Same as the inherited version, but skips the per-step logging and
+	 * computes the step's constants once.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		double timeStep = getTimeStep();
 		double deltaT_2 = timeStep * 0.5;
 		double deltaT_6 = timeStep / 6.0;
-		double[] tmpP = new double[3]; // temp variable: position estimates
-		double[] tmpPDot1 = new double[3]; // temp variable: deriv estimates
-		double[] tmpPDot2 = new double[3]; // temp variable: deriv estimates
-		double[] tmpPDot3 = new double[3]; // temp variable: deriv estimates
+		final double stopTime = t - TIME_TOLERANCE * timeStep;
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (currT < stopTime) {
+			rk4Step(timeStep, deltaT_2, deltaT_6);
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				fireDataPointGenerated();
+				// a listener may have changed the time step
+				if (getTimeStep() != timeStep) {
+					timeStep = getTimeStep();
+					deltaT_2 = timeStep * 0.5;
+					deltaT_6 = timeStep / 6.0;
+				}
+			}
+		}
+		setEmitPhase(k);
+		return n;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private void rk4Step(final double timeStep, final double deltaT_2,
+			final double deltaT_6) {
+		final double[] tmpP = this.tmpP;
+		final double[] tmpPDot1 = this.tmpPDot1;
+		final double[] tmpPDot2 = this.tmpPDot2;
+		final double[] tmpPDot3 = this.tmpPDot3;
 
 		final double nextT_2 = currT + deltaT_2; // half-way to nextT
 		final double nextT = currT + timeStep;
@@ -158,18 +196,19 @@ public class RungeKutta4_3D extends DataSource {
 		// nextP.
 		odeSystem.takeDerivatives(nextT, tmpP, tmpPDot2);
 		for (int i = 0; i < 3; i++) {
+			prevP[i] = currP[i];
 			currP[i] += deltaT_6 * (tmpPDot1[i] + tmpPDot2[i] + 2.0 * tmpPDot3[i]);
 		}
 
-		// 5. apply boundary conditions
-		currP[0] = odeBounds.applyXBounds(currP[0]);
-		currP[1] = odeBounds.applyYBounds(currP[1]);
-		currP[2] = odeBounds.applyZBounds(currP[2]);
+		// 5. save the step's ends for dense output, apply boundary conditions
+		prevT = currT;
+		for (int i = 0; i < 3; i++) {
+			prevPDot[i] = tmpPDot1[i];
+			endP[i] = currP[i];
+		}
+		endPDotValid = false;
+		applyBounds();
 		currT = nextT;
-
-		if (logger.isLoggable(Level.FINER))
-			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
-					+ getCurrentPoint());
 	}
 
 }
@@ -0,0 +1,84 @@
+package lorenz.lab10;
+
+/**
+ * Fourth-order Runge-Kutta integration of an {@link ODESystem_ND}. Same
+ * scheme as {@link RungeKutta4_3D}, with all scratch space preallocated so
+ * that stepping makes no garbage, and every stage a single sweep over the
+ * state.
+ *
+ * @author jehanson
+ */
+public class RungeKutta4_ND extends ODEIntegrator_ND {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+
+	private final double[] tmpP; // position estimates
+	private final double[] tmpPDot; // deriv estimates
+	private final double[] sumPDot; // weighted sum of deriv estimates
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public RungeKutta4_ND(ODESystem_ND odeSystem) {
+		this(odeSystem, (odeSystem == null) ? null : odeSystem.getInitialStateHint());
+	}
+
+	public RungeKutta4_ND(ODESystem_ND odeSystem, double[] initialState) {
+		super(odeSystem, initialState, TIME_STEP_DEFAULT);
+		this.tmpP = new double[dim];
+		this.tmpPDot = new double[dim];
+		this.sumPDot = new double[dim];
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	@Override
+	public void step() {
+		final int n = dim;
+		final double[] p = currP;
+		final double[] tmpP = this.tmpP;
+		final double[] tmpPDot = this.tmpPDot;
+		final double[] sumPDot = this.sumPDot;
+		final double h = getTimeStep();
+		final double h_2 = 0.5 * h;
+		final double h_6 = h / 6.0;
+		final double t = currT;
+
+		odeSystem.takeDerivatives(t, p, tmpPDot);
+		for (int i = 0; i < n; i++) {
+			sumPDot[i] = tmpPDot[i];
+			tmpP[i] = p[i] + h_2 * tmpPDot[i];
+		}
+
+		odeSystem.takeDerivatives(t + h_2, tmpP, tmpPDot);
+		for (int i = 0; i < n; i++) {
+			sumPDot[i] += 2.0 * tmpPDot[i];
+			tmpP[i] = p[i] + h_2 * tmpPDot[i];
+		}
+
+		odeSystem.takeDerivatives(t + h_2, tmpP, tmpPDot);
+		for (int i = 0; i < n; i++) {
+			sumPDot[i] += 2.0 * tmpPDot[i];
+			tmpP[i] = p[i] + h * tmpPDot[i];
+		}
+
+		odeSystem.takeDerivatives(t + h, tmpP, tmpPDot);
+		for (int i = 0; i < n; i++)
+			p[i] += h_6 * (sumPDot[i] + tmpPDot[i]);
+
+		currT = t + h;
+	}
+
+}
@@ -70,7 +70,9 @@ public class RunnerControl {
 		@Override
 		protected void innerLoop() {
 			while (runnerThread == Thread.currentThread()) {
-				steppable.step();
+				synchronized (stepLock) {
+					steppable.step();
+				}
 			}
 		}
 	}
@@ -108,7 +110,9 @@ public class RunnerControl {
 			long t0 = System.currentTimeMillis();
 			while (runnerThread == Thread.currentThread()) {
 				budgetNanos += delay;
-				steppable.step();
+				synchronized (stepLock) {
+					steppable.step();
+				}
 				sleepMillis = (long)(budgetNanos/1000 - (System.currentTimeMillis() - t0));
 				if (sleepMillis > 0) {
 					budgetNanos -= 1000*sleepMillis;
@@ -182,6 +186,8 @@ public class RunnerControl {
 	// ======================================
 
 	private final Object runnerGuard = new Object();
+	// held while the steppable is stepped or reset
+	private final Object stepLock = new Object();
 	private final Steppable steppable;
 	private volatile Thread runnerThread;
 	private volatile int delayNanos;
@@ -352,7 +358,9 @@ public class RunnerControl {
 	public void step() {
 		synchronized (runnerGuard) {
 			if (runnerThread == null)
-				steppable.step();
+				synchronized (stepLock) {
+					steppable.step();
+				}
 		}
 	}
 
@@ -360,7 +368,9 @@ public class RunnerControl {
 		boolean wasReset = false;
 		synchronized (runnerGuard) {
 			if (runnerThread == null) {
-				steppable.reset();
+				synchronized (stepLock) {
+					steppable.reset();
+				}
 				wasReset = true;
 			}
 		}
@@ -370,6 +380,17 @@ public class RunnerControl {
 		}
 	}
 
+	/**
+	 * Runs the action on the calling thread between two steps, so that it
+	 * sees the steppable in a consistent state, whether or not the runner is
+	 * running. The runner waits for the action, so it should be quick.
+	 */
+	public void runBetweenSteps(Runnable action) {
+		synchronized (stepLock) {
+			action.run();
+		}
+	}
+
 	public void addRunnerControlListener(RunnerControlListener listener) {
 		if (listener == null)
 			throw new IllegalArgumentException("Argument \"listener\" cannot be null");
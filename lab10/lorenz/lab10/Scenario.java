@@ -25,7 +25,12 @@ public interface Scenario {
 	public abstract void dispose();
 
 	/**
-	 * Sets up this scenario by adding and configuring data sources and viewer
+	 * Returns the UI-independent part of this scenario.
+	 */
+	public abstract ScenarioModel getModel();
+
+	/**
+	 * Sets up this scenario by setting up its model and adding viewer
 	 * timeseries.
 	 * 
 	 * @param sources
@@ -0,0 +1,41 @@
+package lorenz.lab10;
+
+import java.util.List;
+
+/**
+ * The part of a scenario that doesn't depend on the UI: the data sources it
+ * runs, and their configuration. A {@link Scenario} adds viewer timeseries
+ * and SWT controls on top of its model; the {@link BatchRunner} uses models
+ * on their own.
+ * 
+ * @author jehanson
+ */
+public interface ScenarioModel {
+
+	/**
+	 * Creates this model's data sources and adds them to the given container.
+	 * 
+	 * @param sources
+	 */
+	public abstract void setup(DataSourceContainer sources);
+
+	/**
+	 * Undoes the effect of setup.
+	 * 
+	 * @param sources
+	 */
+	public abstract void teardown(DataSourceContainer sources);
+
+	/**
+	 * Returns the data sources created by setup, in order. Empty if not set
+	 * up.
+	 */
+	public abstract List<DataSource> getSources();
+
+	/**
+	 * Returns the region of state space that the data sources are expected to
+	 * explore.
+	 */
+	public abstract DataBox getDataBounds();
+
+}
@@ -0,0 +1,60 @@
+package lorenz.lab10;
+
+/**
+ * An ODE system whose coordinates split into "position" and "momentum"
+ * groups, such that the time derivatives of the position coordinates depend
+ * only on the momentum coordinates and vice versa. Separable Hamiltonian
+ * systems, H(q, p) = T(p) + V(q), have this form, and can be integrated with
+ * symplectic methods such as {@link SymplecticIntegrator_3D}.
+ * <p>
+ * A coordinate whose derivative depends only on the positions, and which does
+ * not itself feed back into any derivative (e.g., a cyclic angle), may be
+ * placed in the momentum group.
+ * 
+ * @author jehanson
+ */
+public interface SeparableODESystem_3D extends ODESystem_3D {
+
+	/**
+	 * Identifies the position coordinates.
+	 * 
+	 * @return length-3 array, true at the index of each position coordinate
+	 *         and false at the index of each momentum coordinate.
+	 */
+	public boolean[] getPositionCoordinates();
+
+	/**
+	 * Calculates the time derivatives of the position coordinates, which must
+	 * depend only on the momentum coordinates. Entries of dpdt for momentum
+	 * coordinates are left unmodified.
+	 * 
+	 * @param t
+	 *            The time at which the derivatives are calculated
+	 * @param p
+	 *            The point at which the derivatives are calculated
+	 * @param dpdt
+	 *            The array into which the values of the derivatives are placed.
+	 */
+	public void takePositionDerivatives(double t, double[] p, double[] dpdt);
+
+	/**
+	 * Calculates the time derivatives of the momentum coordinates, which must
+	 * depend only on the position coordinates. Entries of dpdt for position
+	 * coordinates are left unmodified.
+	 * 
+	 * @param t
+	 *            The time at which the derivatives are calculated
+	 * @param p
+	 *            The point at which the derivatives are calculated
+	 * @param dpdt
+	 *            The array into which the values of the derivatives are placed.
+	 */
+	public void takeMomentumDerivatives(double t, double[] p, double[] dpdt);
+
+	/**
+	 * Returns the value of the system's conserved energy at the given point,
+	 * up to an additive constant.
+	 */
+	public double getEnergy(double[] p);
+
+}
@@ -2,8 +2,35 @@ package lorenz.lab10;
 
 public interface Steppable {
 
+	/**
+	 * Fraction of a time step by which a time may fall short of a target time
+	 * and still count as having reached it. Stepping to a stop time compares
+	 * against <code>stopTime - TIME_TOLERANCE*timeStep</code>, so that
+	 * roundoff accumulated in the current time never causes an extra step.
+	 * That roundoff grows with the number of steps: after a few million it
+	 * can be a sizable fraction of a millionth of a step.
+	 */
+	public static final double TIME_TOLERANCE = 0.01;
+
 	public abstract void step();
 
+	/**
+	 * Steps until the current time reaches t, telling listeners about every
+	 * emitEvery-th step only. Equivalent to calling step() repeatedly, but
+	 * without the cost of notifying listeners about each step. The count of
+	 * steps carries over from one call to the next, and restarts on a reset,
+	 * so a run split into many short calls emits the same points as one long
+	 * call.
+	 * 
+	 * @param t
+	 *            the time to advance to; see {@link #TIME_TOLERANCE}
+	 * @param emitEvery
+	 *            if > 0, listeners are notified after every emitEvery-th step;
+	 *            if 0, not at all
+	 * @return the number of steps taken
+	 */
+	public abstract long advanceTo(double t, int emitEvery);
+
 	public abstract void reset();
 
 	public abstract double getCurrentTime();
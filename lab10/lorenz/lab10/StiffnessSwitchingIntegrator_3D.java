@@ -0,0 +1,248 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Adaptive-step integration that switches automatically between an explicit
+ * method ({@link DormandPrince45_3D}) while the system is non-stiff and an
+ * implicit one ({@link RosenbrockIntegrator_3D}) while it is stiff.
+ * <p>
+ * Both integrators report h*rho, the step size times an estimate of the
+ * dominant eigenvalue of the Jacobian, after every accepted step. The
+ * explicit method is stable only for h*rho below about 3.3, so if it is
+ * accepting steps at that limit it is being held back by stability rather
+ * than accuracy, and the implicit method takes over. If the implicit method's
+ * steps stay below the limit, the explicit method, which is cheaper per step,
+ * takes over again. As in Hairer &amp; Wanner's DOPRI5, a switch happens only
+ * after SWITCH_COUNT steps on the far side of the limit, a run of RESET_COUNT
+ * steps on the near side starts the count over, and steps in between are
+ * ignored; an explicit method working at its stability limit hovers right
+ * around it.
+ *
+ * @author jehanson
+ */
+public class StiffnessSwitchingIntegrator_3D extends ODEIntegrator_3D {
+
+	private static final String clsName = StiffnessSwitchingIntegrator_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.001;
+
+	// explicit stability limit of h*rho for DormandPrince45
+	private static final double STIFFNESS_LIMIT = 3.25;
+	private static final int SWITCH_COUNT = 15;
+	private static final int RESET_COUNT = 6;
+
+	private final DormandPrince45_3D explicit;
+	private final RosenbrockIntegrator_3D implicit;
+	private ODEIntegrator_3D active;
+	// steps beyond the limit since the count was last started over
+	private int count;
+	// consecutive steps within the limit
+	private int calm;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public StiffnessSwitchingIntegrator_3D(String name, ODESystem_3D odeSystem) {
+		this(name, odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint());
+	}
+
+	public StiffnessSwitchingIntegrator_3D(String name, ODESystem_3D odeSystem,
+			DataPoint initialState) {
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		this.explicit = new DormandPrince45_3D(name, odeSystem, initialState);
+		this.implicit =
+				new RosenbrockIntegrator_3D(name, odeSystem, initialState,
+						RosenbrockIntegrator_3D.Method.ROS4);
+		this.active = explicit;
+		this.count = 0;
+		this.calm = 0;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Sets the size of the first trial step. Takes effect immediately and
+	 * after every reset.
+	 */
+	@Override
+	public void setTimeStep(double timeStep) {
+		explicit.setTimeStep(timeStep);
+		implicit.setTimeStep(timeStep);
+		super.setTimeStep(timeStep);
+	}
+
+	/**
+	 * Returns the size of the most recently accepted step, or 0 if no step has
+	 * been taken since the last reset or switch.
+	 */
+	public double getLastTimeStep() {
+		return (active == explicit) ? explicit.getLastTimeStep() : implicit
+				.getLastTimeStep();
+	}
+
+	/**
+	 * Returns true if the implicit method is currently in use.
+	 */
+	public boolean isStiff() {
+		return active == implicit;
+	}
+
+	public void setMaxTimeStep(double maxTimeStep) {
+		explicit.setMaxTimeStep(maxTimeStep);
+		implicit.setMaxTimeStep(maxTimeStep);
+	}
+
+	public void setAbsTolerance(double absTolerance) {
+		explicit.setAbsTolerance(absTolerance);
+		implicit.setAbsTolerance(absTolerance);
+	}
+
+	public void setRelTolerance(double relTolerance) {
+		explicit.setRelTolerance(relTolerance);
+		implicit.setRelTolerance(relTolerance);
+	}
+
+	@Override
+	public void setInitialState(DataPoint initialState) {
+		super.setInitialState(initialState);
+		explicit.setInitialState(initialState);
+		implicit.setInitialState(initialState);
+	}
+
+	@Override
+	public void setCurrentState(double t, double[] p) {
+		super.setCurrentState(t, p);
+		active.setCurrentState(t, p);
+	}
+
+	/**
+	 * Adds which method is in use, the switching counters, and the state of
+	 * both methods' integrators.
+	 */
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeBoolean(active == implicit);
+		out.writeInt(count);
+		out.writeInt(calm);
+		explicit.writeState(out);
+		implicit.writeState(out);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		super.readState(in);
+		active = in.readBoolean() ? implicit : explicit;
+		count = in.readInt();
+		calm = in.readInt();
+		explicit.readState(in);
+		implicit.readState(in);
+	}
+
+	@Override
+	protected void doReset() {
+		super.doReset();
+		// switching changes the inner integrators' first trial steps
+		explicit.setTimeStep(getTimeStep());
+		implicit.setTimeStep(getTimeStep());
+		explicit.reset();
+		implicit.reset();
+		active = explicit;
+		count = 0;
+		calm = 0;
+	}
+
+	@Override
+	protected void doStep() {
+		switchingStep(Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Same as the inherited version, except that the step that would pass t
+	 * is cut short so that it ends exactly on t, as in
+	 * {@link DormandPrince45_3D}.
+	 */
+	@Override
+	public long advanceTo(double t, int emitEvery) {
+		if (emitEvery < 0)
+			throw new IllegalArgumentException("Bad value emitEvery=" + emitEvery
+					+ " -- must be >= 0");
+		final double stopTime = t - TIME_TOLERANCE * getTimeStep();
+		long n = 0;
+		int k = getEmitPhase(emitEvery);
+		while (currT < stopTime) {
+			switchingStep(t);
+			n++;
+			if (++k == emitEvery) {
+				k = 0;
+				fireDataPointGenerated();
+			}
+		}
+		setEmitPhase(k);
+		return n;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	/**
+	 * Takes one step with the active method, ending no later than endTime,
+	 * and switches methods if called for.
+	 */
+	private void switchingStep(double endTime) {
+		final String mtdName = "switchingStep";
+
+		if (active == explicit)
+			explicit.adaptiveStep(endTime);
+		else
+			implicit.adaptiveStep(endTime);
+		active.copyCurrentState(currP);
+		currT = active.getCurrentTime();
+
+		final boolean beyondLimit;
+		if (active == explicit)
+			beyondLimit = explicit.getStiffnessEstimate() > STIFFNESS_LIMIT;
+		else
+			beyondLimit = implicit.getStiffnessEstimate() < STIFFNESS_LIMIT;
+		if (beyondLimit) {
+			count++;
+			calm = 0;
+		}
+		else if (++calm >= RESET_COUNT) {
+			count = 0;
+		}
+
+		if (count >= SWITCH_COUNT) {
+			final double h = getLastTimeStep();
+			active = (active == explicit) ? implicit : explicit;
+			active.setCurrentState(currT, currP);
+			// carry the step size over; the switch shows it is stable for both
+			active.setTimeStep(h);
+			count = 0;
+			calm = 0;
+			if (logger.isLoggable(Level.FINE))
+				logger.logp(Level.FINE, clsName, mtdName, "switched to "
+						+ ((active == explicit) ? "explicit" : "implicit") + " at t=" + currT);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package lorenz.lab10;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Symplectic integration of a {@link SeparableODESystem_3D}, by composition
+ * of alternating "drift" (advance the position coordinates) and "kick"
+ * (advance the momentum coordinates) substeps.
+ * <p>
+ * Symplectic methods do not let the energy of a Hamiltonian system drift: the
+ * energy error stays bounded for arbitrarily long runs, so much larger time
+ * steps can be used than with RungeKutta4_3D.
+ *
+ * @author jehanson
+ */
+public class SymplecticIntegrator_3D extends ODEIntegrator_3D {
+
+	private static final String clsName = SymplecticIntegrator_3D.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The available composition schemes. Each substep i is a drift by
+	 * driftCoeffs[i]*timeStep followed by a kick by kickCoeffs[i]*timeStep.
+	 */
+	public enum Method {
+
+		/**
+		 * 2nd-order leapfrog (Stormer-Verlet). One force evaluation per step.
+		 */
+		LEAPFROG(new double[] { 0.5, 0.5 }, new double[] { 1.0, 0.0 }),
+
+		/**
+		 * 4th-order Yoshida composition of three leapfrog steps. Three force
+		 * evaluations per step.
+		 */
+		YOSHIDA4(yoshidaDrifts(), yoshidaKicks());
+
+		private final double[] driftCoeffs;
+		private final double[] kickCoeffs;
+
+		private Method(double[] driftCoeffs, double[] kickCoeffs) {
+			this.driftCoeffs = driftCoeffs;
+			this.kickCoeffs = kickCoeffs;
+		}
+
+		private static double[] yoshidaDrifts() {
+			final double w1 = 1.0 / (2.0 - Math.cbrt(2.0));
+			final double w0 = -Math.cbrt(2.0) * w1;
+			return new double[] { 0.5 * w1, 0.5 * (w0 + w1), 0.5 * (w0 + w1), 0.5 * w1 };
+		}
+
+		private static double[] yoshidaKicks() {
+			final double w1 = 1.0 / (2.0 - Math.cbrt(2.0));
+			final double w0 = -Math.cbrt(2.0) * w1;
+			return new double[] { w1, w0, w1, 0.0 };
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double TIME_STEP_DEFAULT = 0.01;
+
+	private final SeparableODESystem_3D separableSystem;
+	private final Method method;
+	private final boolean[] isPosition;
+	private final double[] dpdt = new double[3];
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public SymplecticIntegrator_3D(String name, SeparableODESystem_3D odeSystem,
+			Method method) {
+		this(name, odeSystem, (odeSystem == null) ? DataPoint.ZERO : odeSystem
+				.getInitialStateHint(), method);
+	}
+
+	public SymplecticIntegrator_3D(String name, SeparableODESystem_3D odeSystem,
+			DataPoint initialState, Method method) {
+		super(name, odeSystem, initialState, TIME_STEP_DEFAULT);
+		if (method == null)
+			throw new IllegalArgumentException("method cannot be null");
+		this.separableSystem = odeSystem;
+		this.method = method;
+		this.isPosition = odeSystem.getPositionCoordinates().clone();
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public Method getMethod() {
+		return method;
+	}
+
+	@Override
+	public double getTimeStepDefault() {
+		return TIME_STEP_DEFAULT;
+	}
+
+	/**
+	 * Returns the ODE system's energy at the current state.
+	 */
+	public double getCurrentEnergy() {
+		return separableSystem.getEnergy(currP);
+	}
+
+	@Override
+	protected void doStep() {
+		final String mtdName = "doStep";
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "entering");
+
+		final double h = getTimeStep();
+		final double[] c = method.driftCoeffs;
+		final double[] d = method.kickCoeffs;
+		double t = currT;
+
+		for (int s = 0; s < c.length; s++) {
+			if (c[s] != 0) {
+				final double dt = c[s] * h;
+				separableSystem.takePositionDerivatives(t, currP, dpdt);
+				for (int i = 0; i < 3; i++)
+					if (isPosition[i])
+						currP[i] += dt * dpdt[i];
+				t += dt;
+			}
+			if (d[s] != 0) {
+				final double dt = d[s] * h;
+				separableSystem.takeMomentumDerivatives(t, currP, dpdt);
+				for (int i = 0; i < 3; i++)
+					if (!isPosition[i])
+						currP[i] += dt * dpdt[i];
+			}
+		}
+
+		applyBounds();
+		currT += h;
+
+		if (logger.isLoggable(Level.FINER))
+			logger.logp(Level.FINER, clsName, mtdName, "Exiting. currP="
+					+ DataPoint.makeTupleString(currP[0], currP[1], currP[2]));
+	}
+
+}
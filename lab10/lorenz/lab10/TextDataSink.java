@@ -0,0 +1,83 @@
+package lorenz.lab10;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes each point as a line of tab-separated text: the source's name, the
+ * time, and the three coordinates.
+ * 
+ * @author jehanson
+ */
+public class TextDataSink implements DataSink {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private final Writer out;
+	private final boolean closeWriter;
+	private final StringBuilder line;
+	private IOException failure;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * @param out
+	 *            where to write the points. Buffered by this sink.
+	 * @param closeWriter
+	 *            whether close() should close out. False for e.g. System.out.
+	 */
+	public TextDataSink(Writer out, boolean closeWriter) {
+		if (out == null)
+			throw new IllegalArgumentException("out cannot be null");
+		this.out = new BufferedWriter(out, 1 << 16);
+		this.closeWriter = closeWriter;
+		this.line = new StringBuilder(128);
+		this.failure = null;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public synchronized void dataPointGenerated(DataSourceEvent e) {
+		if (failure != null)
+			return;
+		line.setLength(0);
+		line.append(((DataSource) e.getSource()).getName()).append('\t')
+				.append(e.getTimestamp()).append('\t').append(e.getX()).append('\t')
+				.append(e.getY()).append('\t').append(e.getZ()).append('\n');
+		try {
+			out.append(line);
+		}
+		catch (IOException ex) {
+			failure = ex;
+		}
+	}
+
+	@Override
+	public void dataSourceReset(DataSourceEvent e) {}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		if (failure != null)
+			throw failure;
+		out.flush();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			if (closeWriter)
+				out.close();
+		}
+	}
+}
@@ -0,0 +1,330 @@
+package lorenz.lab10;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lossless compression of trajectory points (t, x, y, z), after the scheme
+ * of Facebook's Gorilla time series database (Pelkonen et al., VLDB 2015).
+ * <p>
+ * Times are encoded by the delta of the delta of their bit patterns, taken as
+ * 64-bit integers. A time that goes up by a constant step has a bit pattern
+ * that goes up by a nearly constant number of ulps, so most points cost one
+ * or a few bits. Coordinates are encoded by XOR with the previous value:
+ * successive points of a smooth trajectory share their sign, exponent and
+ * leading mantissa bits, so only the block of bits that differ is stored,
+ * described by its count of leading and trailing zeros or by reusing the
+ * previous value's.
+ * <p>
+ * Bits are written most significant first. A run of encoded points starts
+ * with its first point written in full and depends on nothing before it, so
+ * a {@link TrajectoryRecorder} that encodes each chunk as one run can still
+ * read back any chunk on its own.
+ *
+ * @author jehanson
+ */
+public class TrajectoryCodec {
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * Writes encoded points into a byte buffer, starting at its position.
+	 */
+	public static class Encoder {
+
+		private final ByteBuffer out;
+		private final int start;
+
+		// pending bits, left-aligned
+		private long bits;
+		private int nBits;
+
+		private long count;
+		private long prevT;
+		private long prevDelta;
+		private final long[] prevP = new long[3];
+		private final int[] leading = new int[3];
+		private final int[] trailing = new int[3];
+
+		public Encoder(ByteBuffer out) {
+			if (out == null)
+				throw new IllegalArgumentException("out cannot be null");
+			this.out = out;
+			this.start = out.position();
+			this.bits = 0;
+			this.nBits = 0;
+			this.count = 0;
+		}
+
+		/**
+		 * Returns the number of points encoded.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Encodes a point. The buffer must have room for
+		 * {@link TrajectoryCodec#MAX_POINT_SIZE} more bytes.
+		 */
+		public void encode(double t, double x, double y, double z) {
+			final long tBits = Double.doubleToRawLongBits(t);
+			if (count == 0) {
+				write(tBits, 64);
+				prevT = tBits;
+				prevDelta = 0;
+				writeFirst(0, Double.doubleToRawLongBits(x));
+				writeFirst(1, Double.doubleToRawLongBits(y));
+				writeFirst(2, Double.doubleToRawLongBits(z));
+			}
+			else {
+				final long delta = tBits - prevT;
+				writeDeltaOfDelta(delta - prevDelta);
+				prevT = tBits;
+				prevDelta = delta;
+				writeXor(0, Double.doubleToRawLongBits(x));
+				writeXor(1, Double.doubleToRawLongBits(y));
+				writeXor(2, Double.doubleToRawLongBits(z));
+			}
+			count++;
+		}
+
+		/**
+		 * Writes out any pending bits, padded to a whole byte. No more points
+		 * may be encoded afterwards.
+		 *
+		 * @return the number of bytes written since the encoder was created
+		 */
+		public int finish() {
+			for (int shift = 56; nBits > 0; shift -= 8, nBits -= 8)
+				out.put((byte) (bits >>> shift));
+			nBits = 0;
+			bits = 0;
+			return out.position() - start;
+		}
+
+		private void writeFirst(int c, long v) {
+			write(v, 64);
+			prevP[c] = v;
+			leading[c] = -1;
+			trailing[c] = 0;
+		}
+
+		private void writeDeltaOfDelta(long dod) {
+			if (dod == 0)
+				write(0, 1);
+			else if (dod >= -64 && dod < 64) {
+				write(0x2, 2);
+				write(dod, 7);
+			}
+			else if (dod >= -256 && dod < 256) {
+				write(0x6, 3);
+				write(dod, 9);
+			}
+			else if (dod >= -2048 && dod < 2048) {
+				write(0xe, 4);
+				write(dod, 12);
+			}
+			else if (dod >= Integer.MIN_VALUE && dod <= Integer.MAX_VALUE) {
+				write(0x1e, 5);
+				write(dod, 32);
+			}
+			else {
+				write(0x1f, 5);
+				write(dod, 64);
+			}
+		}
+
+		private void writeXor(int c, long v) {
+			final long xor = v ^ prevP[c];
+			prevP[c] = v;
+			if (xor == 0) {
+				write(0, 1);
+				return;
+			}
+			// 5 bits hold the count of leading zeros
+			final int lz = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			final int tz = Long.numberOfTrailingZeros(xor);
+			if (leading[c] >= 0 && lz >= leading[c] && tz >= trailing[c]) {
+				// fits in the previous block
+				write(0x2, 2);
+				write(xor >>> trailing[c], 64 - leading[c] - trailing[c]);
+			}
+			else {
+				final int length = 64 - lz - tz;
+				write(0x3, 2);
+				write(lz, 5);
+				// a length of 64 is written as 0
+				write(length, 6);
+				write(xor >>> tz, length);
+				leading[c] = lz;
+				trailing[c] = tz;
+			}
+		}
+
+		/**
+		 * Appends the low n bits of v, 0 < n <= 64.
+		 */
+		private void write(long v, int n) {
+			if (n < 64)
+				v &= (1L << n) - 1;
+			final int free = 64 - nBits;
+			if (n < free) {
+				bits |= v << (free - n);
+				nBits += n;
+			}
+			else {
+				bits |= v >>> (n - free);
+				out.putLong(bits);
+				nBits = n - free;
+				bits = (nBits == 0) ? 0 : v << (64 - nBits);
+			}
+		}
+	}
+
+	/**
+	 * Reads points written by an {@link Encoder} from a byte buffer, starting
+	 * at its position.
+	 */
+	public static class Decoder {
+
+		private final ByteBuffer in;
+
+		// unread bits, left-aligned
+		private long bits;
+		private int nBits;
+
+		private long count;
+		private long prevT;
+		private long prevDelta;
+		private final long[] prevP = new long[3];
+		private final int[] leading = new int[3];
+		private final int[] trailing = new int[3];
+
+		public Decoder(ByteBuffer in) {
+			if (in == null)
+				throw new IllegalArgumentException("in cannot be null");
+			this.in = in;
+			this.bits = 0;
+			this.nBits = 0;
+			this.count = 0;
+		}
+
+		/**
+		 * Decodes the next point into p as {t, x, y, z}. The caller must know
+		 * how many points there are: the end of the data isn't marked.
+		 */
+		public void decode(double[] p) {
+			if (count == 0) {
+				prevT = read(64);
+				prevDelta = 0;
+				for (int c = 0; c < 3; c++) {
+					prevP[c] = read(64);
+					leading[c] = -1;
+				}
+			}
+			else {
+				prevDelta += readDeltaOfDelta();
+				prevT += prevDelta;
+				for (int c = 0; c < 3; c++)
+					readXor(c);
+			}
+			p[0] = Double.longBitsToDouble(prevT);
+			p[1] = Double.longBitsToDouble(prevP[0]);
+			p[2] = Double.longBitsToDouble(prevP[1]);
+			p[3] = Double.longBitsToDouble(prevP[2]);
+			count++;
+		}
+
+		/**
+		 * Decodes the next n points into the given arrays, starting at index
+		 * j0.
+		 */
+		public void decode(double[] ts, double[] xs, double[] ys, double[] zs, int j0,
+				int n) {
+			final double[] p = new double[4];
+			for (int j = j0; j < j0 + n; j++) {
+				decode(p);
+				ts[j] = p[0];
+				xs[j] = p[1];
+				ys[j] = p[2];
+				zs[j] = p[3];
+			}
+		}
+
+		private long readDeltaOfDelta() {
+			if (read(1) == 0)
+				return 0;
+			if (read(1) == 0)
+				return readSigned(7);
+			if (read(1) == 0)
+				return readSigned(9);
+			if (read(1) == 0)
+				return readSigned(12);
+			if (read(1) == 0)
+				return readSigned(32);
+			return read(64);
+		}
+
+		private void readXor(int c) {
+			if (read(1) == 0)
+				return;
+			if (read(1) == 0) {
+				prevP[c] ^= read(64 - leading[c] - trailing[c]) << trailing[c];
+				return;
+			}
+			final int lz = (int) read(5);
+			int length = (int) read(6);
+			if (length == 0)
+				length = 64;
+			final int tz = 64 - lz - length;
+			prevP[c] ^= read(length) << tz;
+			leading[c] = lz;
+			trailing[c] = tz;
+		}
+
+		private long readSigned(int n) {
+			return (read(n) << (64 - n)) >> (64 - n);
+		}
+
+		/**
+		 * Reads the next n bits, 0 < n <= 64.
+		 */
+		private long read(int n) {
+			if (n > 56)
+				return (read(32) << (n - 32)) | read(n - 32);
+			while (nBits < n) {
+				// past the end of the data, which is an error on the caller's
+				// part, the buffer throws BufferUnderflowException
+				bits |= (in.get() & 0xffL) << (56 - nBits);
+				nBits += 8;
+			}
+			final long v = bits >>> (64 - n);
+			bits <<= n;
+			nBits -= n;
+			return v;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	/**
+	 * The most bytes one encoded point can take: 69 bits for the time and 77
+	 * for each coordinate.
+	 */
+	public static final int MAX_POINT_SIZE = 38;
+
+	/**
+	 * The most bytes that {@link Encoder#finish()} can add.
+	 */
+	public static final int MAX_FINISH_SIZE = 8;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	private TrajectoryCodec() {}
+}
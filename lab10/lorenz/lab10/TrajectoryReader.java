@@ -0,0 +1,361 @@
+package lorenz.lab10;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a trajectory file written by a {@link TrajectoryRecorder}.
+ * <p>
+ * The header and chunk index are read when the file is opened. The points are
+ * read a chunk at a time by mapping the chunk's region of the file, so a
+ * chunk's columns are available without copying, and a recording much larger
+ * than the heap can be read from end to end. A compressed chunk is decoded
+ * into arrays when it is read.
+ *
+ * @author jehanson
+ */
+public class TrajectoryReader {
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * The points of one chunk of a recording: parallel columns of times and
+	 * coordinates, read-only views of the mapped file or, for a compressed
+	 * chunk, of the decoded points.
+	 */
+	public static class Chunk {
+
+		private final int size;
+		private final boolean afterReset;
+		private final DoubleBuffer t;
+		private final DoubleBuffer x;
+		private final DoubleBuffer y;
+		private final DoubleBuffer z;
+
+		private Chunk(ByteBuffer b, int size, boolean afterReset) {
+			this.size = size;
+			this.afterReset = afterReset;
+			this.t = column(b, 0, size);
+			this.x = column(b, 1, size);
+			this.y = column(b, 2, size);
+			this.z = column(b, 3, size);
+		}
+
+		private Chunk(TrajectoryCodec.Decoder decoder, int size, boolean afterReset) {
+			this.size = size;
+			this.afterReset = afterReset;
+			final double[] ts = new double[size];
+			final double[] xs = new double[size];
+			final double[] ys = new double[size];
+			final double[] zs = new double[size];
+			decoder.decode(ts, xs, ys, zs, 0, size);
+			this.t = DoubleBuffer.wrap(ts).asReadOnlyBuffer();
+			this.x = DoubleBuffer.wrap(xs).asReadOnlyBuffer();
+			this.y = DoubleBuffer.wrap(ys).asReadOnlyBuffer();
+			this.z = DoubleBuffer.wrap(zs).asReadOnlyBuffer();
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Returns true if the source was reset just before this chunk's first
+		 * point, i.e., if the trajectory is discontinuous there.
+		 */
+		public boolean isAfterReset() {
+			return afterReset;
+		}
+
+		public double getTime(int i) {
+			return t.get(i);
+		}
+
+		public double getX(int i) {
+			return x.get(i);
+		}
+
+		public double getY(int i) {
+			return y.get(i);
+		}
+
+		public double getZ(int i) {
+			return z.get(i);
+		}
+
+		/**
+		 * Copies the chunk's points, starting at index i0, into the given
+		 * arrays, starting at index j0.
+		 */
+		public void copyTo(int i0, double[] ts, double[] xs, double[] ys, double[] zs,
+				int j0, int length) {
+			for (int k = 0; k < length; k++) {
+				ts[j0 + k] = t.get(i0 + k);
+				xs[j0 + k] = x.get(i0 + k);
+				ys[j0 + k] = y.get(i0 + k);
+				zs[j0 + k] = z.get(i0 + k);
+			}
+		}
+
+		private static DoubleBuffer column(ByteBuffer b, int c, int size) {
+			ByteBuffer col = b.duplicate();
+			col.position(c * size * 8);
+			col.limit((c + 1) * size * 8);
+			return col.slice().asDoubleBuffer();
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	private final int chunkCapacity;
+	private final String sourceName;
+	private final String sourceType;
+	private final String systemName;
+	private final double timeStep;
+	private final double startTime;
+	private final DataPoint initialState;
+	private final DataBox dataBounds;
+	private final Map<String, Double> coefficients;
+
+	private final long indexOffset;
+	private final long[] chunkOffsets;
+	private final int[] chunkSizes;
+	private final int[] chunkFlags;
+	private final double[] chunkFirstTimes;
+	private final double[] chunkLastTimes;
+	private final long pointCount;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * Opens the file and reads its header and chunk index.
+	 */
+	public TrajectoryReader(File file) throws IOException {
+		super();
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		this.file = file;
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		try {
+			// RandomAccessFile is a DataInput, so it reads what DataOutput wrote
+			if (raf.length() < 24 || raf.readInt() != TrajectoryRecorder.MAGIC)
+				throw new IOException(file + " is not a trajectory file");
+			int version = raf.readInt();
+			if (version != TrajectoryRecorder.VERSION)
+				throw new IOException("Unsupported version " + version + " in " + file);
+			this.indexOffset = raf.readLong();
+			final int nChunks = raf.readInt();
+			if (indexOffset == 0)
+				throw new IOException(file
+						+ " has no chunk index -- was the recording closed?");
+			this.chunkCapacity = raf.readInt();
+			this.sourceName = raf.readUTF();
+			this.sourceType = raf.readUTF();
+			this.systemName = raf.readUTF();
+			this.timeStep = raf.readDouble();
+			this.startTime = raf.readDouble();
+			this.initialState =
+					new DataPoint(raf.readDouble(), raf.readDouble(), raf.readDouble());
+			this.dataBounds =
+					new DataBox(raf.readDouble(), raf.readDouble(), readBoundType(),
+							raf.readDouble(), raf.readDouble(), readBoundType(), raf
+									.readDouble(), raf.readDouble(), readBoundType());
+			final int nCoeffs = raf.readInt();
+			Map<String, Double> coeffs = new LinkedHashMap<String, Double>();
+			for (int i = 0; i < nCoeffs; i++) {
+				String name = raf.readUTF();
+				coeffs.put(name, raf.readDouble());
+			}
+			this.coefficients = Collections.unmodifiableMap(coeffs);
+
+			this.chunkOffsets = new long[nChunks];
+			this.chunkSizes = new int[nChunks];
+			this.chunkFlags = new int[nChunks];
+			this.chunkFirstTimes = new double[nChunks];
+			this.chunkLastTimes = new double[nChunks];
+			ByteBuffer index =
+					ByteBuffer.allocate(nChunks * TrajectoryRecorder.INDEX_ENTRY_SIZE);
+			while (index.hasRemaining())
+				if (channel.read(index, indexOffset + index.position()) < 0)
+					throw new IOException(file + " is truncated");
+			index.flip();
+			long n = 0;
+			for (int i = 0; i < nChunks; i++) {
+				chunkOffsets[i] = index.getLong();
+				chunkSizes[i] = index.getInt();
+				chunkFlags[i] = index.getInt();
+				chunkFirstTimes[i] = index.getDouble();
+				chunkLastTimes[i] = index.getDouble();
+				n += chunkSizes[i];
+			}
+			this.pointCount = n;
+		}
+		catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the name of the recorded data source.
+	 */
+	public String getSourceName() {
+		return sourceName;
+	}
+
+	/**
+	 * Returns the simple class name of the recorded data source, e.g.
+	 * "RungeKutta4_3D".
+	 */
+	public String getSourceType() {
+		return sourceType;
+	}
+
+	/**
+	 * Returns the name of the recorded source's ODE system, or "" if it
+	 * wasn't an ODE integrator.
+	 */
+	public String getSystemName() {
+		return systemName;
+	}
+
+	/**
+	 * Returns the coefficients of the recorded source's ODE system, if any.
+	 */
+	public Map<String, Double> getCoefficients() {
+		return coefficients;
+	}
+
+	public DataPoint getInitialState() {
+		return initialState;
+	}
+
+	/**
+	 * Returns the recorded source's data bounds hint.
+	 */
+	public DataBox getDataBounds() {
+		return new DataBox(dataBounds);
+	}
+
+	/**
+	 * Returns the source's time when recording started.
+	 */
+	public double getStartTime() {
+		return startTime;
+	}
+
+	public double getTimeStep() {
+		return timeStep;
+	}
+
+	public int getChunkCapacity() {
+		return chunkCapacity;
+	}
+
+	public int getChunkCount() {
+		return chunkOffsets.length;
+	}
+
+	public int getChunkSize(int chunk) {
+		return chunkSizes[chunk];
+	}
+
+	public double getChunkFirstTime(int chunk) {
+		return chunkFirstTimes[chunk];
+	}
+
+	public double getChunkLastTime(int chunk) {
+		return chunkLastTimes[chunk];
+	}
+
+	/**
+	 * Returns true if the source was reset just before the given chunk's first
+	 * point.
+	 */
+	public boolean isChunkAfterReset(int chunk) {
+		return (chunkFlags[chunk] & TrajectoryRecorder.FLAG_RESET) != 0;
+	}
+
+	public boolean isChunkCompressed(int chunk) {
+		return (chunkFlags[chunk] & TrajectoryRecorder.FLAG_COMPRESSED) != 0;
+	}
+
+	/**
+	 * Returns the total number of points in the recording.
+	 */
+	public long getPointCount() {
+		return pointCount;
+	}
+
+	/**
+	 * Maps the given chunk's points, and decodes them if they're compressed.
+	 */
+	public Chunk readChunk(int chunk) throws IOException {
+		if (chunk < 0 || chunk >= chunkOffsets.length)
+			throw new IllegalArgumentException("Bad value chunk=" + chunk
+					+ " -- must be >= 0 and < " + chunkOffsets.length);
+		final int size = chunkSizes[chunk];
+		if (isChunkCompressed(chunk)) {
+			final long start = chunkOffsets[chunk];
+			final long end = (chunk + 1 < chunkOffsets.length) ? chunkOffsets[chunk + 1]
+					: indexOffset;
+			ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			try {
+				return new Chunk(new TrajectoryCodec.Decoder(b), size,
+						isChunkAfterReset(chunk));
+			}
+			catch (BufferUnderflowException e) {
+				throw new IOException("Chunk " + chunk + " of " + file + " is truncated");
+			}
+		}
+		ByteBuffer b =
+				channel.map(FileChannel.MapMode.READ_ONLY, chunkOffsets[chunk], (long) size
+						* TrajectoryRecorder.POINT_SIZE);
+		return new Chunk(b, size, isChunkAfterReset(chunk));
+	}
+
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private DataBox.BoundType readBoundType() throws IOException {
+		String name = raf.readUTF();
+		try {
+			return DataBox.BoundType.valueOf(name);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IOException("Unknown bound type \"" + name + "\" in " + file);
+		}
+	}
+}
@@ -0,0 +1,471 @@
+package lorenz.lab10;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the points produced by one data source to a binary trajectory file,
+ * which can be read back with a {@link TrajectoryReader}. Add the recorder as
+ * a listener of the source whose trajectory it records, and of no other.
+ * <p>
+ * The file starts with a header describing the run: the source's name and
+ * type, the name and coefficients of its ODE system (if it has one), its
+ * initial state, start time, time step and data bounds. The points follow in
+ * chunks. Each chunk is columnar -- all its times, then all its x's, y's and
+ * z's -- and is written straight into a memory-mapped region of the file, so
+ * recording a point is four stores into the page cache with no copying,
+ * buffering or system calls. A new region is mapped only when a chunk fills
+ * up. On close, an index of the chunks is appended and its position is
+ * written into the header.
+ * <p>
+ * Optionally, each chunk is compressed with a {@link TrajectoryCodec} as it
+ * is written, still straight into the mapped region. This is lossless. For
+ * a smooth trajectory with a constant time step the times take a bit or two
+ * and the coordinates about 7 of their 8 bytes, e.g. a Lorenz run with time
+ * step 0.001 takes about 24 bytes per point instead of 32, at the cost of a
+ * few nanoseconds per point to record and several more to play back. Each
+ * chunk is encoded on its own, so the chunks can still be read in any order.
+ * <p>
+ * Each chunk begins with the source's state at the time, so the first chunk
+ * starts with the initial state and a reset of the source starts a new chunk
+ * beginning with the state it was reset to. Points are recorded as they are
+ * emitted; with {@link DataSource#advanceTo(double, int)} that may be only
+ * every emitEvery-th step.
+ * <p>
+ * A recording that wasn't closed has no index and can't be read. All
+ * numbers are big-endian, as written by {@link DataOutputStream}.
+ *
+ * @author jehanson
+ */
+public class TrajectoryRecorder implements DataSink {
+
+	private static final String clsName = TrajectoryRecorder.class.getName();
+	private static final Logger logger = Logger.getLogger(clsName);
+
+	// =============================================
+	// Inner classes
+	// =============================================
+
+	/**
+	 * An entry in the chunk index.
+	 */
+	private static class ChunkEntry {
+
+		final long offset;
+		final int count;
+		final int flags;
+		final double firstTime;
+		final double lastTime;
+
+		ChunkEntry(long offset, int count, int flags, double firstTime, double lastTime) {
+			this.offset = offset;
+			this.count = count;
+			this.flags = flags;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+		}
+	}
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	public static final int CHUNK_CAPACITY_DEFAULT = 1 << 16;
+
+	static final int MAGIC = 0x4c54524a;
+	// version 2 added the data bounds to the header, version 3 the compressed
+	// chunks
+	static final int VERSION = 3;
+
+	// position of the header fields that are filled in on close: the index
+	// offset, then the chunk count
+	static final int INDEX_OFFSET_POSITION = 8;
+
+	// bytes per point, and per entry in the chunk index
+	static final int POINT_SIZE = 32;
+	static final int INDEX_ENTRY_SIZE = 32;
+
+	/**
+	 * Chunk flag: the source was reset just before the chunk's first point.
+	 */
+	static final int FLAG_RESET = 1;
+
+	/**
+	 * Chunk flag: the chunk's points are encoded by {@link TrajectoryCodec}
+	 * rather than stored as columns. Its length is the distance to the next
+	 * chunk, or to the index.
+	 */
+	static final int FLAG_COMPRESSED = 2;
+
+	private final File file;
+	private final DataSource source;
+	private final int chunkCapacity;
+	private final boolean compressed;
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+
+	// index entries of the finished chunks
+	private final List<ChunkEntry> chunks;
+
+	// the chunk being written, or null if there isn't one
+	private MappedByteBuffer chunk;
+	private DoubleBuffer tColumn;
+	private DoubleBuffer xColumn;
+	private DoubleBuffer yColumn;
+	private DoubleBuffer zColumn;
+	private TrajectoryCodec.Encoder encoder;
+	private double firstTime;
+	private double lastTime;
+	private long chunkOffset;
+	private int chunkFlags;
+	private int count;
+
+	private long nextOffset;
+	private long pointCount;
+	private boolean closed;
+	private IOException failure;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	public TrajectoryRecorder(File file, DataSource source) throws IOException {
+		this(file, source, CHUNK_CAPACITY_DEFAULT, false);
+	}
+
+	public TrajectoryRecorder(File file, DataSource source, int chunkCapacity)
+			throws IOException {
+		this(file, source, chunkCapacity, false);
+	}
+
+	/**
+	 * Creates the file, overwriting any existing one, and writes the header
+	 * and the source's current state.
+	 *
+	 * @param file
+	 * @param source
+	 *            the data source to be recorded
+	 * @param chunkCapacity
+	 *            the number of points in a full chunk
+	 * @param compressed
+	 *            whether to compress the chunks
+	 */
+	public TrajectoryRecorder(File file, DataSource source, int chunkCapacity,
+			boolean compressed) throws IOException {
+		super();
+		if (file == null)
+			throw new IllegalArgumentException("file cannot be null");
+		if (source == null)
+			throw new IllegalArgumentException("source cannot be null");
+		if (!(chunkCapacity > 0))
+			throw new IllegalArgumentException("Bad value chunkCapacity=" + chunkCapacity
+					+ " -- must be > 0");
+		this.file = file;
+		this.source = source;
+		this.chunkCapacity = chunkCapacity;
+		this.compressed = compressed;
+		this.chunks = new ArrayList<ChunkEntry>();
+		this.chunk = null;
+		this.chunkFlags = 0;
+		this.count = 0;
+		this.pointCount = 0;
+		this.closed = false;
+		this.failure = null;
+
+		this.raf = new RandomAccessFile(file, "rw");
+		this.channel = raf.getChannel();
+		try {
+			channel.truncate(0);
+			ByteBuffer header = ByteBuffer.wrap(createHeader());
+			while (header.hasRemaining())
+				channel.write(header);
+			this.nextOffset = channel.position();
+
+			double[] p = new double[3];
+			source.copyCurrentState(p);
+			append(source.getCurrentTime(), p[0], p[1], p[2]);
+		}
+		catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	public File getFile() {
+		return file;
+	}
+
+	public DataSource getSource() {
+		return source;
+	}
+
+	public int getChunkCapacity() {
+		return chunkCapacity;
+	}
+
+	public boolean isCompressed() {
+		return compressed;
+	}
+
+	/**
+	 * Returns the number of points recorded so far.
+	 */
+	public synchronized long getPointCount() {
+		return pointCount;
+	}
+
+	@Override
+	public synchronized void dataPointGenerated(DataSourceEvent e) {
+		if (closed || failure != null)
+			return;
+		try {
+			append(e.getTimestamp(), e.getX(), e.getY(), e.getZ());
+		}
+		catch (IOException ex) {
+			failure = ex;
+		}
+	}
+
+	/**
+	 * Finishes the current chunk, and starts a new one with the state the
+	 * source was reset to.
+	 */
+	@Override
+	public synchronized void dataSourceReset(DataSourceEvent e) {
+		if (closed || failure != null)
+			return;
+		try {
+			finishChunk();
+			chunkFlags = FLAG_RESET;
+			append(e.getTimestamp(), e.getX(), e.getY(), e.getZ());
+		}
+		catch (IOException ex) {
+			failure = ex;
+		}
+	}
+
+	/**
+	 * Forces the points recorded so far out to the file. They can't be read
+	 * back until the recorder is closed, however.
+	 */
+	@Override
+	public synchronized void flush() throws IOException {
+		if (failure != null)
+			throw failure;
+		if (chunk != null)
+			chunk.force();
+	}
+
+	/**
+	 * Finishes the last chunk, writes the chunk index, and closes the file.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		final String mtdName = "close";
+		if (closed)
+			return;
+		closed = true;
+		try {
+			if (failure != null)
+				throw failure;
+			finishChunk();
+
+			final int nChunks = chunks.size();
+			final long indexOffset = nextOffset;
+			ByteBuffer index = ByteBuffer.allocate(nChunks * INDEX_ENTRY_SIZE);
+			for (ChunkEntry entry : chunks) {
+				index.putLong(entry.offset);
+				index.putInt(entry.count);
+				index.putInt(entry.flags);
+				index.putDouble(entry.firstTime);
+				index.putDouble(entry.lastTime);
+			}
+			index.flip();
+			writeFully(index, indexOffset);
+
+			ByteBuffer fields = ByteBuffer.allocate(12);
+			fields.putLong(indexOffset).putInt(nChunks).flip();
+			writeFully(fields, INDEX_OFFSET_POSITION);
+
+			// The last chunk's mapping may extend past the index. Trimming
+			// the file fails on platforms that won't truncate a mapped file;
+			// the extra bytes do no harm.
+			try {
+				channel.truncate(indexOffset + index.capacity());
+			}
+			catch (IOException e) {
+				if (logger.isLoggable(Level.FINE))
+					logger.logp(Level.FINE, clsName, mtdName, "could not trim " + file, e);
+			}
+			channel.force(true);
+		}
+		finally {
+			chunk = null;
+			tColumn = xColumn = yColumn = zColumn = null;
+			encoder = null;
+			raf.close();
+		}
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private byte[] createHeader() throws IOException {
+		String systemName = "";
+		Map<String, Double> coefficients = new TreeMap<String, Double>();
+		DataPoint ic = source.getCurrentPoint();
+		if (source instanceof ODEIntegrator_3D) {
+			ODEIntegrator_3D integrator = (ODEIntegrator_3D) source;
+			ODESystem_3D sys = integrator.getODESystem();
+			systemName = (sys instanceof CompiledODESystem) ? ((CompiledODESystem) sys)
+					.getName() : sys.getClass().getSimpleName();
+			coefficients.putAll(sys.getCoefficients());
+			ic = integrator.getInitialState();
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeLong(0); // index offset
+		out.writeInt(0); // chunk count
+		out.writeInt(chunkCapacity);
+		out.writeUTF(source.getName());
+		out.writeUTF(source.getClass().getSimpleName());
+		out.writeUTF(systemName);
+		out.writeDouble(source.getTimeStep());
+		out.writeDouble(source.getCurrentTime());
+		out.writeDouble(ic.getX());
+		out.writeDouble(ic.getY());
+		out.writeDouble(ic.getZ());
+		DataBox bounds = source.getDataBoundsHint();
+		out.writeDouble(bounds.getXMin());
+		out.writeDouble(bounds.getXMax());
+		out.writeUTF(bounds.getXBoundType().name());
+		out.writeDouble(bounds.getYMin());
+		out.writeDouble(bounds.getYMax());
+		out.writeUTF(bounds.getYBoundType().name());
+		out.writeDouble(bounds.getZMin());
+		out.writeDouble(bounds.getZMax());
+		out.writeUTF(bounds.getZBoundType().name());
+		out.writeInt(coefficients.size());
+		for (Map.Entry<String, Double> entry : coefficients.entrySet()) {
+			out.writeUTF(entry.getKey());
+			out.writeDouble(entry.getValue());
+		}
+		// pad so the columns are aligned
+		while (out.size() % 8 != 0)
+			out.writeByte(0);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private void append(double t, double x, double y, double z) throws IOException {
+		if (chunk == null)
+			startChunk();
+		if (encoder != null)
+			encoder.encode(t, x, y, z);
+		else {
+			tColumn.put(count, t);
+			xColumn.put(count, x);
+			yColumn.put(count, y);
+			zColumn.put(count, z);
+		}
+		if (count == 0)
+			firstTime = t;
+		lastTime = t;
+		count++;
+		pointCount++;
+		if (count == chunkCapacity)
+			finishChunk();
+	}
+
+	/**
+	 * Maps the region for a full chunk at the end of the file. For a
+	 * compressed chunk that's the most its points could take.
+	 */
+	private void startChunk() throws IOException {
+		chunkOffset = nextOffset;
+		if (compressed) {
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset,
+					(long) chunkCapacity * TrajectoryCodec.MAX_POINT_SIZE
+							+ TrajectoryCodec.MAX_FINISH_SIZE);
+			encoder = new TrajectoryCodec.Encoder(chunk);
+		}
+		else {
+			chunk = channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset,
+					(long) chunkCapacity * POINT_SIZE);
+			tColumn = column(0, chunkCapacity);
+			xColumn = column(1, chunkCapacity);
+			yColumn = column(2, chunkCapacity);
+			zColumn = column(3, chunkCapacity);
+		}
+		count = 0;
+	}
+
+	/**
+	 * Adds the current chunk, if it has any points, to the index. If it isn't
+	 * full, moves its columns together so that the next chunk can start right
+	 * after them.
+	 */
+	private void finishChunk() {
+		if (chunk == null)
+			return;
+		if (count > 0 && encoder != null) {
+			chunks.add(new ChunkEntry(chunkOffset, count, chunkFlags | FLAG_COMPRESSED,
+					firstTime, lastTime));
+			nextOffset = chunkOffset + encoder.finish();
+			chunkFlags = 0;
+		}
+		else if (count > 0) {
+			if (count < chunkCapacity) {
+				// each column moves to a lower position, so copying forward is
+				// safe even where the old and new places overlap
+				DoubleBuffer all = chunk.asDoubleBuffer();
+				for (int c = 1; c < 4; c++) {
+					final int from = c * chunkCapacity;
+					final int to = c * count;
+					for (int i = 0; i < count; i++)
+						all.put(to + i, all.get(from + i));
+				}
+			}
+			chunks.add(new ChunkEntry(chunkOffset, count, chunkFlags, firstTime, lastTime));
+			nextOffset = chunkOffset + (long) count * POINT_SIZE;
+			chunkFlags = 0;
+		}
+		chunk = null;
+		tColumn = xColumn = yColumn = zColumn = null;
+		encoder = null;
+		count = 0;
+	}
+
+	private DoubleBuffer column(int c, int length) {
+		ByteBuffer b = chunk.duplicate();
+		b.position(c * length * 8);
+		b.limit((c + 1) * length * 8);
+		return b.slice().asDoubleBuffer();
+	}
+
+	private void writeFully(ByteBuffer b, long position) throws IOException {
+		while (b.hasRemaining())
+			position += channel.write(b, position);
+	}
+}
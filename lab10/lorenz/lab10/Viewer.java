@@ -2,7 +2,6 @@ package lorenz.lab10;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
@@ -15,7 +14,9 @@ import org.eclipse.swt.events.PaintEvent;
 import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.graphics.GC;
-import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.Rectangle;
 import org.eclipse.swt.widgets.Canvas;
 import org.eclipse.swt.widgets.Composite;
@@ -24,6 +25,26 @@ import org.eclipse.swt.widgets.Display;
 
 /**
  * GUI stuff for viewing what's going on.
+ * <p>
+ * In incremental mode, the default, the timeseries are drawn into an
+ * offscreen image that persists between paints. Each paint draws only the
+ * points added since the last one into the image, copies the image to the
+ * canvas, and draws the decorators over it, so its cost is proportional to
+ * the new points rather than to the length of the history. The image is
+ * redrawn from scratch only when the canvas is resized, the data bounds
+ * change, the viewer is cleared, a timeseries is reset or removed, or enough
+ * of the points drawn in it have dropped out of their history: up to an
+ * eighth of a history's length may linger in the image before that happens.
+ * <p>
+ * In density mode, the timeseries' points are not kept at all. Each is
+ * counted in a {@link DensityMap} of hits per pixel, which is tone mapped to
+ * colors when painted. Memory is proportional to the size of the canvas,
+ * however long the run, and the structure of an attractor keeps showing long
+ * after every pixel on it has been hit. The counts of all the timeseries are
+ * combined, and are cleared by resizing, by new data bounds or by clear().
+ * <p>
+ * New data doesn't cause a paint directly. It marks the viewer dirty, and a
+ * {@link FrameScheduler} paints the canvas at a fixed frame rate if it is.
  * 
  * @author jehanson
  * 
@@ -53,21 +74,45 @@ public class Viewer {
 
 		private final DataSource ds;
 		private Color pointColor;
-		private final LinkedList<DataSourceEvent> eventsToDraw;
-		private int maxHistory;
+		// the points are copied out of the events, which may be reused
+		private final PointHistory history;
+
+		// for incremental mode. Sequence numbers (see PointHistory) of the
+		// oldest point drawn in the image and of the point after the newest.
+		// Used only on the UI thread.
+		private long imageOldest;
+		private long imageEnd;
+		private volatile boolean imageInvalid;
+
+		// for density mode: points not yet counted in the density map.
+		// Guarded by history.
+		private final double[] pendingXs;
+		private final double[] pendingYs;
+		private final double[] pendingZs;
+		private final int[] pendingPixels;
+		private int pendingCount;
 
 		public TimeseriesImpl(DataSource ds) {
 			this.ds = ds;
 			this.pointColor = null;
-			this.eventsToDraw = new LinkedList<DataSourceEvent>();
-			this.maxHistory = 1000;
+			this.history = new PointHistory(MAX_HISTORY_DEFAULT);
+			this.imageOldest = 0;
+			this.imageEnd = 0;
+			this.imageInvalid = true;
+			this.pendingXs = new double[DENSITY_BLOCK_SIZE];
+			this.pendingYs = new double[DENSITY_BLOCK_SIZE];
+			this.pendingZs = new double[DENSITY_BLOCK_SIZE];
+			this.pendingPixels = new int[2 * DENSITY_BLOCK_SIZE];
+			this.pendingCount = 0;
 
 			ds.addDataSourceListener(this);
 		}
 
 		public void teardown() {
 			ds.removeDataSourceListener(this);
-			eventsToDraw.clear();
+			synchronized (history) {
+				history.clear();
+			}
 		}
 
 		@Override
@@ -83,63 +128,157 @@ public class Viewer {
 		@Override
 		public void setColor(Color c) {
 			pointColor = c;
+			imageInvalid = true;
 		}
 
 		@Override
 		public int getMaxHistory() {
-			return this.maxHistory;
+			synchronized (history) {
+				return history.getCapacity();
+			}
 		}
 
 		@Override
 		public void setMaxHistory(int maxHistory) {
 			if (!(maxHistory > 0))
 				throw new IllegalArgumentException("Bad value maxHistory=" + maxHistory + " -- must be > 0");
-			this.maxHistory = maxHistory;
+			synchronized (history) {
+				history.setCapacity(maxHistory);
+			}
+			imageInvalid = true;
 		}
 
 		@Override
 		public void dataSourceReset(DataSourceEvent e) {
-			synchronized (eventsToDraw) {
-				eventsToDraw.clear();
+			synchronized (history) {
+				history.clear();
 			}
+			imageInvalid = true;
 			redraw();
 		}
 
 		@Override
 		public void dataPointGenerated(DataSourceEvent e) {
-			synchronized (eventsToDraw) {
-				eventsToDraw.addLast(e);
-				while (eventsToDraw.size() > maxHistory)
-					eventsToDraw.removeFirst();
+			synchronized (history) {
+				if (density) {
+					pendingXs[pendingCount] = e.getX();
+					pendingYs[pendingCount] = e.getY();
+					pendingZs[pendingCount] = e.getZ();
+					if (++pendingCount == DENSITY_BLOCK_SIZE)
+						countPending();
+				}
+				else
+					history.add(e.getTimestamp(), e.getX(), e.getY(), e.getZ());
 			}
 			redraw();
 		}
 
+		/**
+		 * Counts the pending points in the density map. Call holding the lock
+		 * on history.
+		 */
+		private void countPending() {
+			if (pendingCount == 0)
+				return;
+			synchronized (densityMap) {
+				transform.dataToGraphics(pendingXs, pendingYs, pendingZs, 0, pendingCount,
+						pendingPixels);
+				densityMap.add(pendingPixels, pendingCount);
+			}
+			pendingCount = 0;
+		}
+
+		/**
+		 * Returns true if the timeseries can't be brought up to date in the
+		 * image by drawing just its new points.
+		 */
+		private boolean isImageStale() {
+			if (imageInvalid)
+				return true;
+			synchronized (history) {
+				final long added = history.getAddedCount();
+				if (added < imageEnd)
+					return true;
+				final long evicted = (added - history.size()) - imageOldest;
+				return evicted > history.getCapacity() / EVICTION_SLACK_DIVISOR;
+			}
+		}
+
+		/**
+		 * Draws all of the history into the image.
+		 */
+		private void drawAll(GC gc, SimpleGraphicsTransform transform) {
+			imageInvalid = false;
+			synchronized (history) {
+				imageOldest = history.getAddedCount() - history.size();
+				imageEnd = draw(gc, transform, 0);
+			}
+		}
+
+		/**
+		 * Draws the points added since the last drawAll or drawNew into the
+		 * image.
+		 */
+		private void drawNew(GC gc, SimpleGraphicsTransform transform) {
+			imageEnd = draw(gc, transform, imageEnd);
+		}
+
 		private void draw(GC gc, SimpleGraphicsTransform transform) {
+			draw(gc, transform, 0);
+		}
+
+		/**
+		 * Draws the points in the history with sequence numbers from 'from'
+		 * on.
+		 * 
+		 * @return the sequence number of the point after the newest
+		 */
+		private long draw(GC gc, SimpleGraphicsTransform transform, long from) {
 			final String mtdName = "draw";
 
 			// Color bg = gc.getBackground();
 			Color fg = gc.getForeground();
-			Point canvasPt;
 			gc.setForeground(pointColor);
 			// gc.setBackground(pointColor);
-			synchronized (eventsToDraw) {
+			long end;
+			synchronized (history) {
+				final int size = history.size();
+				final long oldest = history.getAddedCount() - size;
+				final int skip = (int) Math.min(size, Math.max(0, from - oldest));
+				final int n = size - skip;
+				end = oldest + size;
 				if (logger.isLoggable(Level.FINE))
 					logger.logp(Level.FINE, clsName, mtdName,
-							"Drawing " + eventsToDraw.size() + " data points");
-				for (DataSourceEvent event : eventsToDraw) {
-					// MAYBE: if (event.getTimestamp() <= maxTime) { ...
-					canvasPt = transform.dataToGraphics(event.getDataPoint());
-					if (logger.isLoggable(Level.FINER)) {
-						logger.logp(Level.FINE, clsName, mtdName, "drawing: event="
-								+ event + " canvasPt=" + canvasPt);
-					}
-					gc.drawPoint(canvasPt.x, canvasPt.y);
-					// gc.fillRectangle(canvasPt.x - 1, canvasPt.y - 1, 3, 3);
-				}
+							"Drawing " + n + " data points");
+				final double[] xs = history.getXArray();
+				final double[] ys = history.getYArray();
+				final double[] zs = history.getZArray();
+				// oldest to newest, in the two runs of the ring buffer
+				int start = history.getStart() + skip;
+				if (start >= xs.length)
+					start -= xs.length;
+				final int run = Math.min(n, xs.length - start);
+				drawRun(gc, transform, xs, ys, zs, start, run);
+				drawRun(gc, transform, xs, ys, zs, 0, n - run);
 			}
 			gc.setForeground(fg);
 			// gc.setBackground(bg);
+			return end;
+		}
+
+		/**
+		 * Draws the points from offset to offset + length - 1 of the given
+		 * arrays, transforming them a block at a time.
+		 */
+		private void drawRun(GC gc, SimpleGraphicsTransform transform, double[] xs,
+				double[] ys, double[] zs, int offset, int length) {
+			final int[] pixels = pixelBuffer;
+			for (int i = 0; i < length; i += PIXEL_BLOCK_SIZE) {
+				final int m = Math.min(PIXEL_BLOCK_SIZE, length - i);
+				transform.dataToGraphics(xs, ys, zs, offset + i, m, pixels);
+				for (int j = 0; j < 2 * m; j += 2)
+					gc.drawPoint(pixels[j], pixels[j + 1]);
+			}
 		}
 	}
 
@@ -150,7 +289,11 @@ public class Viewer {
 
 		@Override
 		public void controlResized(ControlEvent e) {
-			transform.initialize(dataBounds, canvas.getClientArea());
+			final Rectangle clientArea = canvas.getClientArea();
+			synchronized (densityMap) {
+				transform.initialize(dataBounds, clientArea);
+				densityMap.resize(clientArea.width, clientArea.height);
+			}
 		}
 
 		@Override
@@ -160,6 +303,15 @@ public class Viewer {
 			final GC gc = e.gc;
 			final Rectangle clientArea = canvas.getClientArea();
 
+			if (density) {
+				paintDensity(gc, clientArea);
+				return;
+			}
+			if (incremental) {
+				paintIncremental(gc, clientArea);
+				return;
+			}
+
 			if (clearRequested) {
 				if (logger.isLoggable(Level.FINE))
 					logger.logp(Level.FINE, clsName, mtdName, "clearing canvas");
@@ -178,12 +330,107 @@ public class Viewer {
 			// gc.drawText("t=" + latestEventTimestamp, 0, 0);
 
 		}
+
+		private void paintIncremental(GC gc, Rectangle clientArea) {
+			final String mtdName = "paintIncremental";
+
+			boolean full = clearRequested;
+			clearRequested = false;
+			if (image == null || image.getBounds().width != clientArea.width
+					|| image.getBounds().height != clientArea.height) {
+				disposeImage();
+				image =
+						new Image(display, Math.max(clientArea.width, 1), Math.max(
+								clientArea.height, 1));
+				full = true;
+			}
+			for (TimeseriesImpl t : timeseriesMap.values())
+				full = full || t.isImageStale();
+
+			final GC imageGC = new GC(image);
+			try {
+				if (full) {
+					if (logger.isLoggable(Level.FINE))
+						logger.logp(Level.FINE, clsName, mtdName, "redrawing image");
+					imageGC.setBackground(canvas.getBackground());
+					imageGC.fillRectangle(image.getBounds());
+					for (TimeseriesImpl t : timeseriesMap.values())
+						t.drawAll(imageGC, transform);
+				}
+				else {
+					for (TimeseriesImpl t : timeseriesMap.values())
+						t.drawNew(imageGC, transform);
+				}
+			}
+			finally {
+				imageGC.dispose();
+			}
+
+			gc.drawImage(image, clientArea.x, clientArea.y);
+			for (ViewDecorator d : decorators) {
+				d.draw(gc, clientArea, transform);
+			}
+		}
+
+		private void paintDensity(GC gc, Rectangle clientArea) {
+			for (TimeseriesImpl t : timeseriesMap.values()) {
+				synchronized (t.history) {
+					t.countPending();
+				}
+			}
+
+			final int w;
+			final int h;
+			synchronized (densityMap) {
+				if (clearRequested) {
+					clearRequested = false;
+					densityMap.clear();
+				}
+				w = densityMap.getWidth();
+				h = densityMap.getHeight();
+				if (densityRGB == null || densityRGB.length < w * h)
+					densityRGB = new int[w * h];
+				densityMap.toneMap(densityRGB, densityTable, densityGamma);
+			}
+
+			if (w > 0 && h > 0) {
+				if (densityData == null || densityData.width != w || densityData.height != h)
+					densityData =
+							new ImageData(w, h, 24, new PaletteData(0xff0000, 0x00ff00, 0x0000ff));
+				for (int y = 0; y < h; y++)
+					densityData.setPixels(0, y, w, densityRGB, y * w);
+				final Image densityImage = new Image(display, densityData);
+				try {
+					gc.drawImage(densityImage, clientArea.x, clientArea.y);
+				}
+				finally {
+					densityImage.dispose();
+				}
+			}
+			for (ViewDecorator d : decorators) {
+				d.draw(gc, clientArea, transform);
+			}
+		}
 	}
 
 	// ==================================
 	// Variables
 	// ==================================
 
+	private static final int MAX_HISTORY_DEFAULT = 1000;
+
+	// in incremental mode, the image is redrawn once more than 1/8 of a
+	// history's length has been evicted from the history but not the image
+	private static final int EVICTION_SLACK_DIVISOR = 8;
+
+	// points transformed at a time when drawing
+	private static final int PIXEL_BLOCK_SIZE = 4096;
+
+	// points buffered per timeseries before counting in density mode
+	private static final int DENSITY_BLOCK_SIZE = 1024;
+
+	private static final int DENSITY_TABLE_SIZE = 256;
+
 	private static final int[] SYSTEM_COLORS = { SWT.COLOR_RED, SWT.COLOR_GREEN,
 			SWT.COLOR_BLUE, SWT.COLOR_CYAN, SWT.COLOR_DARK_MAGENTA };
 
@@ -192,9 +439,22 @@ public class Viewer {
 	private Canvas canvas;
 	private volatile Display display;
 	private volatile boolean clearRequested;
-	private volatile boolean redrawRequested;
+	private double targetFps;
+	private volatile FrameScheduler scheduler;
+	private boolean incremental;
+	private Image image;
+	private volatile boolean density;
+	// guards itself and, while density is on, the transform
+	private final DensityMap densityMap;
+	private final int[] densityTable;
+	private double densityGamma;
+	// used only on the UI thread
+	private int[] densityRGB;
+	private ImageData densityData;
 	private final List<ViewDecorator> decorators;
 	private final Map<String, TimeseriesImpl> timeseriesMap;
+	// used only on the UI thread
+	private final int[] pixelBuffer;
 
 	// ==================================
 	// Creation
@@ -206,9 +466,19 @@ public class Viewer {
 		this.canvas = null;
 		this.display = null;
 		this.clearRequested = false;
-		this.redrawRequested = false;
+		this.targetFps = FrameScheduler.TARGET_FPS_DEFAULT;
+		this.scheduler = null;
+		this.incremental = true;
+		this.image = null;
+		this.density = false;
+		this.densityMap = new DensityMap(0, 0);
+		this.densityTable = DensityMap.createHeatTable(DENSITY_TABLE_SIZE);
+		this.densityGamma = DensityMap.GAMMA_DEFAULT;
+		this.densityRGB = null;
+		this.densityData = null;
 		this.decorators = new ArrayList<ViewDecorator>();
 		this.timeseriesMap = new HashMap<String, TimeseriesImpl>();
+		this.pixelBuffer = new int[2 * PIXEL_BLOCK_SIZE];
 		// this.maxHistory = 10000.0;
 	}
 
@@ -223,8 +493,87 @@ public class Viewer {
 	public void setDataBounds(DataBox bounds) {
 		this.dataBounds = bounds;
 		clearRequested = true;
-		if (canvas != null && !canvas.isDisposed())
-			transform.initialize(bounds, canvas.getClientArea());
+		if (canvas != null && !canvas.isDisposed()) {
+			synchronized (densityMap) {
+				transform.initialize(bounds, canvas.getClientArea());
+				densityMap.clear();
+			}
+		}
+	}
+
+	public double getTargetFps() {
+		return targetFps;
+	}
+
+	/**
+	 * Sets the rate at which the canvas is repainted while data is arriving.
+	 * Call on the UI thread.
+	 */
+	public void setTargetFps(double targetFps) {
+		if (!(targetFps > 0 && targetFps <= 1000))
+			throw new IllegalArgumentException("Bad value targetFps=" + targetFps
+					+ " -- must be > 0 and <= 1000");
+		this.targetFps = targetFps;
+		if (scheduler != null)
+			scheduler.setTargetFps(targetFps);
+	}
+
+	/**
+	 * Returns the frame scheduler, or null until the controls are built.
+	 */
+	public FrameScheduler getFrameScheduler() {
+		return scheduler;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Turns incremental drawing on or off. Off, every paint draws every point
+	 * of every timeseries. Call on the UI thread.
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+		if (!incremental)
+			disposeImage();
+		clear();
+	}
+
+	public boolean isDensity() {
+		return density;
+	}
+
+	/**
+	 * Turns density mode on or off. Either way, what was shown before is
+	 * cleared. Call on the UI thread.
+	 */
+	public void setDensity(boolean density) {
+		this.density = density;
+		for (TimeseriesImpl t : timeseriesMap.values()) {
+			synchronized (t.history) {
+				t.history.clear();
+				t.pendingCount = 0;
+			}
+			t.imageInvalid = true;
+		}
+		clear();
+	}
+
+	public double getDensityGamma() {
+		return densityGamma;
+	}
+
+	/**
+	 * Sets the gamma of density mode's tone mapping. Values over 1 brighten
+	 * rarely visited pixels. Call on the UI thread.
+	 */
+	public void setDensityGamma(double densityGamma) {
+		if (!(densityGamma > 0))
+			throw new IllegalArgumentException("Bad value densityGamma=" + densityGamma
+					+ " -- must be > 0");
+		this.densityGamma = densityGamma;
+		redraw();
 	}
 
 	public void addViewDecorator(ViewDecorator d) {
@@ -253,8 +602,10 @@ public class Viewer {
 
 	public void removeTimeseries(String name) {
 		TimeseriesImpl ts = timeseriesMap.remove(name);
-		if (ts != null)
+		if (ts != null) {
 			ts.teardown();
+			clearRequested = true;
+		}
 	}
 
 	public Control buildControls(Composite parent) {
@@ -273,6 +624,20 @@ public class Viewer {
 		canvas.addControlListener(clistener);
 		canvas.addPaintListener(clistener);
 
+		FrameScheduler fs = new FrameScheduler(display, new Runnable() {
+			@Override
+			public void run() {
+				if (!canvas.isDisposed()) {
+					// paint now, so that the scheduler can time it
+					canvas.redraw();
+					canvas.update();
+				}
+			}
+		});
+		fs.setTargetFps(targetFps);
+		fs.start();
+		scheduler = fs;
+
 		return canvas;
 	}
 
@@ -281,25 +646,36 @@ public class Viewer {
 		redraw();
 	}
 
+	/**
+	 * Stops the frame scheduler and releases the offscreen image. Call on the
+	 * UI thread when done with the viewer.
+	 */
+	public void dispose() {
+		if (scheduler != null)
+			scheduler.stop();
+		disposeImage();
+	}
+
 	// ===================================
 	// Private
 	// ===================================
 
+	/**
+	 * Marks the viewer dirty, for the frame scheduler to repaint. Called on any
+	 * thread.
+	 */
 	private void redraw() {
-		if (!redrawRequested) {
-			redrawRequested = true;
-			if (display != null && !display.isDisposed()) {
-				display.asyncExec(new Runnable() {
-					@Override
-					public void run() {
-						redrawRequested = false;
-						if (!canvas.isDisposed())
-							canvas.redraw();
-					}
-				});
-			}
+		final FrameScheduler fs = scheduler;
+		if (fs != null)
+			fs.markDirty();
+	}
+
+	private void disposeImage() {
+		if (image != null) {
+			image.dispose();
+			image = null;
 		}
-	};
+	}
 
 	private void assignDefaultColor(Timeseries ts, int idx) {
 		if (ts.getColor() == null && canvas != null && !canvas.isDisposed()) {
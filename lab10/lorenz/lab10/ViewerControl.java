@@ -0,0 +1,110 @@
+package lorenz.lab10;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Control;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+/**
+ * Controls for the {@link Viewer}'s drawing modes: incremental drawing,
+ * density mode, and density mode's gamma.
+ *
+ * @author jehanson
+ */
+public class ViewerControl {
+
+	// ======================================
+	// Variables
+	// ======================================
+
+	private final Viewer viewer;
+	private Composite cpane;
+	private Button incrementalButton;
+	private Button densityButton;
+	private Label gammaLabel;
+	private Text gammaField;
+
+	// ======================================
+	// Creation
+	// ======================================
+
+	public ViewerControl(Viewer viewer) {
+		if (viewer == null)
+			throw new IllegalArgumentException("Argument \"viewer\" cannot be null");
+		this.viewer = viewer;
+	}
+
+	// ======================================
+	// Operation
+	// ======================================
+
+	public Control buildControls(Composite parent) {
+		cpane = new Composite(parent, SWT.NONE);
+		cpane.setLayout(new GridLayout(4, true));
+
+		incrementalButton = new Button(cpane, SWT.CHECK);
+		incrementalButton.setText("Incremental drawing");
+		incrementalButton.setToolTipText("draw only the new points on each repaint");
+		incrementalButton.setSelection(viewer.isIncremental());
+		incrementalButton.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 4,
+				1));
+		incrementalButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				viewer.setIncremental(incrementalButton.getSelection());
+			}
+		});
+
+		densityButton = new Button(cpane, SWT.CHECK);
+		densityButton.setText("Density map");
+		densityButton.setToolTipText("show how often each pixel is visited");
+		densityButton.setSelection(viewer.isDensity());
+		densityButton.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 4, 1));
+		densityButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				viewer.setDensity(densityButton.getSelection());
+				updateEnabled();
+			}
+		});
+
+		gammaLabel = new Label(cpane, SWT.RIGHT);
+		gammaLabel.setText("Density gamma:");
+		gammaLabel.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, false, 3, 1));
+
+		gammaField = new Text(cpane, SWT.SINGLE | SWT.RIGHT);
+		gammaField.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 1, 1));
+		gammaField.setText(String.valueOf(viewer.getDensityGamma()));
+		gammaField.clearSelection();
+		gammaField.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetDefaultSelected(SelectionEvent e) {
+				try {
+					viewer.setDensityGamma(Double.parseDouble(gammaField.getText()));
+				}
+				catch (Exception err) {
+					gammaField.setText(String.valueOf(viewer.getDensityGamma()));
+				}
+			}
+		});
+
+		updateEnabled();
+		return cpane;
+	}
+
+	// =================================
+	// Private
+	// =================================
+
+	private void updateEnabled() {
+		final boolean density = viewer.isDensity();
+		gammaLabel.setEnabled(density);
+		gammaField.setEnabled(density);
+	}
+}
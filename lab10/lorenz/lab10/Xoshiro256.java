@@ -0,0 +1,183 @@
+package lorenz.lab10;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The xoshiro256++ generator of Blackman &amp; Vigna, "Scrambled linear
+ * pseudorandom number generators" (2018). 256 bits of state, period 2^256 - 1,
+ * and a jump function for splitting it into 2^128 non-overlapping streams of
+ * length 2^128.
+ * <p>
+ * Seeds are expanded into the initial state with SplitMix64, as its authors
+ * recommend.
+ * 
+ * @author jehanson
+ */
+public final class Xoshiro256 implements RandomSource {
+
+	// =============================================
+	// Variables
+	// =============================================
+
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private static final long[] JUMP = { 0x180ec6d33cfd0abaL, 0xd5a61266f0c9392cL,
+			0xa9582618e03fc9aaL, 0x39abdc4529b1661cL };
+
+	// for seeding unseeded instances
+	private static final AtomicLong seedUniquifier = new AtomicLong(0x2545F4914F6CDD1DL);
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	// =============================================
+	// Creation
+	// =============================================
+
+	/**
+	 * Creates a generator with a seed that differs from call to call and from
+	 * run to run. Use {@link #Xoshiro256(long)} for reproducible runs.
+	 */
+	public Xoshiro256() {
+		this(seedUniquifier.addAndGet(0x9E3779B97F4A7C15L) ^ System.nanoTime());
+	}
+
+	public Xoshiro256(long seed) {
+		long x = seed;
+		s0 = splitMix64(x += 0x9E3779B97F4A7C15L);
+		s1 = splitMix64(x += 0x9E3779B97F4A7C15L);
+		s2 = splitMix64(x += 0x9E3779B97F4A7C15L);
+		s3 = splitMix64(x += 0x9E3779B97F4A7C15L);
+	}
+
+	private Xoshiro256(long s0, long s1, long s2, long s3) {
+		this.s0 = s0;
+		this.s1 = s1;
+		this.s2 = s2;
+		this.s3 = s3;
+	}
+
+	// =============================================
+	// Operation
+	// =============================================
+
+	@Override
+	public long nextLong() {
+		final long result = Long.rotateLeft(s0 + s3, 23) + s0;
+		final long t = s1 << 17;
+		s2 ^= s0;
+		s3 ^= s1;
+		s1 ^= s2;
+		s0 ^= s3;
+		s2 ^= t;
+		s3 = Long.rotateLeft(s3, 45);
+		return result;
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+	@Override
+	public void fillUniform(double[] a) {
+		fillUniform(a, 0, a.length);
+	}
+
+	@Override
+	public void fillUniform(double[] a, int from, int to) {
+		// the state lives in locals for the duration of the loop
+		long s0 = this.s0;
+		long s1 = this.s1;
+		long s2 = this.s2;
+		long s3 = this.s3;
+		for (int i = from; i < to; i++) {
+			final long result = Long.rotateLeft(s0 + s3, 23) + s0;
+			final long t = s1 << 17;
+			s2 ^= s0;
+			s3 ^= s1;
+			s1 ^= s2;
+			s0 ^= s3;
+			s2 ^= t;
+			s3 = Long.rotateLeft(s3, 45);
+			a[i] = (result >>> 11) * DOUBLE_UNIT;
+		}
+		this.s0 = s0;
+		this.s1 = s1;
+		this.s2 = s2;
+		this.s3 = s3;
+	}
+
+	/**
+	 * Returns a generator in this one's current state, and jumps this one
+	 * 2^128 numbers ahead. The streams therefore do not overlap unless one of
+	 * them is used for 2^128 numbers.
+	 */
+	@Override
+	public Xoshiro256 split() {
+		Xoshiro256 child = copy();
+		jump();
+		return child;
+	}
+
+	@Override
+	public Xoshiro256 copy() {
+		return new Xoshiro256(s0, s1, s2, s3);
+	}
+
+	@Override
+	public void writeState(DataOutput out) throws IOException {
+		out.writeLong(s0);
+		out.writeLong(s1);
+		out.writeLong(s2);
+		out.writeLong(s3);
+	}
+
+	@Override
+	public void readState(DataInput in) throws IOException {
+		s0 = in.readLong();
+		s1 = in.readLong();
+		s2 = in.readLong();
+		s3 = in.readLong();
+	}
+
+	/**
+	 * Advances the state by 2^128 steps.
+	 */
+	public void jump() {
+		long t0 = 0;
+		long t1 = 0;
+		long t2 = 0;
+		long t3 = 0;
+		for (int i = 0; i < JUMP.length; i++) {
+			for (int b = 0; b < 64; b++) {
+				if ((JUMP[i] & (1L << b)) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+					t2 ^= s2;
+					t3 ^= s3;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+		s2 = t2;
+		s3 = t3;
+	}
+
+	// =============================================
+	// Private
+	// =============================================
+
+	private static long splitMix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}